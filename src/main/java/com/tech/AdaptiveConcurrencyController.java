@@ -0,0 +1,177 @@
+package com.tech;
+
+import com.tech.utils.StatsUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes the copy pool at runtime based on the aggregate throughput and per-file latency reported by {@link CopyFileTask}.
+ * <p>
+ * Uses hill-climbing with AIMD: while throughput keeps improving the pool grows by one worker in the current direction,
+ * when throughput drops or latency spikes the pool shrinks multiplicatively. On a plateau it probes one worker the other
+ * way, so it keeps exploring around the optimum instead of settling on the first size that stopped improving. Size always
+ * stays within [min, max]. While the run is paused nothing is sampled, after it the climb starts again from a new baseline.
+ */
+public class AdaptiveConcurrencyController {
+
+    static Logger logger = LogManager.getLogger(AdaptiveConcurrencyController.class);
+
+    // Relative throughput change treated as noise.
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+    // Relative throughput drop treated as congestion.
+    private static final double THROUGHPUT_BACKOFF = 0.20;
+    // Relative per-file latency increase treated as congestion when throughput did not improve.
+    private static final double LATENCY_BACKOFF = 0.50;
+    private static final double DECREASE_FACTOR = 0.75;
+
+    private final ThreadPoolExecutor executor;
+    private final CopySettings copySettings;
+    private final int minThreads;
+    private final int maxThreads;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private long lastBytes;
+    private long lastFiles;
+    private long lastNanos;
+    private long lastSampleTime;
+    private double lastThroughput;
+    private double lastLatencyMillis;
+    private int direction = 1;
+
+    public AdaptiveConcurrencyController(ThreadPoolExecutor executor, CopySettings copySettings, int minThreads, int maxThreads,
+                                         long intervalMillis) {
+        this.executor = executor;
+        this.copySettings = copySettings;
+        this.minThreads = Math.max(1, minThreads);
+        this.maxThreads = Math.max(this.minThreads, maxThreads);
+        this.intervalMillis = intervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "adaptive-concurrency");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        resize(clamp(executor.getMaximumPoolSize()));
+        takeSnapshot();
+        logger.info("Adaptive copy concurrency enabled, starting with {} threads, bounds [{}, {}], sampling every {} ms",
+            executor.getMaximumPoolSize(), minThreads, maxThreads, intervalMillis);
+        scheduler.scheduleWithFixedDelay(this::sampleAndAdjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void takeSnapshot() {
+        final StatsUtil stats = StatsUtil.getInstance();
+        lastBytes = stats.getBytesTransferred();
+        lastFiles = stats.getFilesTransferred();
+        lastNanos = stats.getTransferNanos();
+        lastSampleTime = System.nanoTime();
+    }
+
+    void sampleAndAdjust() {
+        try {
+            if (copySettings.isPaused()) {
+                // Copies wait in their tasks and nothing moves, the window before the pause is no base for the one after it.
+                lastThroughput = 0;
+                lastLatencyMillis = 0;
+                takeSnapshot();
+                return;
+            }
+            final StatsUtil stats = StatsUtil.getInstance();
+            final long bytes = stats.getBytesTransferred() - lastBytes;
+            final long files = stats.getFilesTransferred() - lastFiles;
+            final long nanos = stats.getTransferNanos() - lastNanos;
+            final double seconds = (System.nanoTime() - lastSampleTime) / 1_000_000_000d;
+            takeSnapshot();
+
+            if (executor.getActiveCount() == 0 && executor.getQueue().isEmpty()) {
+                // Pool is idle (row planning, excel parsing), nothing to learn from this window.
+                return;
+            }
+
+            final double throughput = seconds > 0 ? bytes / seconds : 0;
+            adjust(throughput, files > 0 ? nanos / 1_000_000d / files : lastLatencyMillis);
+        } catch (Exception e) {
+            logger.error("Failed to adjust copy concurrency", e);
+        }
+    }
+
+    /**
+     * Takes one sample of the pool and remembers it as the base of the next one.
+     */
+    void adjust(final double throughput, final double latencyMillis) {
+        decide(throughput, latencyMillis);
+        lastThroughput = throughput;
+        lastLatencyMillis = latencyMillis;
+    }
+
+    private void decide(final double throughput, final double latencyMillis) {
+        final int current = executor.getMaximumPoolSize();
+        if (lastThroughput <= 0) {
+            applyDecision(current, current + direction, throughput, latencyMillis, "probing");
+            return;
+        }
+
+        final double change = (throughput - lastThroughput) / lastThroughput;
+        if (change > THROUGHPUT_TOLERANCE) {
+            applyDecision(current, current + direction, throughput, latencyMillis, "throughput improved");
+        } else if (change < -THROUGHPUT_BACKOFF) {
+            direction = -1;
+            applyDecision(current, (int) Math.min(current - 1, Math.floor(current * DECREASE_FACTOR)), throughput, latencyMillis,
+                "throughput dropped");
+        } else if (lastLatencyMillis > 0 && latencyMillis > lastLatencyMillis * (1 + LATENCY_BACKOFF)) {
+            direction = -1;
+            applyDecision(current, (int) Math.min(current - 1, Math.floor(current * DECREASE_FACTOR)), throughput, latencyMillis,
+                "per-file latency increased");
+        } else {
+            // Plateau, one worker the other way tells if the optimum is on that side. At a bound only one way is left.
+            direction = clamp(current - direction) == current ? direction : -direction;
+            applyDecision(current, current + direction, throughput, latencyMillis, "throughput plateau, probing");
+        }
+    }
+
+    private void applyDecision(final int current, final int wanted, final double throughput, final double latencyMillis, final String reason) {
+        final int target = clamp(wanted);
+        if (target == current) {
+            direction = -direction;
+            logger.info("Adaptive concurrency at bound {} threads ({}), throughput {}/s, avg file latency {} ms",
+                current, reason, StatsUtil.readableFileSize((long) throughput), String.format("%.1f", latencyMillis));
+            return;
+        }
+        logger.info("Adaptive concurrency changing copy threads {} -> {} ({}), throughput {}/s, avg file latency {} ms",
+            current, target, reason, StatsUtil.readableFileSize((long) throughput), String.format("%.1f", latencyMillis));
+        resize(target);
+    }
+
+    private int clamp(final int size) {
+        return Math.max(minThreads, Math.min(maxThreads, size));
+    }
+
+    private void resize(final int size) {
+        resize(executor, size);
+    }
+
+    /**
+     * Queued tasks keep waiting for a thread, running ones complete on theirs.
+     */
+    static void resize(final ThreadPoolExecutor executor, final int size) {
+        // Order matters, core size may never exceed max size.
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.tech;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Copies a group of small files one after another on a single worker, sharing one block buffer and appending the
+ * copied and failed log entries of the whole group at once.
+ */
+public class BatchCopyTask implements CopyTask {
+
+    private final List<CopyFileTask> tasks;
+    private final long length;
+    private final boolean failFast;
+
+    public BatchCopyTask(List<CopyFileTask> tasks, boolean failFast) {
+        this.tasks = tasks;
+        this.failFast = failFast;
+        this.length = tasks.stream().mapToLong(CopyFileTask::getLength).sum();
+    }
+
+    @Override
+    public File getFromPath() {
+        return tasks.get(0).getFromPath();
+    }
+
+    @Override
+    public File getToPath() {
+        return tasks.get(0).getToPath();
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    @Override
+    public void run() {
+        final byte[] buffer = new byte[tasks.get(0).getCopyBlockSize()];
+        final StringBuilder copiedEntries = new StringBuilder();
+        final StringBuilder failedEntries = new StringBuilder();
+        try {
+            for (final CopyFileTask task : tasks) {
+                task.copy(buffer, copiedEntries, failedEntries);
+            }
+        } finally {
+            CopyFileTask.appendLogEntries(copiedEntries, failedEntries, failFast);
+        }
+    }
+}
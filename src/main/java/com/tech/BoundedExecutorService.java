@@ -0,0 +1,108 @@
+package com.tech;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every task on the delegate but lets only a fixed number of them do work at the same time. Used with virtual threads,
+ * where the thread count is no longer a limit and the I/O concurrency has to be bounded explicitly.
+ * <p>
+ * The bound may be changed while tasks run, tasks already holding a permit complete.
+ */
+public class BoundedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final ResizableSemaphore permits;
+    private int maxPermits;
+
+    public BoundedExecutorService(ExecutorService delegate, int maxPermits) {
+        this.delegate = delegate;
+        this.permits = new ResizableSemaphore(maxPermits);
+        this.maxPermits = maxPermits;
+    }
+
+    /**
+     * @return permits of the tasks, to bound other I/O by the same limit
+     */
+    public Semaphore getPermits() {
+        return permits;
+    }
+
+    public synchronized int getMaxPermits() {
+        return maxPermits;
+    }
+
+    /**
+     * A lower bound takes effect as the running tasks release their permits.
+     */
+    public synchronized void setMaxPermits(int maxPermits) {
+        if (maxPermits <= 0) {
+            throw new IllegalArgumentException("Permits have to be positive: " + maxPermits);
+        }
+        if (maxPermits > this.maxPermits) {
+            permits.release(maxPermits - this.maxPermits);
+        } else {
+            permits.reducePermits(this.maxPermits - maxPermits);
+        }
+        this.maxPermits = maxPermits;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        delegate.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an I/O permit", e);
+            }
+            try {
+                command.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.tech;
 
+import com.tech.utils.BandwidthThrottler;
+import com.tech.utils.EventTrace;
 import com.tech.utils.FileUtil;
+import com.tech.utils.PathTable;
 import com.tech.utils.StatsUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,86 +13,310 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
-public class CopyFileTask implements Runnable {
+public class CopyFileTask implements CopyTask {
 
     static Logger logger = LogManager.getLogger(CopyFileTask.class);
-    private final File fromPath;
-    private final File toPath;
+    // Set when planned as path ids, the files are then built on first use.
+    private final PathTable pathTable;
+    private final int fromId;
+    private final int toId;
+    private File fromPath;
+    private File toPath;
     private static final int DEFAULT_BLOCK_SIZE = 4096;
-    private final int copyBlockSize;
-    private final boolean useStreamCopy;
-    private final boolean failFast;
+    private long sourceLength;
+    private final TransferMode transferMode;
+    private final CopySettings settings;
+    // Row the file was planned for, null unless the profile report is on.
+    private RowProfileReport.RowProfile rowProfile;
+    // Set for a recopy after a failed verification, the file was logged and counted as copied by its first copy.
+    private boolean recopy;
 
     public CopyFileTask(File fromPath, File toPath) {
         this(fromPath, toPath, DEFAULT_BLOCK_SIZE, true, true);
     }
 
     public CopyFileTask(File fromPath, File toPath, int copyBlockSize, boolean useStreamCopy, boolean failFast) {
+        this(fromPath, toPath, -1, TransferMode.COPY, new CopySettings(copyBlockSize, useStreamCopy, failFast));
+    }
+
+    /**
+     * @param sourceLength source length known from planning, -1 if unknown
+     * @param transferMode COPY, MOVE or HARDLINK, AUTO has to be resolved by the caller
+     */
+    public CopyFileTask(File fromPath, File toPath, long sourceLength, TransferMode transferMode, CopySettings settings) {
+        this(null, -1, -1, sourceLength, transferMode, settings);
         this.fromPath = fromPath;
         this.toPath = toPath;
-        this.copyBlockSize = copyBlockSize;
-        this.useStreamCopy = useStreamCopy;
-        this.failFast = failFast;
+    }
+
+    /**
+     * Keeps only the path ids while the task waits, so a large batch holds no file objects until its copies run.
+     */
+    public CopyFileTask(PathTable pathTable, int fromId, int toId, long sourceLength, TransferMode transferMode, CopySettings settings) {
+        this.pathTable = pathTable;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.sourceLength = sourceLength;
+        this.transferMode = transferMode;
+        this.settings = settings;
+    }
+
+    public File getFromPath() {
+        if (fromPath == null) {
+            fromPath = pathTable.toFile(fromId);
+        }
+        return fromPath;
+    }
+
+    public File getToPath() {
+        if (toPath == null) {
+            toPath = pathTable.toFile(toId);
+        }
+        return toPath;
+    }
+
+    /**
+     * @return source length as seen while planning, read from the file system only if it was not known then
+     */
+    public long getLength() {
+        if (sourceLength < 0) {
+            sourceLength = getFromPath().length();
+        }
+        return sourceLength;
+    }
+
+    /**
+     * @return transfer mode the task was planned with, the applied mode may fall back to COPY
+     */
+    public TransferMode getTransferMode() {
+        return transferMode;
+    }
+
+    void setRowProfile(final RowProfileReport.RowProfile rowProfile) {
+        this.rowProfile = rowProfile;
+    }
+
+    void setRecopy(final boolean recopy) {
+        this.recopy = recopy;
+    }
+
+    public int getCopyBlockSize() {
+        return settings.getCopyBlockSize();
     }
 
     @Override
     public void run() throws RuntimeException {
-        logger.info("Starting copy file {} to {}", fromPath, toPath);
-        String contentToAppend = fromPath.getPath() + "->" + toPath.getPath() + "\n";
-        boolean errorOut = false;
+        final StringBuilder copiedEntries = new StringBuilder();
+        final StringBuilder failedEntries = new StringBuilder();
+        try {
+            copy(null, copiedEntries, failedEntries);
+        } finally {
+            appendLogEntries(copiedEntries, failedEntries, settings.isFailFast());
+        }
+    }
+
+    static void appendLogEntries(final StringBuilder copiedEntries, final StringBuilder failedEntries, final boolean failFast) {
+        if (copiedEntries.length() > 0) {
+            FileUtil.appendEntryToLogFile(DataOrganizerApplication.getCopiedFileLogPath(), copiedEntries.toString(), failFast);
+        }
+        if (failedEntries.length() > 0) {
+            FileUtil.appendEntryToLogFile(DataOrganizerApplication.getFailedFileLogPath(), failedEntries.toString(), failFast);
+        }
+    }
+
+    /**
+     * Copies the file and collects its copied or failed log entry, the caller appends the entries to the log files.
+     *
+     * @param buffer block buffer to reuse, a new one is allocated when null or not matching the block size
+     * @return true if the file was transferred
+     */
+    boolean copy(final byte[] buffer, final StringBuilder copiedEntries, final StringBuilder failedEntries) {
+        settings.awaitResumed();
+        final File fromPath = getFromPath();
+        final File toPath = getToPath();
+        // Both lines of a file are logged or neither.
+        final boolean logFile = EventTrace.getInstance().sampleFileLog();
+        if (logFile) {
+            logger.info("Starting {} file {} to {}", transferMode.name().toLowerCase(), fromPath, toPath);
+        }
+        // Read before the transfer, after a move the source is gone.
+        final long length = fromPath.length();
+        final long startNanos = System.nanoTime();
+        boolean transferred = false;
+        TransferMode tracedMode = transferMode;
         try {
-            if (useStreamCopy) {
-                copyUsingChunks();
+            final TransferMode appliedMode = transfer(buffer);
+            tracedMode = appliedMode;
+            if (toPath.length() != length) {
+                throw new IOException("Target length " + toPath.length() + " does not match source length " + length);
+            }
+            if (transferMode == TransferMode.MOVE && appliedMode == TransferMode.COPY) {
+                // The source is the only other copy, so the target is synced before it goes instead of in a later group.
+                settings.getDurabilitySync().syncNow(toPath);
+                deleteMovedSource();
+                if (!recopy) {
+                    copiedEntries.append(logEntry());
+                }
+            } else if (settings.getDurabilitySync().written(toPath, length, logEntry(), !recopy) && !recopy) {
+                // Deferred entries are logged by the durability sync once the target is on disk.
+                copiedEntries.append(logEntry());
+            }
+            if (logFile) {
+                logger.info("Completed file {} from {} to {}", appliedMode.name().toLowerCase(), fromPath, toPath);
+            }
+            if (recopy) {
+                StatsUtil.getInstance().updateRecopyStats();
             } else {
-                copyUsingJava();
+                StatsUtil.getInstance().updateStats(length, true, false, false);
+                StatsUtil.getInstance().updateTransferModeStats(appliedMode);
             }
-            logger.info("Completed file copy from {} to {}", fromPath, toPath);
-            FileUtil.appendEntryToLogFile(DataOrganizerApplication.getCopiedFileLogPath(), contentToAppend, failFast);
-            StatsUtil.getInstance().updateStats(fromPath.length(), true, false, false);
+            settings.notifyTransferred(this, appliedMode, length);
+            transferred = true;
+            return true;
         } catch (Exception e) {
-            errorOut = true;
+            deletePartialTarget(length);
             logger.error(e);
             logger.error("Failed to copy file {} to the destination {}", fromPath, toPath);
-            FileUtil.appendEntryToLogFile(DataOrganizerApplication.getFailedFileLogPath(), contentToAppend, failFast);
-            StatsUtil.getInstance().updateStats(fromPath.length(), false, false, true);
-            if (failFast) {
+            failedEntries.append(logEntry());
+            if (recopy) {
+                StatsUtil.getInstance().updateRevokedCopyStats(length);
+            } else {
+                StatsUtil.getInstance().updateStats(length, false, false, true);
+            }
+            if (settings.isFailFast()) {
                 throw new RuntimeException(e);
             }
+            return false;
         } finally {
-            if (toPath.exists() && fromPath.length() != toPath.length()) {
-                try {
-                    Files.delete(toPath.toPath());
-                } catch (IOException e) {
-                   logger.error("Failed to delete file {}", toPath.getPath());
-                   logger.error(e);
-                }
-                if (!errorOut) {
-                    logger.error("Failed to copy file {} to the destination {}", fromPath, toPath);
-                    FileUtil.appendEntryToLogFile(DataOrganizerApplication.getFailedFileLogPath(), contentToAppend, failFast);
-                    StatsUtil.getInstance().updateStats(fromPath.length(), false, false, true);
-                }
+            final long nanos = System.nanoTime() - startNanos;
+            StatsUtil.getInstance().recordFileLatency(nanos);
+            if (rowProfile != null) {
+                rowProfile.fileDone(toPath, length, nanos, !transferred);
+            }
+            final EventTrace.EventType eventType = transferred ? EventTrace.EventType.FILE_COPIED : EventTrace.EventType.FILE_FAILED;
+            if (pathTable != null) {
+                EventTrace.getInstance().record(eventType, tracedMode.ordinal(), pathTable, fromId, toId, length, nanos);
+            } else {
+                EventTrace.getInstance().record(eventType, tracedMode.ordinal(), fromPath, toPath, length, nanos);
+            }
+        }
+    }
+
+    private String logEntry() {
+        return fromPath.getPath() + "->" + toPath.getPath() + "\n";
+    }
+
+    /**
+     * Applies the transfer mode, falling back to a byte copy when the target is on another device.
+     *
+     * @return mode that was actually applied
+     */
+    private TransferMode transfer(final byte[] buffer) throws IOException {
+        if (transferMode == TransferMode.HARDLINK) {
+            try {
+                Files.createLink(toPath.toPath(), fromPath.toPath());
+                return TransferMode.HARDLINK;
+            } catch (FileSystemException | UnsupportedOperationException e) {
+                logger.info("Hard link from {} to {} not possible, copying instead: {}", fromPath, toPath, e.getMessage());
+            }
+        } else if (transferMode == TransferMode.MOVE) {
+            try {
+                Files.move(fromPath.toPath(), toPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return TransferMode.MOVE;
+            } catch (AtomicMoveNotSupportedException e) {
+                logger.info("Atomic move from {} to {} not possible, copying and deleting the source instead", fromPath, toPath);
+            }
+        }
+        // Files.copy gives no hook per block, a rate limit is only kept by a copy that acquires every block it writes.
+        if (settings.isUseStreamCopy() || BandwidthThrottler.getInstance().isEnabled()) {
+            copyUsingChunks(buffer);
+        } else {
+            copyUsingJava();
+        }
+        return TransferMode.COPY;
+    }
+
+    private void deleteMovedSource() {
+        try {
+            Files.delete(fromPath.toPath());
+        } catch (IOException e) {
+            // The target is complete and synced as the policy asks, only the cleanup failed.
+            logger.error("Copied file {} for move but failed to delete the source", fromPath.getPath());
+            logger.error(e);
+        }
+    }
+
+    /**
+     * Removes a target that failed the length check, but only while the source still exists. After a move, or a copy whose
+     * source was already deleted for a move, the target holds the only copy of the data and is left in place.
+     */
+    private void deletePartialTarget(final long length) {
+        if (!fromPath.exists()) {
+            if (toPath.exists()) {
+                logger.error("Source {} no longer exists, leaving the target {} in place", fromPath.getPath(), toPath.getPath());
+            }
+            return;
+        }
+        if (toPath.exists() && toPath.length() != length) {
+            try {
+                Files.delete(toPath.toPath());
+            } catch (IOException e) {
+                logger.error("Failed to delete file {}", toPath.getPath());
+                logger.error(e);
             }
         }
     }
 
     private void copyUsingJava() throws IOException {
         Files.copy(fromPath.toPath(), toPath.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        StatsUtil.getInstance().recordBytesTransferred(fromPath.length());
     }
 
-    private void copyUsingChunks() throws IOException {
+    private void copyUsingChunks(byte[] buffer) throws IOException {
         try (
             InputStream inputStream = Files.newInputStream(fromPath.toPath());
             BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
-            OutputStream outputStream = Files.newOutputStream(toPath.toPath());
+            FileChannel targetChannel = FileChannel.open(toPath.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            OutputStream outputStream = Channels.newOutputStream(targetChannel);
         ) {
-            byte[] buffer = new byte[copyBlockSize];
+            final StatsUtil stats = StatsUtil.getInstance();
+            final BandwidthThrottler throttler = BandwidthThrottler.getInstance();
+            if (settings.isPreallocate()) {
+                preallocate(targetChannel, getLength());
+            }
+            if (buffer == null || buffer.length != settings.getCopyBlockSize()) {
+                buffer = new byte[settings.getCopyBlockSize()];
+            }
+            long written = 0;
             int read;
             while ((read = bufferedInputStream.read(buffer, 0, buffer.length)) != -1) {
+                throttler.acquire(read);
                 outputStream.write(buffer, 0, read);
+                written += read;
+                stats.recordBytesTransferred(read);
             }
+            // A source that shrank since planning must still fail the length check, not pass on the preallocated length.
+            targetChannel.truncate(written);
+        }
+    }
+
+    /**
+     * Extends the empty target to its final length with one write at the end, so the file system can reserve the space in
+     * one piece before the data arrives. Writing starts at the beginning regardless.
+     */
+    private static void preallocate(final FileChannel targetChannel, final long length) throws IOException {
+        if (length > 0) {
+            targetChannel.write(ByteBuffer.allocate(1), length - 1);
         }
     }
 }
@@ -0,0 +1,13 @@
+package com.tech;
+
+/**
+ * Notified on the copy thread after a file reached its target and passed the length check.
+ */
+public interface CopyListener {
+
+    /**
+     * @param appliedMode how the file got to the target, MOVE or HARDLINK fall back to COPY across devices
+     * @param length      source length
+     */
+    void onTransferred(CopyFileTask task, TransferMode appliedMode, long length);
+}
@@ -0,0 +1,144 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Settings shared by all copy tasks of a run.
+ * <p>
+ * Block size and copy method may be changed while the run goes, each file reads them when its copy starts. Pausing holds
+ * every file that has not started yet, files being copied complete. Settings derived with {@link #withDurabilitySync}
+ * share the block size, copy method and pause with the settings they were derived from.
+ */
+public class CopySettings {
+
+    static Logger logger = LogManager.getLogger(CopySettings.class);
+
+    private final Tuning tuning;
+    private final boolean failFast;
+    // Extends a stream copied target to the source length before writing it.
+    private final boolean preallocate;
+    private final DurabilitySync durabilitySync;
+    private final List<CopyListener> listeners = new CopyOnWriteArrayList<>();
+
+    public CopySettings(int copyBlockSize, boolean useStreamCopy, boolean failFast) {
+        this(copyBlockSize, useStreamCopy, failFast, false, new DurabilitySync(SyncPolicy.NONE, 0, 0, failFast));
+    }
+
+    public CopySettings(int copyBlockSize, boolean useStreamCopy, boolean failFast, boolean preallocate, DurabilitySync durabilitySync) {
+        this(new Tuning(copyBlockSize, useStreamCopy), failFast, preallocate, durabilitySync);
+    }
+
+    private CopySettings(Tuning tuning, boolean failFast, boolean preallocate, DurabilitySync durabilitySync) {
+        this.tuning = tuning;
+        this.failFast = failFast;
+        this.preallocate = preallocate;
+        this.durabilitySync = durabilitySync;
+    }
+
+    /**
+     * @return settings with their own fail fast, sync and listeners, tuned and paused together with these settings
+     */
+    public CopySettings withDurabilitySync(boolean failFast, DurabilitySync durabilitySync) {
+        return new CopySettings(tuning, failFast, preallocate, durabilitySync);
+    }
+
+    public int getCopyBlockSize() {
+        return tuning.copyBlockSize;
+    }
+
+    public void setCopyBlockSize(int copyBlockSize) {
+        if (copyBlockSize <= 0) {
+            throw new IllegalArgumentException("Copy block size has to be positive: " + copyBlockSize);
+        }
+        tuning.copyBlockSize = copyBlockSize;
+    }
+
+    public boolean isUseStreamCopy() {
+        return tuning.useStreamCopy;
+    }
+
+    public void setUseStreamCopy(boolean useStreamCopy) {
+        tuning.useStreamCopy = useStreamCopy;
+    }
+
+    public boolean isPaused() {
+        return tuning.paused;
+    }
+
+    public void pause() {
+        tuning.paused = true;
+    }
+
+    public void resume() {
+        synchronized (tuning) {
+            tuning.paused = false;
+            tuning.notifyAll();
+        }
+    }
+
+    /**
+     * Called before a file is copied, blocks while the copies are paused.
+     */
+    void awaitResumed() {
+        if (!tuning.paused) {
+            return;
+        }
+        synchronized (tuning) {
+            while (tuning.paused) {
+                try {
+                    tuning.wait();
+                } catch (InterruptedException e) {
+                    // Shutting down, the copy goes ahead rather than being lost.
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public boolean isPreallocate() {
+        return preallocate;
+    }
+
+    public DurabilitySync getDurabilitySync() {
+        return durabilitySync;
+    }
+
+    public void addListener(CopyListener listener) {
+        listeners.add(listener);
+    }
+
+    void notifyTransferred(final CopyFileTask task, final TransferMode appliedMode, final long length) {
+        for (final CopyListener listener : listeners) {
+            try {
+                listener.onTransferred(task, appliedMode, length);
+            } catch (RuntimeException e) {
+                // A listener must never turn a good copy into a failed one.
+                logger.error("Copy listener failed for {}", task.getToPath().getPath());
+                logger.error(e);
+            }
+        }
+    }
+
+    /**
+     * Settings changed while the run goes, also the lock pausing waits on.
+     */
+    private static class Tuning {
+        private volatile int copyBlockSize;
+        private volatile boolean useStreamCopy;
+        private volatile boolean paused;
+
+        Tuning(int copyBlockSize, boolean useStreamCopy) {
+            this.copyBlockSize = copyBlockSize;
+            this.useStreamCopy = useStreamCopy;
+        }
+    }
+}
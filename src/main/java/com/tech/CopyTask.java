@@ -0,0 +1,18 @@
+package com.tech;
+
+import java.io.File;
+
+/**
+ * Unit of work submitted to the copy pool.
+ */
+public interface CopyTask extends Runnable {
+
+    File getFromPath();
+
+    File getToPath();
+
+    /**
+     * @return number of source bytes the task transfers
+     */
+    long getLength();
+}
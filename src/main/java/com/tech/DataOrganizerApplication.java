@@ -1,10 +1,15 @@
 package com.tech;
 
+import com.tech.utils.FileUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import static com.tech.PropKeysEnum.INPUT_FILE;
@@ -18,14 +23,22 @@ public class DataOrganizerApplication {
     private static final String TEMP = "temp";
     private static final String DATA_ORG = "data-organizer";
     private static final String RESOURCES = "resources";
+    private static final String SCAN_CACHE = "scan-cache";
+    private static final String FINGERPRINTS = "fingerprints";
 
     private static final String LOGS = "logs";
     private static final String PROPS = "props";
     private static final String STATS_FILE = "copy-stats.properties";
+    private static final String EVENT_TRACE_FILE = "event-trace.bin";
     private static final String FILES_FAILED = "files-failed.txt";
     private static final String FILES_COPIED = "files-copied.txt";
     private static final String FILES_SKIPPED = "files-skipped.txt";
     private static final String FILES_DUPLICATE = "files-duplicate.txt";
+    private static final String FILES_VERIFY_FAILED = "files-verify-failed.txt";
+    private static final String SHARD_PREFIX = "shard-";
+    private static final String LOG_SUFFIX_PROPERTY = "dataOrganizer.logSuffix";
+    // Set when running as one of several shards, every shard then has its own logs, stats and checkpoint.
+    private static volatile String shardName;
     private final Properties properties;
 
     private DataOrganizerApplication(Properties properties) {
@@ -35,7 +48,11 @@ public class DataOrganizerApplication {
     private void startDataOrganizeProcess() {
         ProcessExecutor processExecutor = new ProcessExecutor(properties);
         try {
-            processExecutor.readTheExcelInputFile();
+            if (PropFileHandler.getBoolean(PropKeysEnum.RETRY_FAILED.name(), properties, false)) {
+                processExecutor.retryFailedCopies();
+            } else {
+                processExecutor.readTheExcelInputFile();
+            }
         } catch (IOException e) {
             logger.error(e);
             System.exit(1);
@@ -58,6 +75,9 @@ public class DataOrganizerApplication {
                     case HELP:
                         showHelp();
                         break;
+                    case MERGE_SHARDS:
+                        new ShardMerger().merge();
+                        return;
                     case INPUT_FILE:
                         properties.put(INPUT_FILE.name(), args[++i]);
                         break;
@@ -105,6 +125,54 @@ public class DataOrganizerApplication {
                     case SHALLOW_FILE_COMPARISON:
                         properties.put(PropKeysEnum.SHALLOW_FILE_COMPARISON.name(), args[++i]);
                         break;
+                    case ADAPTIVE_COPY_THREADS:
+                    case MIN_COPY_THREADS:
+                    case MAX_COPY_THREADS:
+                    case ADAPTIVE_INTERVAL_SECONDS:
+                    case DEVICE_SCHEDULING:
+                    case DEVICE_COPY_THREADS:
+                    case DEVICE_COPY_THREADS_OVERRIDES:
+                    case MAX_COPY_RATE:
+                    case COPY_RATE_SCHEDULE:
+                    case EXECUTION_MODE:
+                    case VIRTUAL_IO_PERMITS:
+                    case BATCH_MAX_FILES:
+                    case BATCH_MAX_BYTES:
+                    case SMALL_FILE_THRESHOLD:
+                    case SMALL_FILE_BATCH_COUNT:
+                    case TRANSFER_MODE:
+                    case TREE_HASH_CHUNK_SIZE:
+                    case HASH_THREADS:
+                    case VERIFY_POLICY:
+                    case VERIFY_THREADS:
+                    case VERIFY_MAX_RATE:
+                    case VERIFY_MAX_RECOPIES:
+                    case SHEET_THREADS:
+                    case SHARD_INDEX:
+                    case SHARD_COUNT:
+                    case WATCH:
+                    case WATCH_SETTLE_SECONDS:
+                    case RETRY_FAILED:
+                    case RETRY_MAX_ATTEMPTS:
+                    case RETRY_BACKOFF_MILLIS:
+                    case RETRY_MAX_BACKOFF_SECONDS:
+                    case PACK_FORMAT:
+                    case PACK_THRESHOLD:
+                    case PREALLOCATE_TARGETS:
+                    case SYNC_POLICY:
+                    case SYNC_BATCH_FILES:
+                    case SYNC_BATCH_BYTES:
+                    case READ_ORDER:
+                    case READERS_PER_DEVICE:
+                    case SOURCE_INDEX_REFRESH_SECONDS:
+                    case SCAN_CACHE:
+                    case ROW_FINGERPRINTS:
+                    case PROFILE_REPORT:
+                    case EVENT_TRACE:
+                    case EVENT_TRACE_BUFFER:
+                    case FILE_LOG_SAMPLE:
+                        properties.put(argEnum.name(), args[++i]);
+                        break;
                     default:
                         throw new IllegalStateException("Unexpected value: " + arg);
                 }
@@ -113,16 +181,75 @@ public class DataOrganizerApplication {
         if (properties.isEmpty()) {
             showHelp();
         } else {
+            configureShard(properties);
             new DataOrganizerApplication(properties).startDataOrganizeProcess();
         }
     }
 
+    private static void configureShard(final Properties properties) {
+        final int shardCount = PropFileHandler.getInteger(PropKeysEnum.SHARD_COUNT.name(), properties, 1);
+        if (shardCount <= 1) {
+            return;
+        }
+        final int shardIndex = PropFileHandler.getInteger(PropKeysEnum.SHARD_INDEX.name(), properties, -1);
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("SHARD_INDEX must be between 0 and " + (shardCount - 1) + " for SHARD_COUNT " + shardCount);
+        }
+        // The shard count is part of the name, a checkpoint is only valid for the same split of the rows.
+        shardName = SHARD_PREFIX + shardIndex + "-of-" + shardCount;
+        System.setProperty(LOG_SUFFIX_PROPERTY, "-" + shardName);
+        ((LoggerContext) LogManager.getContext(false)).reconfigure();
+        logger.info("\n\n\n******* Starting {} ****\n\n\n", shardName);
+    }
+
     public static File getPropFilePath() {
         return new File(HOME_DRIVE, TEMP + File.separator + DATA_ORG + File.separator + RESOURCES + File.separator + PROP_FILE_NAME);
     }
 
+    public static File getScanCacheFolderPath() {
+        return new File(HOME_DRIVE, TEMP + File.separator + DATA_ORG + File.separator + SCAN_CACHE);
+    }
+
+    /**
+     * Shards fingerprint the rows of their own guids, each keeps its own folder.
+     */
+    public static File getFingerprintsFolderPath() {
+        return new File(HOME_DRIVE, TEMP + File.separator + DATA_ORG + File.separator + (shardName == null ? FINGERPRINTS : FINGERPRINTS + "-" + shardName));
+    }
+
     public static File getPropsFilePath() {
-        return new File(HOME_DRIVE, TEMP + File.separator + DATA_ORG + File.separator + LOGS + File.separator + PROPS);
+        return new File(getLogsFilePath(), shardName == null ? PROPS : PROPS + "-" + shardName);
+    }
+
+    private static File getLogsFilePath() {
+        return new File(HOME_DRIVE, TEMP + File.separator + DATA_ORG + File.separator + LOGS);
+    }
+
+    /**
+     * @return log folders of all shard runs, sorted by name
+     */
+    public static List<File> getShardPropsFilePaths() {
+        final File[] shardFolders = getLogsFilePath().listFiles(
+            file -> file.isDirectory() && file.getName().startsWith(PROPS + "-" + SHARD_PREFIX) && !file.getName().contains("-backup-"));
+        if (shardFolders == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(shardFolders);
+        return Arrays.asList(shardFolders);
+    }
+
+    /**
+     * @return file the START_INDEX checkpoints are written to, the properties file itself unless running as a shard
+     */
+    public static File getCheckpointFilePath() {
+        if (shardName == null) {
+            return getPropFilePath();
+        }
+        return new File(getPropFilePath().getParentFile(), FileUtil.appendSuffix(new File(PROP_FILE_NAME), "-" + shardName).getName());
+    }
+
+    public static List<File> getAuditLogPaths() {
+        return Arrays.asList(getCopiedFileLogPath(), getFailedFileLogPath(), getSkippedLogFile(), getDuplicateLogFile(), getVerifyFailedLogPath());
     }
 
     public static File getFailedFileLogPath() {
@@ -133,6 +260,10 @@ public class DataOrganizerApplication {
         return new File(getPropsFilePath(), STATS_FILE);
     }
 
+    public static File getEventTraceFilePath() {
+        return new File(getPropsFilePath(), EVENT_TRACE_FILE);
+    }
+
     public static File getCopiedFileLogPath() {
         return new File(getPropsFilePath(), FILES_COPIED);
     }
@@ -145,9 +276,13 @@ public class DataOrganizerApplication {
         return new File(getPropsFilePath(), FILES_DUPLICATE);
     }
 
+    public static File getVerifyFailedLogPath() {
+        return new File(getPropsFilePath(), FILES_VERIFY_FAILED);
+    }
+
     private static void showHelp() {
         printConsoleLog("Run the executable using the following command line arguments: \n");
-        printConsoleLog("INPUT_FILE*        -- Excel file path containing the details of source files and target folder");
+        printConsoleLog("INPUT_FILE*        -- Excel file path containing the details of source files and target folder.\n\t\t\t\t\t\tAll sheets are processed, several workbooks or globs can be given e.g. a.xlsx->/deliveries/*.xlsx");
         printConsoleLog("PROP_FILE          -- Properties file path containing all the needed properties key values.\n\t\t\t\t\t\tDefault path for properties file is " + getPropFilePath());
         printConsoleLog("SRC_FOLDER*        -- Source folder path which needs to be copied into a organised structure");
         printConsoleLog("TARGET_FOLDER*     -- Target folder path where needs to be copy the files into organised structure");
@@ -157,8 +292,55 @@ public class DataOrganizerApplication {
         printConsoleLog("USE_STREAM_COPY    -- Use buffered streams to copy file else will use the Java Files.copy.\n\t\t\t\t\t\tDefault value is true");
         printConsoleLog("EXCLUDE_FILE_TYPES -- Specify the file types to be skipped e.g srt->png");
         printConsoleLog("EXCLUDE_PATTERNS   -- Specify the patterns to be skipped e.g .*h264.mov->.*h264.mpg");
-        printConsoleLog("COPY_THREADS       -- Number of parallel threads for copy files\n\t\t\t\t\t\tDefault value is 3");
-        printConsoleLog("CHECKSUM_SCHEME    -- Checksum algorithm for validating file before replace.\n\t\t\t\t\t\tDefault is SHA-256, valid algorithms are SHA-1,SHA-256,MD5,CRC32");
+        printConsoleLog("COPY_THREADS       -- Number of parallel threads for copy files. Starting value when ADAPTIVE_COPY_THREADS is on.\n\t\t\t\t\t\tDefault value is 3");
+        printConsoleLog("ADAPTIVE_COPY_THREADS -- Tune the copy threads at runtime from measured throughput and file latency.\n\t\t\t\t\t\tDefault is false");
+        printConsoleLog("MIN_COPY_THREADS   -- Lower bound for adaptive copy threads.\n\t\t\t\t\t\tDefault value is 1");
+        printConsoleLog("MAX_COPY_THREADS   -- Upper bound for adaptive copy threads.\n\t\t\t\t\t\tDefault value is 2 x available processors");
+        printConsoleLog("ADAPTIVE_INTERVAL_SECONDS -- Sampling interval of the adaptive copy threads controller.\n\t\t\t\t\t\tDefault value is 10");
+        printConsoleLog("DEVICE_SCHEDULING  -- Queue copies per source/target file store, each store with its own thread limit.\n\t\t\t\t\t\tCOPY_THREADS stays the overall limit. Default is false");
+        printConsoleLog("DEVICE_COPY_THREADS -- Max parallel copies reading or writing one file store.\n\t\t\t\t\t\tDefault value is COPY_THREADS");
+        printConsoleLog("DEVICE_COPY_THREADS_OVERRIDES -- Per store limits by store name e.g. /dev/sdb1=2->nas01:/export=6");
+        printConsoleLog("MAX_COPY_RATE      -- Bandwidth limit shared by all copy threads, per second e.g. 200 MB.\n\t\t\t\t\t\tWhile limited files are stream copied. Default is unlimited");
+        printConsoleLog("COPY_RATE_SCHEDULE -- Time of day bandwidth limits, first match wins, 0 is unlimited e.g. 09:00-18:00=200 MB->*=0.\n\t\t\t\t\t\tMAX_COPY_RATE applies outside of the listed windows");
+        printConsoleLog("EXECUTION_MODE     -- platform or virtual. virtual runs copies and tree scanning on virtual threads,\n\t\t\t\t\t\tneeds a build with the java21 profile and Java 21. Default is platform");
+        printConsoleLog("VIRTUAL_IO_PERMITS -- Max concurrent copies and directory listings in virtual mode.\n\t\t\t\t\t\tDefault value is 64");
+        printConsoleLog("BATCH_MAX_FILES    -- Files planned before a batch is ordered largest first and copied.\n\t\t\t\t\t\tDefault value is 1000");
+        printConsoleLog("BATCH_MAX_BYTES    -- Bytes planned before a batch is copied, 0 for no byte limit.\n\t\t\t\t\t\tDefault value is 10 GB");
+        printConsoleLog("SMALL_FILE_THRESHOLD -- Files below this size are copied in groups by one task, 0 disables grouping.\n\t\t\t\t\t\tDefault value is 64 KB");
+        printConsoleLog("SMALL_FILE_BATCH_COUNT -- Max files in one small file group.\n\t\t\t\t\t\tDefault value is 100");
+        printConsoleLog("TRANSFER_MODE      -- copy, move, hardlink or auto. move and hardlink fall back to copy across devices,\n\t\t\t\t\t\tauto hard links when source and target share a file store. Default is copy");
+        printConsoleLog("CHECKSUM_SCHEME    -- Checksum algorithm for validating file before replace.\n\t\t\t\t\t\tDefault is SHA-256, valid algorithms are SHA-1,SHA-256,MD5,CRC32\n\t\t\t\t\t\tand the parallel tree hashes TREE-SHA-256,TREE-SHA-1,TREE-MD5");
+        printConsoleLog("TREE_HASH_CHUNK_SIZE -- Chunk size of the TREE- checksum schemes, values only compare with the same chunk size.\n\t\t\t\t\t\tBetween 4 KB and 1 GB, default value is 32 MB");
+        printConsoleLog("HASH_THREADS       -- Parallel threads of the TREE- checksum schemes.\n\t\t\t\t\t\tDefault value is the number of processors");
+        printConsoleLog("VERIFY_POLICY      -- Checksum verification of copied files in the background: none, all, sample:<percent>,\n\t\t\t\t\t\tabove:<size> or below:<size> e.g. sample:5 or above:1 GB. Default is none");
+        printConsoleLog("VERIFY_THREADS     -- Parallel verifications.\n\t\t\t\t\t\tDefault value is 2");
+        printConsoleLog("VERIFY_MAX_RATE    -- Read bandwidth limit of the verification, per second e.g. 100 MB.\n\t\t\t\t\t\tDefault is unlimited");
+        printConsoleLog("VERIFY_MAX_RECOPIES -- Recopies of a file failing verification before giving up.\n\t\t\t\t\t\tDefault value is 2");
+        printConsoleLog("SHEET_THREADS      -- Sheets planned in parallel, all of them feed the same copy threads.\n\t\t\t\t\t\tDefault value is 4");
+        printConsoleLog("SHARD_COUNT        -- Number of processes sharing the manifest rows, by the hash of the target folder.\n\t\t\t\t\t\tEvery shard keeps its own checkpoint, logs and stats. Default value is 1");
+        printConsoleLog("SHARD_INDEX        -- Shard of this process, from 0 to SHARD_COUNT - 1");
+        printConsoleLog("MERGE_SHARDS       -- Merge the stats and logs of all shard runs into " + getPropsFilePath() + " and exit");
+        printConsoleLog("WATCH              -- Keep running after the manifests are done, plan rows added to them and rows whose\n\t\t\t\t\t\tguid folder arrives in SRC_FOLDER later. Default is false");
+        printConsoleLog("WATCH_SETTLE_SECONDS -- Quiet time before a changed manifest or a new guid folder is processed in watch mode.\n\t\t\t\t\t\tDefault value is 10");
+        printConsoleLog("PACK_FORMAT        -- none, zip or tar. Copied files below PACK_THRESHOLD are written into one uncompressed\n\t\t\t\t\t\tarchive per target folder, with an index of the entries. Default is none");
+        printConsoleLog("PACK_THRESHOLD     -- Files below this size are packed when PACK_FORMAT is set.\n\t\t\t\t\t\tDefault value is 64 KB");
+        printConsoleLog("PREALLOCATE_TARGETS -- Extend each stream copied target to the source length before writing it, so the\n\t\t\t\t\t\tfile system can place it in one piece. Default is false");
+        printConsoleLog("SYNC_POLICY        -- none, per-file, batched or at-row-end. Copied files are synced to disk before they are\n\t\t\t\t\t\tlogged as copied and before their row is checkpointed. Default is none");
+        printConsoleLog("SYNC_BATCH_FILES   -- Files synced together with SYNC_POLICY batched.\n\t\t\t\t\t\tDefault value is 100");
+        printConsoleLog("SYNC_BATCH_BYTES   -- Bytes synced together with SYNC_POLICY batched, whichever limit is reached first.\n\t\t\t\t\t\tDefault value is 256 MB");
+        printConsoleLog("READ_ORDER         -- scan or inode. inode copies each batch sorted by source device and inode number, for\n\t\t\t\t\t\tsources on spinning disks. Linux only. Default is scan");
+        printConsoleLog("READERS_PER_DEVICE -- Concurrent readers per source device with READ_ORDER inode.\n\t\t\t\t\t\tDefault value is 1");
+        printConsoleLog("SOURCE_INDEX_REFRESH_SECONDS -- SRC_FOLDER is listed once and rows are checked against the listing. A guid\n\t\t\t\t\t\tnot in it lists the folder again if the listing is older than this. Default value is 60");
+        printConsoleLog("SCAN_CACHE         -- Keep the scan of every guid folder in data-organizer/scan-cache, a rerun lists only the\n\t\t\t\t\t\tdirectories modified since. Default is false");
+        printConsoleLog("ROW_FINGERPRINTS   -- Remember a fingerprint of every processed row, a rerun of a corrected manifest only\n\t\t\t\t\t\tcopies new or changed rows and moves the files of rows whose target folder changed. Default is false");
+        printConsoleLog("PROFILE_REPORT     -- Write row-profile.csv and extension-profile.csv next to copy-stats.properties, with scan\n\t\t\t\t\t\tand copy times, sizes, rates, slowest files and failures per row and per extension. Default is false");
+        printConsoleLog("EVENT_TRACE        -- Record planned, copied and failed files, checksums, batches and rows as binary events in\n\t\t\t\t\t\t" + EVENT_TRACE_FILE + " next to the stats file. Default is false");
+        printConsoleLog("EVENT_TRACE_BUFFER -- Events buffered in memory for the trace writer, further events are dropped while it\n\t\t\t\t\t\tis full. Default value is 65536");
+        printConsoleLog("FILE_LOG_SAMPLE    -- Log the INFO lines of every n-th copied or hashed file, 0 for none.\n\t\t\t\t\t\tDefault value is 1");
+        printConsoleLog("RETRY_FAILED       -- Only recopy the source->target entries of " + FILES_FAILED + ", recovered ones move to\n\t\t\t\t\t\t" + FILES_COPIED + ". Default is false");
+        printConsoleLog("RETRY_MAX_ATTEMPTS -- Attempts per failed entry in the retry mode.\n\t\t\t\t\t\tDefault value is 5");
+        printConsoleLog("RETRY_BACKOFF_MILLIS -- Wait before the second attempt, doubled for every further attempt.\n\t\t\t\t\t\tDefault value is 1000");
+        printConsoleLog("RETRY_MAX_BACKOFF_SECONDS -- Longest wait between two attempts.\n\t\t\t\t\t\tDefault value is 60");
         printConsoleLog("REPLACE_CHARS      -- Regex patterns to replace special characters from file names e.g [!@#$%^&]");
         printConsoleLog("FAIL_FAST          -- Fail fast as script hits any error else it will just log the error and keep trying the next paths.\n\t\t\t\t\tDefault is true");
         printConsoleLog("SHALLOW_FILE_COMPARISON-- Compare file using length only, else will use the checksum too.\n\t\t\t\t\tDefault is false");
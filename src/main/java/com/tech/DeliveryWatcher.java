@@ -0,0 +1,192 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the process running once the manifests are done and feeds new deliveries into it.
+ * <p>
+ * Watches the folders of the manifest workbooks and SRC_FOLDER. A new or changed workbook is handed back to be processed
+ * from its sheet checkpoints, so only its new rows are planned. A new folder in SRC_FOLDER releases the rows waiting for
+ * that guid. Deliveries are usually still being written when the first event arrives, so both wait until nothing changed
+ * for the settle time. Every new or changed source folder is settling until then, also when no row waits for it yet, and
+ * rows read meanwhile wait for it like for a missing folder.
+ */
+public class DeliveryWatcher {
+
+    static Logger logger = LogManager.getLogger(DeliveryWatcher.class);
+
+    private static final long POLL_MILLIS = 1000;
+
+    public interface Listener {
+        List<File> resolveManifests() throws IOException;
+
+        void manifestChanged(File manifest) throws IOException;
+
+        void sourceFolderArrived(String folderName) throws IOException;
+
+        /**
+         * @return names of the SRC_FOLDER folders rows are waiting for
+         */
+        Set<String> pendingSourceFolders();
+    }
+
+    private final Listener listener;
+    private final long settleMillis;
+    // Changes waiting to settle, with the time they are due.
+    private final Map<File, Long> dueManifests = new HashMap<>();
+    // Read by the sheet threads while a changed manifest is planned.
+    private final Map<String, Long> dueSourceFolders = new ConcurrentHashMap<>();
+
+    public DeliveryWatcher(Listener listener, long settleMillis) {
+        this.listener = listener;
+        this.settleMillis = settleMillis;
+    }
+
+    /**
+     * @return true if the source folder was created or changed and has not settled yet
+     */
+    public boolean isSettling(final String folderName) {
+        return dueSourceFolders.containsKey(folderName);
+    }
+
+    /**
+     * Blocks until the thread is interrupted or the listener fails.
+     */
+    public void watch(final Collection<File> manifestFolders, final File sourceFolder) throws IOException {
+        final Path sourcePath = sourceFolder.toPath().toAbsolutePath();
+        final Set<Path> manifestPaths = new LinkedHashSet<>();
+        manifestFolders.forEach(folder -> manifestPaths.add(folder.toPath().toAbsolutePath()));
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            final Map<WatchKey, Path> watchedPaths = new HashMap<>();
+            for (final Path manifestPath : manifestPaths) {
+                watchedPaths.put(manifestPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY),
+                    manifestPath);
+            }
+            if (!manifestPaths.contains(sourcePath)) {
+                watchedPaths.put(sourcePath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY),
+                    sourcePath);
+            }
+            logger.info("Watching manifest folders {} and source folder {} for new deliveries", manifestPaths, sourcePath);
+
+            // Folders may have arrived between reading the manifests and registering the watch.
+            scheduleArrivedSourceFolders(sourcePath);
+            while (!watchedPaths.isEmpty()) {
+                final WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    final Path dir = watchedPaths.get(key);
+                    handleEvents(key, dir, manifestPaths, sourcePath);
+                    if (!key.reset()) {
+                        logger.error("Folder {} is no longer accessible, stopped watching it", dir);
+                        watchedPaths.remove(key);
+                    }
+                }
+                processDueChanges(sourcePath);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Watch mode interrupted, stopping");
+        }
+    }
+
+    private void handleEvents(final WatchKey key, final Path dir, final Set<Path> manifestPaths, final Path sourcePath) throws IOException {
+        final long dueAt = System.currentTimeMillis() + settleMillis;
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                logger.info("Missed file system events in {}, rechecking all manifests and pending folders", dir);
+                listener.resolveManifests().forEach(manifest -> dueManifests.put(manifest, dueAt));
+                scheduleArrivedSourceFolders(sourcePath);
+                continue;
+            }
+            final Path child = dir.resolve((Path) event.context());
+            if (dir.equals(sourcePath) && Files.isDirectory(child)) {
+                dueSourceFolders.put(child.getFileName().toString(), dueAt);
+            }
+            if (manifestPaths.contains(dir)) {
+                for (final File manifest : listener.resolveManifests()) {
+                    if (manifest.getAbsoluteFile().toPath().equals(child)) {
+                        dueManifests.put(manifest, dueAt);
+                    }
+                }
+            }
+        }
+    }
+
+    private void scheduleArrivedSourceFolders(final Path sourcePath) {
+        final long dueAt = System.currentTimeMillis() + settleMillis;
+        for (final String folderName : listener.pendingSourceFolders()) {
+            if (Files.isDirectory(sourcePath.resolve(folderName))) {
+                dueSourceFolders.put(folderName, dueAt);
+            }
+        }
+    }
+
+    /**
+     * Manifests go first. Their rows for a folder still settling wait for it, and are planned once the folder is taken
+     * here, in this or a later round.
+     */
+    private void processDueChanges(final Path sourcePath) throws IOException {
+        final long now = System.currentTimeMillis();
+        for (final File manifest : takeDue(dueManifests, now)) {
+            logger.info("Manifest {} changed, planning its new rows", manifest.getPath());
+            listener.manifestChanged(manifest);
+        }
+        for (final String folderName : takeDue(dueSourceFolders, now)) {
+            // The create event only covers the folder itself, files still being written into it show in the modification times.
+            final long lastModified = lastModifiedInTree(sourcePath.resolve(folderName));
+            if (lastModified > now - settleMillis) {
+                dueSourceFolders.put(folderName, lastModified + settleMillis);
+                continue;
+            }
+            logger.info("Source folder {} settled, planning the rows waiting for it", folderName);
+            listener.sourceFolderArrived(folderName);
+        }
+    }
+
+    private static <K> List<K> takeDue(final Map<K, Long> dueChanges, final long now) {
+        final List<K> due = new ArrayList<>();
+        dueChanges.forEach((change, dueAt) -> {
+            if (dueAt <= now) {
+                due.add(change);
+            }
+        });
+        due.forEach(dueChanges::remove);
+        return due;
+    }
+
+    private static long lastModifiedInTree(final Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.mapToLong(path -> {
+                try {
+                    return Files.getLastModifiedTime(path).toMillis();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).max().orElse(0);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
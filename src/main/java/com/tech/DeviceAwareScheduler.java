@@ -0,0 +1,203 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches copy tasks onto the shared copy pool with an independent concurrency limit per {@link FileStore}.
+ * <p>
+ * Tasks are queued per source/target store pair and dispatched round-robin across the queues. A task only starts when both
+ * its source store and its target store are below their limit, so a slow device can never take every worker of the pool.
+ */
+public class DeviceAwareScheduler {
+
+    static Logger logger = LogManager.getLogger(DeviceAwareScheduler.class);
+
+    private static final String UNKNOWN_STORE = "unknown";
+
+    private final Executor executor;
+    private final int defaultStoreLimit;
+    private final Map<String, Integer> storeLimitOverrides;
+
+    // Resolved store per directory, files in the same folder never hit the file system again.
+    private final Map<String, String> directoryToStore = new ConcurrentHashMap<>();
+    private final Map<String, Integer> storeLimits = new HashMap<>();
+    private final Map<String, Integer> storeInFlight = new HashMap<>();
+    private final Map<String, Deque<PendingTask>> laneQueues = new HashMap<>();
+    private final List<String> laneOrder = new ArrayList<>();
+    private int nextLane;
+
+    /**
+     * @param executor            pool running the tasks
+     * @param defaultStoreLimit   max concurrent tasks reading or writing a store
+     * @param storeLimitOverrides store name (as reported by {@link FileStore#name()}) to its own limit
+     */
+    public DeviceAwareScheduler(Executor executor, int defaultStoreLimit, Map<String, Integer> storeLimitOverrides) {
+        this.executor = executor;
+        this.defaultStoreLimit = Math.max(1, defaultStoreLimit);
+        this.storeLimitOverrides = storeLimitOverrides;
+    }
+
+    /**
+     * Parses overrides in the form name=limit->name=limit.
+     */
+    public static Map<String, Integer> parseStoreLimits(String storeLimits) {
+        final Map<String, Integer> limits = new HashMap<>();
+        if (storeLimits == null || storeLimits.trim().isEmpty()) {
+            return limits;
+        }
+        for (String entry : storeLimits.split("->")) {
+            final int indexOfEquals = entry.lastIndexOf('=');
+            if (indexOfEquals <= 0) {
+                logger.error("Ignoring invalid store limit entry {}", entry);
+                continue;
+            }
+            limits.put(entry.substring(0, indexOfEquals).trim(), Integer.parseInt(entry.substring(indexOfEquals + 1).trim()));
+        }
+        return limits;
+    }
+
+    public CompletableFuture<Void> submit(final File source, final File target, final Runnable task) {
+        final String sourceStore = resolveStore(source.getParentFile());
+        final String targetStore = resolveStore(target.getParentFile());
+        final PendingTask pendingTask = new PendingTask(sourceStore, targetStore, task);
+        synchronized (this) {
+            final String lane = sourceStore + "->" + targetStore;
+            Deque<PendingTask> queue = laneQueues.get(lane);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                laneQueues.put(lane, queue);
+                laneOrder.add(lane);
+                logger.info("New device lane {} with limits {} / {}", lane, limitOf(sourceStore), limitOf(targetStore));
+            }
+            queue.addLast(pendingTask);
+            dispatch();
+        }
+        return pendingTask.future;
+    }
+
+    private String resolveStore(final File directory) {
+        if (directory == null) {
+            return UNKNOWN_STORE;
+        }
+        return directoryToStore.computeIfAbsent(directory.getPath(), dir -> {
+            Path path = directory.toPath();
+            // Target folders may not exist yet, walk up to the nearest existing parent.
+            while (path != null && !Files.exists(path)) {
+                path = path.getParent();
+            }
+            if (path == null) {
+                return UNKNOWN_STORE;
+            }
+            try {
+                return Files.getFileStore(path).name();
+            } catch (IOException e) {
+                logger.error("Failed to resolve file store of {}", directory.getPath());
+                logger.error(e);
+                return UNKNOWN_STORE;
+            }
+        });
+    }
+
+    private int limitOf(final String store) {
+        return storeLimits.computeIfAbsent(store, s -> storeLimitOverrides.getOrDefault(s, defaultStoreLimit));
+    }
+
+    private boolean hasCapacity(final String store) {
+        return storeInFlight.getOrDefault(store, 0) < limitOf(store);
+    }
+
+    private void acquire(final PendingTask task) {
+        updateInFlight(task, 1);
+    }
+
+    private synchronized void release(final PendingTask task) {
+        updateInFlight(task, -1);
+        dispatch();
+    }
+
+    private void updateInFlight(final PendingTask task, final int delta) {
+        storeInFlight.merge(task.sourceStore, delta, Integer::sum);
+        // A copy within one device takes a single slot of it.
+        if (!task.targetStore.equals(task.sourceStore)) {
+            storeInFlight.merge(task.targetStore, delta, Integer::sum);
+        }
+    }
+
+    /**
+     * Round-robin over the lanes, starting one task per lane per pass until no lane can make progress.
+     * Must be called holding the lock.
+     */
+    private void dispatch() {
+        boolean dispatched = true;
+        while (dispatched && !laneOrder.isEmpty()) {
+            dispatched = false;
+            for (int i = 0; i < laneOrder.size(); i++) {
+                final int laneIndex = (nextLane + i) % laneOrder.size();
+                final Deque<PendingTask> queue = laneQueues.get(laneOrder.get(laneIndex));
+                final PendingTask head = queue.peekFirst();
+                if (head == null || !hasCapacity(head.sourceStore) || !hasCapacity(head.targetStore)) {
+                    continue;
+                }
+                queue.pollFirst();
+                acquire(head);
+                start(head);
+                nextLane = (laneIndex + 1) % laneOrder.size();
+                dispatched = true;
+                break;
+            }
+        }
+    }
+
+    private void start(final PendingTask task) {
+        try {
+            executor.execute(() -> {
+                Throwable failure = null;
+                try {
+                    task.task.run();
+                } catch (Throwable e) {
+                    failure = e;
+                }
+                // Free the slots before completing so waiting callers see the capacity.
+                release(task);
+                if (failure == null) {
+                    task.future.complete(null);
+                } else {
+                    task.future.completeExceptionally(failure);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Rejected by the pool, give back the slots so the other lanes are not blocked.
+            updateInFlight(task, -1);
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingTask {
+        private final String sourceStore;
+        private final String targetStore;
+        private final Runnable task;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingTask(String sourceStore, String targetStore, Runnable task) {
+            this.sourceStore = sourceStore;
+            this.targetStore = targetStore;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.tech;
+
+import com.tech.utils.StatsUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Syncs written targets to disk according to the sync policy before they are recorded as copied.
+ * <p>
+ * NONE leaves writing back to the operating system. PER_FILE syncs each target right after it was written. BATCHED and
+ * AT_ROW_END collect the written targets and sync them together on one thread, BATCHED once the group reaches its file or
+ * byte limit and AT_ROW_END when a row is complete. Their copied log entries are appended once their group is synced, and a
+ * row is only checkpointed once every file written before its end is synced.
+ * <br>The folder of a target is synced as well where the platform can open folders, so the new entry survives too.
+ */
+public class DurabilitySync {
+
+    static Logger logger = LogManager.getLogger(DurabilitySync.class);
+
+    private final SyncPolicy policy;
+    private final int batchFiles;
+    private final long batchBytes;
+    private final boolean failFast;
+    // Syncs the groups one after another, null unless the policy collects groups.
+    private final ExecutorService syncer;
+    private List<WrittenFile> pending = new ArrayList<>();
+    private long pendingBytes;
+    private CompletableFuture<Void> pendingGroupSynced = new CompletableFuture<>();
+    private CompletableFuture<Void> lastSync = CompletableFuture.completedFuture(null);
+
+    public DurabilitySync(SyncPolicy policy, int batchFiles, long batchBytes, boolean failFast) {
+        this.policy = policy;
+        this.batchFiles = Math.max(1, batchFiles);
+        this.batchBytes = batchBytes;
+        this.failFast = failFast;
+        this.syncer = policy == SyncPolicy.BATCHED || policy == SyncPolicy.AT_ROW_END
+            ? Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "durability-sync")) : null;
+    }
+
+    public SyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Called once a target was written and checked.
+     *
+     * @param logEntry  copied log entry of the target
+     * @param logCopied false if the target was logged as copied before, e.g. a recopy, it is then only logged if it fails
+     * @return true if the entry can be logged now, false if it is logged once its group was synced
+     * @throws IOException if the target could not be synced right away
+     */
+    boolean written(final File target, final long length, final String logEntry, final boolean logCopied) throws IOException {
+        if (policy == SyncPolicy.NONE) {
+            return true;
+        }
+        if (policy == SyncPolicy.PER_FILE) {
+            syncNow(target);
+            return true;
+        }
+        synchronized (this) {
+            pending.add(new WrittenFile(target, length, logEntry, logCopied));
+            pendingBytes += length;
+            if (policy == SyncPolicy.BATCHED && (pending.size() >= batchFiles || (batchBytes > 0 && pendingBytes >= batchBytes))) {
+                flush();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Syncs a file that is logged by its writer right away, unless the policy is NONE. Used for whole archives, which are
+     * large enough to be their own group.
+     */
+    void syncNow(final File file) throws IOException {
+        if (policy != SyncPolicy.NONE) {
+            sync(file);
+            syncFolder(file.getParentFile());
+        }
+    }
+
+    /**
+     * Starts syncing the files collected so far.
+     *
+     * @return completes once they and all earlier groups are synced
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        if (pending.isEmpty()) {
+            return lastSync;
+        }
+        final List<WrittenFile> group = pending;
+        final CompletableFuture<Void> groupSynced = pendingGroupSynced;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        pendingGroupSynced = new CompletableFuture<>();
+        // A failed group must not stop the later ones, its own future still reports the failure.
+        lastSync = lastSync.handle((ignored, e) -> null).thenRunAsync(() -> {
+            syncGroup(group);
+            groupSynced.complete(null);
+        }, syncer);
+        return lastSync;
+    }
+
+    /**
+     * Runs the checkpoint of a completed row once the files written so far are durable. AT_ROW_END syncs them and waits,
+     * BATCHED runs the checkpoint on the sync thread once their group is synced.
+     */
+    public void whenRowDurable(final Runnable checkpoint) {
+        if (policy == SyncPolicy.AT_ROW_END) {
+            flush().join();
+        } else if (policy == SyncPolicy.BATCHED) {
+            final CompletableFuture<Void> durable;
+            synchronized (this) {
+                durable = pending.isEmpty() ? lastSync : pendingGroupSynced;
+            }
+            durable.thenRun(checkpoint).exceptionally(e -> {
+                logger.error("Failed to update the checkpoint after syncing");
+                logger.error(e);
+                return null;
+            });
+            return;
+        }
+        checkpoint.run();
+    }
+
+    /**
+     * Syncs the remaining files and waits for all groups.
+     */
+    public void shutdown() {
+        try {
+            flush().join();
+        } catch (CompletionException e) {
+            logger.error("Failed to sync the last written files");
+            logger.error(e.getCause());
+        }
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+    }
+
+    private void syncGroup(final List<WrittenFile> group) {
+        logger.info("Syncing {} written files", group.size());
+        final StringBuilder copiedEntries = new StringBuilder();
+        final StringBuilder failedEntries = new StringBuilder();
+        final Set<File> folders = new LinkedHashSet<>();
+        for (final WrittenFile file : group) {
+            try {
+                sync(file.target);
+                if (file.logCopied) {
+                    copiedEntries.append(file.logEntry);
+                }
+                folders.add(file.target.getParentFile());
+            } catch (IOException e) {
+                logger.error(e);
+                logger.error("Failed to sync file {}, logging it as failed", file.target.getPath());
+                failedEntries.append(file.logEntry);
+                // It was counted as copied when written.
+                StatsUtil.getInstance().updateRevokedCopyStats(file.length);
+            }
+        }
+        folders.forEach(DurabilitySync::syncFolder);
+        CopyFileTask.appendLogEntries(copiedEntries, failedEntries, failFast);
+    }
+
+    /**
+     * Opens the file for reading, which is enough for fsync on POSIX and also works for read-only targets, hard links of
+     * read-only sources or copies keeping the read-only attribute. Windows only flushes files opened for writing.
+     */
+    static void sync(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+            return;
+        } catch (IOException e) {
+            if (!file.canWrite()) {
+                throw e;
+            }
+            logger.debug("Could not sync {} opened for reading, opening it for writing: {}", file.getPath(), e.getMessage());
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static void syncFolder(final File folder) {
+        if (folder == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Folders cannot be opened on every platform, e.g. Windows, the file data is synced regardless.
+            logger.debug("Could not sync folder {}: {}", folder.getPath(), e.getMessage());
+        }
+    }
+
+    private static class WrittenFile {
+        private final File target;
+        private final long length;
+        private final String logEntry;
+        private final boolean logCopied;
+
+        WrittenFile(File target, long length, String logEntry, boolean logCopied) {
+            this.target = target;
+            this.length = length;
+            this.logEntry = logEntry;
+            this.logCopied = logCopied;
+        }
+    }
+}
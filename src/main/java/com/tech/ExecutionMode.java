@@ -0,0 +1,39 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    static Logger logger = LogManager.getLogger(ExecutionMode.class);
+
+    private static final String VIRTUAL_THREAD_FACTORY = "com.tech.VirtualThreadExecutorFactory";
+
+    public static ExecutionMode fromValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return PLATFORM;
+        }
+        return ExecutionMode.valueOf(value.trim().toUpperCase());
+    }
+
+    /**
+     * @return executor starting one virtual thread per task, or null when this build or JVM has no virtual thread support
+     */
+    public static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        try {
+            final Class<?> factory = Class.forName(VIRTUAL_THREAD_FACTORY);
+            return (ExecutorService) factory.getMethod("newExecutor", String.class).invoke(null, namePrefix);
+        } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
+            logger.error("Virtual threads need the java21 build profile and a Java 21 runtime.");
+            return null;
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            logger.error(e);
+            return null;
+        }
+    }
+}
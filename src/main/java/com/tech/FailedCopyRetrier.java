@@ -0,0 +1,180 @@
+package com.tech;
+
+import com.tech.utils.StatsUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Recopies the source->target entries of the failed log without walking the manifest again.
+ * <p>
+ * All entries go to the copy pool at once. A failed attempt is scheduled again after an exponential backoff, without holding a
+ * copy thread while it waits. Recovered files are logged as copied and the failed log keeps only the entries still failing.
+ */
+public class FailedCopyRetrier {
+
+    static Logger logger = LogManager.getLogger(FailedCopyRetrier.class);
+
+    private static final String ENTRY_SEPARATOR = "->";
+
+    private final Function<CopyTask, CompletableFuture<Void>> copySubmitter;
+    private final BiFunction<File, File, TransferMode> transferModeResolver;
+    private final CopySettings settings;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ScheduledExecutorService backoffScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger recovered = new AtomicInteger();
+    private final ConcurrentLinkedQueue<String> stillFailing = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param copySubmitter        runs a task on the copy pool
+     * @param transferModeResolver transfer mode for a source and target file
+     * @param settings             copy settings, must not fail fast
+     * @param maxAttempts          attempts per entry including the first one
+     */
+    public FailedCopyRetrier(Function<CopyTask, CompletableFuture<Void>> copySubmitter, BiFunction<File, File, TransferMode> transferModeResolver,
+                             CopySettings settings, int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        this.copySubmitter = copySubmitter;
+        this.transferModeResolver = transferModeResolver;
+        this.settings = settings;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+    }
+
+    public void retry(final File failedLog) throws IOException {
+        if (!failedLog.exists()) {
+            logger.info("No failed log {}, nothing to retry", failedLog.getPath());
+            return;
+        }
+        // The same entry may be listed by several runs.
+        final Set<String> entries = new LinkedHashSet<>(Files.readAllLines(failedLog.toPath(), Charset.defaultCharset()));
+        final List<CompletableFuture<Void>> retries = new ArrayList<>();
+        for (final String entry : entries) {
+            final int indexOfSeparator = entry.indexOf(ENTRY_SEPARATOR);
+            if (indexOfSeparator <= 0) {
+                if (!entry.trim().isEmpty()) {
+                    logger.error("Keeping unreadable failed log entry {}", entry);
+                    stillFailing.add(entry);
+                }
+                continue;
+            }
+            final File source = new File(entry.substring(0, indexOfSeparator));
+            final File target = new File(entry.substring(indexOfSeparator + ENTRY_SEPARATOR.length()));
+            retries.add(attempt(entry, source, target, 1));
+        }
+        logger.info("Retrying {} failed copies with up to {} attempts each", retries.size(), maxAttempts);
+        try {
+            CompletableFuture.allOf(retries.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            backoffScheduler.shutdown();
+        }
+
+        rewriteFailedLog(failedLog);
+        StatsUtil.getInstance().flushChanges();
+        logger.info("Retry of failed copies completed, {} recovered, {} still failing", recovered.get(), stillFailing.size());
+    }
+
+    private CompletableFuture<Void> attempt(final String entry, final File source, final File target, final int attemptNumber) {
+        final RetryTask task = new RetryTask(new CopyFileTask(source, target, -1, transferModeResolver.apply(source, target), settings));
+        return copySubmitter.apply(task).thenCompose(ignored -> {
+            StatsUtil.getInstance().updateRetryStats(task.succeeded);
+            if (task.succeeded) {
+                recovered.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!source.exists()) {
+                logger.error("Source {} no longer exists, not retrying it", source.getPath());
+                stillFailing.add(entry);
+                return CompletableFuture.completedFuture(null);
+            }
+            if (attemptNumber >= maxAttempts) {
+                logger.error("Giving up on {} after {} attempts", source.getPath(), attemptNumber);
+                stillFailing.add(entry);
+                return CompletableFuture.completedFuture(null);
+            }
+            final long backoffMillis = backoffMillis(attemptNumber);
+            logger.info("Attempt {} of {} failed, retrying in {} ms", attemptNumber, source.getPath(), backoffMillis);
+            final CompletableFuture<Void> nextAttempt = new CompletableFuture<>();
+            backoffScheduler.schedule(() -> attempt(entry, source, target, attemptNumber + 1).whenComplete((result, e) -> {
+                if (e == null) {
+                    nextAttempt.complete(null);
+                } else {
+                    nextAttempt.completeExceptionally(e);
+                }
+            }), backoffMillis, TimeUnit.MILLISECONDS);
+            return nextAttempt;
+        });
+    }
+
+    /**
+     * Doubles per attempt up to the max, half of it random so failures of one outage do not all come back at once.
+     */
+    private long backoffMillis(final int attemptNumber) {
+        final long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attemptNumber - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private void rewriteFailedLog(final File failedLog) throws IOException {
+        final File rewrittenLog = new File(failedLog.getPath() + ".tmp");
+        Files.write(rewrittenLog.toPath(), stillFailing, Charset.defaultCharset());
+        Files.move(rewrittenLog.toPath(), failedLog.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copies once, the entry is logged as copied on success and left to the retrier otherwise.
+     */
+    private static class RetryTask implements CopyTask {
+        private final CopyFileTask task;
+        private volatile boolean succeeded;
+
+        RetryTask(CopyFileTask task) {
+            this.task = task;
+        }
+
+        @Override
+        public File getFromPath() {
+            return task.getFromPath();
+        }
+
+        @Override
+        public File getToPath() {
+            return task.getToPath();
+        }
+
+        @Override
+        public long getLength() {
+            return task.getLength();
+        }
+
+        @Override
+        public void run() {
+            final File targetFolder = task.getToPath().getParentFile();
+            if (targetFolder != null && !targetFolder.exists() && !targetFolder.mkdirs()) {
+                logger.error("Failed to create the folder path: {}", targetFolder);
+            }
+            final StringBuilder copiedEntries = new StringBuilder();
+            succeeded = task.copy(null, copiedEntries, new StringBuilder());
+            CopyFileTask.appendLogEntries(copiedEntries, new StringBuilder(), false);
+        }
+    }
+}
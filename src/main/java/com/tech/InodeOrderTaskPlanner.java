@@ -0,0 +1,149 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Orders a window of planned copies by the physical position of their sources, for sources on spinning disks.
+ * <p>
+ * The files are grouped by the device holding their source and sorted by inode number within it. Linux file systems mostly
+ * lay out inodes and data in the same order, so reading in inode order comes close to one sequential pass over the disk
+ * instead of seeking between folders. Each device gets a fixed number of readers taking its files in that order from one
+ * shared queue, so no more than that many reads compete for the heads of a disk, whatever the size of the copy pool.
+ * <br>The limit holds for the whole process, readers of batches planned by other sheets wait for a permit of their device
+ * on their copy thread.
+ */
+public class InodeOrderTaskPlanner {
+
+    static Logger logger = LogManager.getLogger(InodeOrderTaskPlanner.class);
+
+    // Device of sources whose inode could not be read, they keep their scan order.
+    public static final long UNKNOWN = -1;
+    private static final String UNIX_VIEW = "unix";
+
+    private final int readersPerDevice;
+    private final Map<Long, Semaphore> readerPermitsByDevice = new ConcurrentHashMap<>();
+
+    public InodeOrderTaskPlanner(int readersPerDevice) {
+        this.readersPerDevice = Math.max(1, readersPerDevice);
+    }
+
+    /**
+     * @return false where the file system has no unix attribute view, e.g. on Windows
+     */
+    public static boolean isSupported() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains(UNIX_VIEW);
+    }
+
+    /**
+     * @return device and inode number of the file, {@link #UNKNOWN} for both if they cannot be read
+     */
+    public static long[] readPhysicalKey(final Path file) {
+        try {
+            final Map<String, Object> attributes = Files.readAttributes(file, UNIX_VIEW + ":dev,ino");
+            return new long[]{(Long) attributes.get("dev"), (Long) attributes.get("ino")};
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.error("Failed to read the inode of {}, copying it in scan order: {}", file, e.getMessage());
+            return new long[]{UNKNOWN, UNKNOWN};
+        }
+    }
+
+    /**
+     * @param devices device of each task's source, in the order of the window
+     * @param inodes  inode number of each task's source, in the order of the window
+     */
+    public List<CopyTask> plan(final List<CopyFileTask> window, final long[] devices, final long[] inodes) {
+        final Integer[] order = new Integer[window.size()];
+        Arrays.setAll(order, i -> i);
+        // Stable, so unknown inodes keep the scan order.
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> devices[i]).thenComparingLong(i -> inodes[i]));
+
+        final List<CopyTask> readers = new ArrayList<>();
+        int start = 0;
+        while (start < order.length) {
+            int end = start;
+            final Queue<CopyFileTask> deviceQueue = new ConcurrentLinkedQueue<>();
+            long deviceLength = 0;
+            while (end < order.length && devices[order[end]] == devices[order[start]]) {
+                final CopyFileTask task = window.get(order[end++]);
+                deviceQueue.add(task);
+                deviceLength += task.getLength();
+            }
+            final int deviceReaders = Math.min(readersPerDevice, end - start);
+            // Fair, so the batches of a device are read in the order they were planned.
+            final Semaphore readerPermits = readerPermitsByDevice.computeIfAbsent(devices[order[start]],
+                device -> new Semaphore(readersPerDevice, true));
+            for (int i = 0; i < deviceReaders; i++) {
+                readers.add(new DeviceReader(deviceQueue, readerPermits, deviceQueue.peek(), deviceLength / deviceReaders));
+            }
+            logger.info("Reading {} files of device {} in inode order with {} readers", end - start, devices[order[start]], deviceReaders);
+            start = end;
+        }
+        return readers;
+    }
+
+    /**
+     * Copies the files of one device from the shared queue until it is empty, holding a reader permit of the device.
+     */
+    private static class DeviceReader implements CopyTask {
+        private final Queue<CopyFileTask> queue;
+        private final Semaphore readerPermits;
+        private final CopyFileTask first;
+        private final long length;
+
+        DeviceReader(Queue<CopyFileTask> queue, Semaphore readerPermits, CopyFileTask first, long length) {
+            this.queue = queue;
+            this.readerPermits = readerPermits;
+            this.first = first;
+            this.length = length;
+        }
+
+        @Override
+        public File getFromPath() {
+            return first.getFromPath();
+        }
+
+        @Override
+        public File getToPath() {
+            return first.getToPath();
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void run() {
+            try {
+                readerPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a device reader permit", e);
+            }
+            try {
+                CopyFileTask task;
+                while ((task = queue.poll()) != null) {
+                    task.run();
+                }
+            } finally {
+                readerPermits.release();
+            }
+        }
+    }
+}
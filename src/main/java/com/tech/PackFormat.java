@@ -0,0 +1,18 @@
+package com.tech;
+
+public enum PackFormat {
+    NONE,
+    ZIP,
+    TAR;
+
+    public static PackFormat fromValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NONE;
+        }
+        return PackFormat.valueOf(value.trim().toUpperCase());
+    }
+
+    public String getExtension() {
+        return "." + name().toLowerCase();
+    }
+}
@@ -0,0 +1,119 @@
+package com.tech;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Walks a tree listing every directory on its own task, so on high latency mounts the directory reads overlap.
+ * <p>
+ * Files are still handed to the visitor on the calling thread and in the same order as {@link Files#walkFileTree},
+ * so planning logic like collision renaming stays single threaded. Listing a directory holds one I/O permit.
+ */
+public class ParallelTreeScanner {
+
+    public interface Visitor {
+        /**
+         * May be called concurrently from the scanning threads.
+         *
+         * @return false to skip the directory and its subtree
+         */
+        boolean preVisitDirectory(Path dir);
+
+        void visitFile(Path file, BasicFileAttributes attrs) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public ParallelTreeScanner(ExecutorService executor, Semaphore permits) {
+        this.executor = executor;
+        this.permits = permits;
+    }
+
+    public void walk(final Path root, final Visitor visitor) throws IOException {
+        if (!visitor.preVisitDirectory(root)) {
+            return;
+        }
+        try {
+            replay(scan(root, visitor).join(), visitor);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<DirectoryNode> scan(final Path dir, final Visitor visitor) {
+        return CompletableFuture.supplyAsync(() -> {
+            final DirectoryNode node = new DirectoryNode();
+            for (final Entry entry : list(dir)) {
+                if (entry.attrs.isDirectory()) {
+                    if (visitor.preVisitDirectory(entry.path)) {
+                        entry.child = scan(entry.path, visitor);
+                        node.entries.add(entry);
+                    }
+                } else {
+                    node.entries.add(entry);
+                }
+            }
+            return node;
+        }, executor);
+    }
+
+    private List<Entry> list(final Path dir) {
+        final List<Entry> entries = new ArrayList<>();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an I/O permit", e);
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (final Path path : stream) {
+                entries.add(new Entry(path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            permits.release();
+        }
+        return entries;
+    }
+
+    private void replay(final DirectoryNode node, final Visitor visitor) throws IOException {
+        for (final Entry entry : node.entries) {
+            if (entry.child != null) {
+                replay(entry.child.join(), visitor);
+            } else {
+                visitor.visitFile(entry.path, entry.attrs);
+            }
+        }
+    }
+
+    private static class DirectoryNode {
+        private final List<Entry> entries = new ArrayList<>();
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        private CompletableFuture<DirectoryNode> child;
+
+        Entry(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.attrs = attrs;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.tech;
 
+import com.tech.utils.BandwidthThrottler;
 import com.tech.utils.CheckSumUtil;
+import com.tech.utils.EventTrace;
 import com.tech.utils.FileUtil;
+import com.tech.utils.PathTable;
 import com.tech.utils.StatsUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,6 +20,8 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -28,19 +33,31 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class ProcessExecutor {
 
@@ -49,17 +66,38 @@ public class ProcessExecutor {
     private final String targetQuarantinePath;
     private File targetQuarantineFolderPath;
     private final String sourceFolderPath;
+    // Guid folders of the source folder, listed once instead of checked per row.
+    private final SourceIndex sourceIndex;
     private final String inputFile;
     private final String[] pathSequences;
     private final Set<String> optionalPathSequences;
     private final ExecutorService executorService;
+    // Platform copy pool, null when running on virtual threads.
+    private ThreadPoolExecutor copyPool;
+    // Copies on virtual threads, null when they run on copyPool.
+    private BoundedExecutorService virtualCopies;
+    private ExecutorService scanExecutor;
+    private ParallelTreeScanner treeScanner;
+    // Serves unchanged source directories from the previous scan, null unless enabled.
+    private ScanCache scanCache;
+    // Skips rows processed by an earlier run of the manifest, rows are planned by start index otherwise.
+    private final boolean rowFingerprints;
+    // Writes the per row and per extension profile, null unless enabled.
+    private RowProfileReport profileReport;
+    private AdaptiveConcurrencyController concurrencyController;
+    private DeviceAwareScheduler deviceScheduler;
+    // Live stats, pause and tuning of the run over JMX.
+    private final RunControl runControl;
 
     private static final String DEFAULT_FOLDER_SEQUENCE_PATH = "decade->series title->year->episode number;episode title->title_version_additional_infor";
 
     private static final String DEFAULT_FOLDER_SEQUENCE_OPTIONAL_FIELDS = "series title->episode number->title_version_additional_infor";
     private static final String DEFAULT_GUID_NAME = "guid";
-    private static final DecimalFormat decimalFormat = new DecimalFormat("0.#");
+    private static final int NO_RELOCATION = -1;
+    private static final String QUARANTINE_SHARD_KEY = "quarantine";
+    private static final ThreadLocal<DecimalFormat> decimalFormat = ThreadLocal.withInitial(() -> new DecimalFormat("0.#"));
     private static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
+    private static final Pattern GLOB_CHARS = Pattern.compile("[*?\\[{]");
     private final Properties properties;
     private Set<String> excludeFileTypesSet;
     private List<Pattern> excludePatternList;
@@ -69,14 +107,43 @@ public class ProcessExecutor {
     private final String messageDigestAlgo;
     private final boolean failFast;
     private final boolean shallowFileComparison;
+    private final TransferMode transferMode;
+    private final CopySettings copySettings;
+    private final DurabilitySync durabilitySync;
+    private VerificationStage verificationStage;
+    // Packs files below the pack threshold into one archive per target folder, null when packing is off.
+    private SmallFilePacker smallFilePacker;
+    private long packThreshold;
 
-    private Map<String, String> targetFileToSrcFileMap;
+    // Target paths planned but not copied yet, shared by all sheets so concurrent rows never pick the same name.
+    private final Set<String> reservedTargets = ConcurrentHashMap.newKeySet();
+    private final SizeAwareTaskPlanner taskPlanner;
+    // Replaces the size aware planning when sources are read in inode order, null otherwise.
+    private InodeOrderTaskPlanner inodeOrderPlanner;
+    private final int batchMaxFiles;
+    private final long batchMaxBytes;
+    private final int sheetThreads;
+    private final int shardIndex;
+    private final int shardCount;
+    // Set when a sheet failed, the other sheets stop at their next row.
+    private volatile boolean aborted;
+    private ExecutorService sheetExecutor;
+    private final boolean watchMode;
+    private final long watchSettleMillis;
+    // Sheets seen so far by checkpoint key, watch mode plans the new rows of a changed manifest into them.
+    private final Map<String, SheetContext> sheetContexts = new ConcurrentHashMap<>();
+    // Set once the manifests were processed in watch mode, tells which source folders are still being written.
+    private volatile DeliveryWatcher deliveryWatcher;
+    // Rows of guids whose folder has not arrived in SRC_FOLDER yet, watch mode only.
+    private final Map<String, List<PendingRow>> pendingRowsByGuid = new ConcurrentHashMap<>();
 
     public ProcessExecutor(Properties properties) {
         this.properties = properties;
 
         this.inputFile = this.properties.getProperty(PropKeysEnum.INPUT_FILE.name());
         this.sourceFolderPath = this.properties.getProperty(PropKeysEnum.SRC_FOLDER.name());
+        this.sourceIndex = new SourceIndex(new File(sourceFolderPath),
+            PropFileHandler.getLong(PropKeysEnum.SOURCE_INDEX_REFRESH_SECONDS.name(), this.properties, 60) * 1000);
         this.targetFolderPath = this.properties.getProperty(PropKeysEnum.TARGET_FOLDER.name());
 
         this.targetQuarantinePath = this.properties.getProperty(PropKeysEnum.QUARANTINE_FOLDER.name());
@@ -99,6 +166,10 @@ public class ProcessExecutor {
         messageDigestAlgo = this.properties.getProperty(PropKeysEnum.CHECKSUM_SCHEME.name(), CheckSumUtil.DEFAULT_SCHEME);
         failFast = PropFileHandler.getBoolean(PropKeysEnum.FAIL_FAST.name(), this.properties, true);
         shallowFileComparison = PropFileHandler.getBoolean(PropKeysEnum.SHALLOW_FILE_COMPARISON.name(), this.properties, false);
+        CheckSumUtil.getInstance().configureTreeHash(
+            StatsUtil.parseReadableSize(PropFileHandler.getString(PropKeysEnum.TREE_HASH_CHUNK_SIZE.name(), this.properties, "32 MB")),
+            PropFileHandler.getInteger(PropKeysEnum.HASH_THREADS.name(), this.properties, 0));
+        transferMode = TransferMode.fromValue(this.properties.getProperty(PropKeysEnum.TRANSFER_MODE.name()));
 
         folderSequence = folderSequence == null || folderSequence.trim().isEmpty() ? DEFAULT_FOLDER_SEQUENCE_PATH : folderSequence.trim();
         pathSequences = Arrays.stream(folderSequence.split("->")).map(String::trim).toArray(String[]::new);
@@ -113,14 +184,192 @@ public class ProcessExecutor {
 
 
         int nThreads = PropFileHandler.getInteger(PropKeysEnum.COPY_THREADS.name(), this.properties, 3);
-        executorService = Executors.newFixedThreadPool(nThreads);
+        executorService = initExecutorService(nThreads);
+        initDeviceScheduling(nThreads);
+        BandwidthThrottler.getInstance().configure(
+            BandwidthThrottler.parseRate(this.properties.getProperty(PropKeysEnum.MAX_COPY_RATE.name())),
+            this.properties.getProperty(PropKeysEnum.COPY_RATE_SCHEDULE.name()));
 
-        targetFileToSrcFileMap = new HashMap<>();
+        durabilitySync = new DurabilitySync(SyncPolicy.fromValue(this.properties.getProperty(PropKeysEnum.SYNC_POLICY.name())),
+            PropFileHandler.getInteger(PropKeysEnum.SYNC_BATCH_FILES.name(), this.properties, 100),
+            StatsUtil.parseReadableSize(PropFileHandler.getString(PropKeysEnum.SYNC_BATCH_BYTES.name(), this.properties, "256 MB")),
+            failFast);
+        copySettings = new CopySettings(blockSize, useStreamCopy, failFast,
+            PropFileHandler.getBoolean(PropKeysEnum.PREALLOCATE_TARGETS.name(), this.properties, false), durabilitySync);
+        initAdaptiveConcurrency(nThreads);
+        initVerificationStage();
+        initSmallFilePacking();
+        initReadOrder();
+        if (PropFileHandler.getBoolean(PropKeysEnum.SCAN_CACHE.name(), this.properties, false)) {
+            scanCache = new ScanCache(DataOrganizerApplication.getScanCacheFolderPath());
+            logger.info("Using the scan cache in {}", DataOrganizerApplication.getScanCacheFolderPath());
+        }
+        rowFingerprints = PropFileHandler.getBoolean(PropKeysEnum.ROW_FINGERPRINTS.name(), this.properties, false);
+        if (PropFileHandler.getBoolean(PropKeysEnum.PROFILE_REPORT.name(), this.properties, false)) {
+            profileReport = new RowProfileReport(DataOrganizerApplication.getPropsFilePath(), failFast);
+        }
+        EventTrace.getInstance().configureFileLog(PropFileHandler.getInteger(PropKeysEnum.FILE_LOG_SAMPLE.name(), this.properties, 1));
+
+        batchMaxFiles = PropFileHandler.getInteger(PropKeysEnum.BATCH_MAX_FILES.name(), this.properties, 1000);
+        batchMaxBytes = StatsUtil.parseReadableSize(PropFileHandler.getString(PropKeysEnum.BATCH_MAX_BYTES.name(), this.properties, "10 GB"));
+        taskPlanner = new SizeAwareTaskPlanner(
+            StatsUtil.parseReadableSize(PropFileHandler.getString(PropKeysEnum.SMALL_FILE_THRESHOLD.name(), this.properties, "64 KB")),
+            PropFileHandler.getInteger(PropKeysEnum.SMALL_FILE_BATCH_COUNT.name(), this.properties, 100),
+            failFast);
+        sheetThreads = Math.max(1, PropFileHandler.getInteger(PropKeysEnum.SHEET_THREADS.name(), this.properties, 4));
+        shardCount = Math.max(1, PropFileHandler.getInteger(PropKeysEnum.SHARD_COUNT.name(), this.properties, 1));
+        shardIndex = PropFileHandler.getInteger(PropKeysEnum.SHARD_INDEX.name(), this.properties, 0);
+        watchMode = PropFileHandler.getBoolean(PropKeysEnum.WATCH.name(), this.properties, false);
+        watchSettleMillis = PropFileHandler.getLong(PropKeysEnum.WATCH_SETTLE_SECONDS.name(), this.properties, 10) * 1000;
+        if (shardCount > 1) {
+            loadShardCheckpoints();
+        }
+        runControl = new RunControl(copySettings, copyPool, virtualCopies, this::currentRows);
+        runControl.register();
 
         logger.info("Initializing executor with received args:\ninputFile {}\nsourceFolderPath {}\ntargetFolderPath {}\nfolder sequence {}\nQuarantine folder{}",
             inputFile, sourceFolderPath, targetFolderPath, folderSequence, this.targetQuarantineFolderPath.getPath());
     }
 
+    /**
+     * A shard resumes from its own checkpoint file only, checkpoints of other shards or of unsharded runs do not apply to it.
+     */
+    private void loadShardCheckpoints() {
+        this.properties.stringPropertyNames().stream()
+            .filter(ProcessExecutor::isCheckpointKey)
+            .forEach(this.properties::remove);
+        try {
+            final Properties checkpoints = PropFileHandler.readPropertiesFile(DataOrganizerApplication.getCheckpointFilePath().getPath());
+            checkpoints.stringPropertyNames().stream()
+                .filter(ProcessExecutor::isCheckpointKey)
+                .forEach(key -> PropFileHandler.setProperty(key, checkpoints.getProperty(key), this.properties));
+        } catch (IOException e) {
+            logger.error("Failed to read the shard checkpoints, starting the shard from the first row");
+            logger.error(e);
+        }
+        logger.info("Running shard {} of {}, rows are assigned by the hash of their target folder", shardIndex, shardCount);
+    }
+
+    private static boolean isCheckpointKey(final String key) {
+        return key.startsWith(PropKeysEnum.START_INDEX.name() + "_") || key.startsWith(PropKeysEnum.PENDING_ROWS.name() + "_");
+    }
+
+    private ExecutorService initExecutorService(final int nThreads) {
+        final ExecutionMode executionMode = ExecutionMode.fromValue(this.properties.getProperty(PropKeysEnum.EXECUTION_MODE.name()));
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            final ExecutorService virtualExecutor = ExecutionMode.newVirtualThreadExecutor("copy-");
+            if (virtualExecutor != null) {
+                final int ioPermits = PropFileHandler.getInteger(PropKeysEnum.VIRTUAL_IO_PERMITS.name(), this.properties, 64);
+                virtualCopies = new BoundedExecutorService(virtualExecutor, ioPermits);
+                scanExecutor = ExecutionMode.newVirtualThreadExecutor("scan-");
+                treeScanner = new ParallelTreeScanner(scanExecutor, virtualCopies.getPermits());
+                logger.info("Running copy tasks and tree scanning on virtual threads, bounded to {} concurrent I/O operations", ioPermits);
+                return virtualCopies;
+            }
+            logger.error("Falling back to platform threads for execution.");
+        }
+        copyPool = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        return copyPool;
+    }
+
+    private void initVerificationStage() {
+        final VerificationPolicy policy = VerificationPolicy.parse(this.properties.getProperty(PropKeysEnum.VERIFY_POLICY.name()));
+        if (!policy.isEnabled()) {
+            return;
+        }
+        final int verifyThreads = PropFileHandler.getInteger(PropKeysEnum.VERIFY_THREADS.name(), this.properties, 2);
+        ExecutorService verifyExecutor = null;
+        if (copyPool == null) {
+            final ExecutorService virtualExecutor = ExecutionMode.newVirtualThreadExecutor("verify-");
+            verifyExecutor = virtualExecutor == null ? null : new BoundedExecutorService(virtualExecutor, verifyThreads);
+        }
+        if (verifyExecutor == null) {
+            verifyExecutor = Executors.newFixedThreadPool(verifyThreads);
+        }
+        final BandwidthThrottler verifyThrottler = new BandwidthThrottler();
+        verifyThrottler.configure(BandwidthThrottler.parseRate(this.properties.getProperty(PropKeysEnum.VERIFY_MAX_RATE.name())), null);
+        verificationStage = new VerificationStage(verifyExecutor, policy, messageDigestAlgo, blockSize, verifyThrottler,
+            PropFileHandler.getInteger(PropKeysEnum.VERIFY_MAX_RECOPIES.name(), this.properties, 2), failFast,
+            (source, target) -> {
+                final CopyFileTask recopy = new CopyFileTask(source, target, -1, TransferMode.COPY, copySettings);
+                recopy.setRecopy(true);
+                return submitCopyTask(recopy);
+            });
+        copySettings.addListener(verificationStage);
+        logger.info("Background verification enabled with policy {}, scheme {} and {} threads", policy, messageDigestAlgo, verifyThreads);
+    }
+
+    /**
+     * Started once the logs folder of the run is in place. A resumed run keeps the trace of the run before it.
+     */
+    private void startEventTrace() {
+        if (!PropFileHandler.getBoolean(PropKeysEnum.EVENT_TRACE.name(), this.properties, false)) {
+            return;
+        }
+        final File traceFile = DataOrganizerApplication.getEventTraceFilePath();
+        try {
+            if (traceFile.exists()) {
+                FileUtil.rename(traceFile, FileUtil.appendSuffix(traceFile, "-" + new SimpleDateFormat("yyyy-MM-dd HH-mm-ss-SSS").format(new Date())).getName());
+            }
+            EventTrace.getInstance().start(traceFile, PropFileHandler.getInteger(PropKeysEnum.EVENT_TRACE_BUFFER.name(), this.properties, 65536));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to create the event trace {}, running without it", traceFile.getPath());
+            logger.error(e);
+        }
+    }
+
+    private void initReadOrder() {
+        if (ReadOrder.fromValue(this.properties.getProperty(PropKeysEnum.READ_ORDER.name())) != ReadOrder.INODE) {
+            return;
+        }
+        if (!InodeOrderTaskPlanner.isSupported()) {
+            logger.error("Inode numbers are not available on this platform, ignoring READ_ORDER inode.");
+            return;
+        }
+        final int readersPerDevice = PropFileHandler.getInteger(PropKeysEnum.READERS_PER_DEVICE.name(), this.properties, 1);
+        inodeOrderPlanner = new InodeOrderTaskPlanner(readersPerDevice);
+        logger.info("Reading sources in inode order with {} readers per device", readersPerDevice);
+    }
+
+    private void initSmallFilePacking() {
+        final PackFormat packFormat = PackFormat.fromValue(this.properties.getProperty(PropKeysEnum.PACK_FORMAT.name()));
+        if (packFormat == PackFormat.NONE) {
+            return;
+        }
+        packThreshold = StatsUtil.parseReadableSize(PropFileHandler.getString(PropKeysEnum.PACK_THRESHOLD.name(), this.properties, "64 KB"));
+        smallFilePacker = new SmallFilePacker(packFormat, copySettings);
+        logger.info("Packing files below {} into one {} archive per target folder", StatsUtil.readableFileSize(packThreshold), packFormat);
+    }
+
+    private void initAdaptiveConcurrency(final int nThreads) {
+        if (!PropFileHandler.getBoolean(PropKeysEnum.ADAPTIVE_COPY_THREADS.name(), this.properties, false)) {
+            logger.info("Using fixed copy concurrency of {}", copyPool == null ? "virtual threads" : nThreads + " threads");
+            return;
+        }
+        if (copyPool == null) {
+            logger.error("Adaptive copy threads need the platform execution mode, ignoring ADAPTIVE_COPY_THREADS.");
+            return;
+        }
+        final int minThreads = PropFileHandler.getInteger(PropKeysEnum.MIN_COPY_THREADS.name(), this.properties, 1);
+        final int maxThreads = PropFileHandler.getInteger(PropKeysEnum.MAX_COPY_THREADS.name(), this.properties,
+            Math.max(nThreads, Runtime.getRuntime().availableProcessors() * 2));
+        final long intervalMillis = PropFileHandler.getLong(PropKeysEnum.ADAPTIVE_INTERVAL_SECONDS.name(), this.properties, 10) * 1000;
+        concurrencyController = new AdaptiveConcurrencyController(copyPool, copySettings, minThreads, maxThreads, intervalMillis);
+        concurrencyController.start();
+    }
+
+    private void initDeviceScheduling(final int nThreads) {
+        if (!PropFileHandler.getBoolean(PropKeysEnum.DEVICE_SCHEDULING.name(), this.properties, false)) {
+            return;
+        }
+        // A copy holds a slot on its source and its target store, a lower default would cut a two disk run below COPY_THREADS.
+        final int storeThreads = PropFileHandler.getInteger(PropKeysEnum.DEVICE_COPY_THREADS.name(), this.properties, nThreads);
+        final Map<String, Integer> storeLimits = DeviceAwareScheduler.parseStoreLimits(
+            this.properties.getProperty(PropKeysEnum.DEVICE_COPY_THREADS_OVERRIDES.name()));
+        deviceScheduler = new DeviceAwareScheduler(executorService, storeThreads, storeLimits);
+        logger.info("Per-device scheduling enabled, default {} threads per store, overrides {}", storeThreads, storeLimits);
+    }
+
   /*  private File backUpIfFolderAlreadyExists(File targetFolder) {
         if (Files.exists(targetFolder.toPath())) {
             int counter = 0;
@@ -151,26 +400,386 @@ public class ProcessExecutor {
     }
 
     public void readTheExcelInputFile() throws IOException {
-        Workbook workbook;
-        Map<Integer, String> colIndexToHeaderMap = new HashMap<>();
-        final int start_index = PropFileHandler.getInteger(PropKeysEnum.START_INDEX.name() + "_" + inputFile, this.properties, 0);
+        try {
+            final List<File> manifests = resolveInputFiles(inputFile);
+            if (manifests.isEmpty() && !watchMode) {
+                throw new IOException("No manifest workbook found for " + inputFile);
+            }
+
+            if (!hasCheckpoint(manifests)) {
+                takeBackUpOfExistingLogIfPresent();
+                addStartEntryInLogFiles();
+            }
+            startEventTrace();
 
-        if (start_index == 0) {
-            takeBackUpOfExistingLogIfPresent();
-            addStartEntryInLogFiles();
+            logger.info("Processing {} manifest workbooks with {} sheet threads", manifests.size(), sheetThreads);
+            sheetExecutor = Executors.newFixedThreadPool(sheetThreads);
+            try {
+                processManifests(manifests);
+                if (watchMode) {
+                    watchForNewDeliveries();
+                }
+            } finally {
+                sheetExecutor.shutdown();
+            }
+
+            logger.info("Completed all tasks, calling final shutdown.");
+            shutdown();
+        } finally {
+            // Also when the run failed, so a later run in the same JVM can register its own bean.
+            runControl.unregister();
         }
+    }
 
-        try (FileInputStream file = new FileInputStream(inputFile)) {
-            workbook = new XSSFWorkbook(file);
-            Sheet sheet = workbook.getSheetAt(0);
-            readSheetAndStartFileCopy(colIndexToHeaderMap, start_index, sheet);
+    /**
+     * Recopies the entries of the failed log only, the manifest is not read.
+     */
+    public void retryFailedCopies() throws IOException {
+        // Retried entries are logged by the retrier itself, so any sync policy syncs them one by one.
+        final SyncPolicy retrySyncPolicy = durabilitySync.getPolicy() == SyncPolicy.NONE ? SyncPolicy.NONE : SyncPolicy.PER_FILE;
+        // Shares the tuning and pause of the run settings, so they can be changed over JMX while retrying too.
+        final CopySettings retrySettings = copySettings.withDurabilitySync(false, new DurabilitySync(retrySyncPolicy, 0, 0, false));
+        if (verificationStage != null) {
+            retrySettings.addListener(verificationStage);
+        }
+        try {
+            new FailedCopyRetrier(this::submitCopyTask,
+                (source, target) -> resolveTransferMode(source.getParentFile(), target.getParentFile()),
+                retrySettings,
+                PropFileHandler.getInteger(PropKeysEnum.RETRY_MAX_ATTEMPTS.name(), this.properties, 5),
+                PropFileHandler.getLong(PropKeysEnum.RETRY_BACKOFF_MILLIS.name(), this.properties, 1000),
+                PropFileHandler.getLong(PropKeysEnum.RETRY_MAX_BACKOFF_SECONDS.name(), this.properties, 60) * 1000)
+                .retry(DataOrganizerApplication.getFailedFileLogPath());
+            shutdown();
+        } finally {
+            runControl.unregister();
+        }
+    }
+
+    private void processManifests(final List<File> manifests) throws IOException {
+        try {
+            final CompletableFuture<?>[] manifestFutures = manifests.stream()
+                .map(manifest -> CompletableFuture.supplyAsync(() -> loadWorkbook(manifest), sheetExecutor)
+                    .thenCompose(workbook -> processAllSheets(manifest, workbook)
+                        .whenComplete((done, failure) -> closeWorkbook(manifest, workbook))))
+                .toArray(CompletableFuture<?>[]::new);
+            CompletableFuture.allOf(manifestFutures).join();
+        } catch (CompletionException e) {
+            if (watchMode && !aborted) {
+                // Not a copy failure, the workbook could not be read. It is probably still being saved, its next change retries.
+                logger.error("Failed to read manifests {}, waiting for their next change", manifests);
+                logger.error(e.getCause());
+                return;
+            }
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void watchForNewDeliveries() throws IOException {
+        final Set<File> manifestFolders = new LinkedHashSet<>();
+        for (final String entry : inputFile.split("->")) {
+            if (!entry.trim().isEmpty()) {
+                manifestFolders.add(new File(entry.trim()).getAbsoluteFile().getParentFile());
+            }
         }
+        deliveryWatcher = new DeliveryWatcher(new DeliveryWatcher.Listener() {
+            @Override
+            public List<File> resolveManifests() throws IOException {
+                return resolveInputFiles(inputFile);
+            }
 
-        logger.info("Completed all tasks, calling final shutdown.");
+            @Override
+            public void manifestChanged(File manifest) throws IOException {
+                processManifests(Collections.singletonList(manifest));
+            }
+
+            @Override
+            public void sourceFolderArrived(String folderName) throws IOException {
+                sourceIndex.add(folderName);
+                processPendingRows(folderName);
+            }
+
+            @Override
+            public Set<String> pendingSourceFolders() {
+                return pendingRowsByGuid.keySet();
+            }
+        }, watchSettleMillis);
+        deliveryWatcher.watch(manifestFolders, new File(sourceFolderPath));
+    }
+
+    /**
+     * Resolves the INPUT_FILE value, a list of workbooks separated by -> where the file name of each entry may be a glob
+     * e.g. /deliveries/2024-*.xlsx.
+     */
+    static List<File> resolveInputFiles(final String inputFiles) throws IOException {
+        final Set<File> manifests = new LinkedHashSet<>();
+        for (String entry : inputFiles.split("->")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            final File file = new File(entry);
+            if (!GLOB_CHARS.matcher(file.getName()).find()) {
+                manifests.add(file);
+                continue;
+            }
+            final List<File> matches = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(file.getAbsoluteFile().getParentFile().toPath(), file.getName())) {
+                for (final Path path : stream) {
+                    // Skip the lock files Excel leaves next to open workbooks.
+                    if (Files.isRegularFile(path) && !path.getFileName().toString().startsWith("~$")) {
+                        matches.add(new File(file.getParentFile(), path.getFileName().toString()));
+                    }
+                }
+            }
+            if (matches.isEmpty()) {
+                logger.error("No workbook matches {}", entry);
+            }
+            Collections.sort(matches);
+            manifests.addAll(matches);
+        }
+        return new ArrayList<>(manifests);
+    }
+
+    private boolean hasCheckpoint(final List<File> manifests) {
+        final Set<String> keys = this.properties.stringPropertyNames();
+        for (final File manifest : manifests) {
+            final String checkpointKey = checkpointKey(manifest, 0, null);
+            for (final String key : keys) {
+                if (key.equals(checkpointKey) || key.startsWith(checkpointKey + "#")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The first sheet keeps the START_INDEX_{INPUT_FILE} key of the single sheet runs, so their checkpoints still resume.
+     */
+    private static String checkpointKey(final File manifest, final int sheetIndex, final String sheetName) {
+        final String checkpointKey = PropKeysEnum.START_INDEX.name() + "_" + manifest.getPath();
+        return sheetIndex == 0 ? checkpointKey : checkpointKey + "#" + sheetName;
+    }
+
+    private static Workbook loadWorkbook(final File manifest) {
+        logger.info("Reading manifest workbook {}", manifest.getPath());
+        try (FileInputStream file = new FileInputStream(manifest)) {
+            return new XSSFWorkbook(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closed once all sheet tasks of the workbook completed, a watch run reloads the manifest on every change.
+     */
+    private static void closeWorkbook(final File manifest, final Workbook workbook) {
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            logger.error("Failed to close manifest workbook {}", manifest.getPath());
+            logger.error(e);
+        }
+    }
+
+    private CompletableFuture<Void> processAllSheets(final File manifest, final Workbook workbook) {
+        logger.info("Workbook {} has {} sheets", manifest.getPath(), workbook.getNumberOfSheets());
+        return CompletableFuture.allOf(IntStream.range(0, workbook.getNumberOfSheets())
+            .mapToObj(sheetIndex -> CompletableFuture.runAsync(() -> processSheet(manifest, workbook, sheetIndex), sheetExecutor))
+            .toArray(CompletableFuture<?>[]::new));
+    }
+
+    private void processSheet(final File manifest, final Workbook workbook, final int sheetIndex) {
+        final Map<Integer, Map<String, String>> rows;
+        final SheetContext context;
+        // POI workbooks are not thread safe, sheets of one workbook are parsed one after another.
+        synchronized (workbook) {
+            final Sheet sheet = workbook.getSheetAt(sheetIndex);
+            context = sheetContexts.computeIfAbsent(checkpointKey(manifest, sheetIndex, sheet.getSheetName()),
+                checkpointKey -> new SheetContext(manifest, sheet.getSheetName(), checkpointKey));
+            // Fingerprinted sheets are read whole, their unchanged rows are skipped by fingerprint instead of by start index.
+            rows = readSheetRows(sheet, rowFingerprints ? 0 : PropFileHandler.getInteger(context.checkpointKey, this.properties, 0),
+                readPendingRows(context));
+        }
+        final Map<Integer, RowFingerprints.Record> fingerprintsByRow = rowFingerprints ? fingerprintRows(context, rows) : Collections.emptyMap();
+        logger.info("Starting sheet {} with {} rows to process", context, rows.size());
+        int unchangedRows = 0;
+        try {
+            for (final Map.Entry<Integer, Map<String, String>> row : rows.entrySet()) {
+                if (aborted) {
+                    logger.info("Stopping sheet {} as another sheet failed", context);
+                    return;
+                }
+                if (!isAssignedToShard(row.getValue(), row.getKey())) {
+                    continue;
+                }
+                final RowFingerprints.Record fingerprint = fingerprintsByRow.get(row.getKey());
+                if (fingerprint != null && (context.fingerprints.contains(fingerprint.getFingerprint())
+                    || context.pendingRowIndexes.contains(row.getKey()))) {
+                    logger.debug("Skipping row index {} of sheet {} as it is unchanged", row.getKey(), context);
+                    unchangedRows++;
+                    continue;
+                }
+                if (watchMode && queueUntilGUIDFolderArrives(context, row.getValue(), row.getKey(), fingerprint)) {
+                    checkpointWhenDurable(context, row.getKey());
+                } else if (isValidGUIDName(row.getValue(), row.getKey())) {
+                    processFingerprintedRow(context, row.getValue(), row.getKey(), fingerprint);
+                }
+            }
+            if (rowFingerprints) {
+                logger.info("Skipped {} unchanged rows of sheet {}", unchangedRows, context);
+            }
+            // Batched syncs would otherwise wait for the next files, which may not come in watch mode.
+            durabilitySync.flush();
+        } catch (IOException e) {
+            aborted = true;
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            aborted = true;
+            throw e;
+        }
+        logger.info("Completed sheet {}", context);
+    }
+
+    /**
+     * Fingerprints the rows of the sheet, and with all of them known, finds the recorded rows the sheet no longer has.
+     *
+     * @return fingerprint by row index, rows without a guid have none
+     */
+    private Map<Integer, RowFingerprints.Record> fingerprintRows(final SheetContext context, final Map<Integer, Map<String, String>> rows) {
+        if (context.fingerprints == null) {
+            final File fingerprintsFile = new File(DataOrganizerApplication.getFingerprintsFolderPath(),
+                context.manifest.getName() + "-" + Integer.toHexString(context.checkpointKey.hashCode()) + ".tsv");
+            try {
+                context.fingerprints = RowFingerprints.load(fingerprintsFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        final Map<Integer, RowFingerprints.Record> fingerprintsByRow = new HashMap<>();
+        final Map<String, Integer> occurrences = new HashMap<>();
+        for (final Map.Entry<Integer, Map<String, String>> row : rows.entrySet()) {
+            final String guidValue = row.getValue().get(DEFAULT_GUID_NAME.toLowerCase());
+            if (guidValue == null || guidValue.isEmpty()) {
+                continue;
+            }
+            final String targetFolder = iterateOverPathSequenceToAppendPath(pathSequences, row.getValue(), new File(targetFolderPath),
+                row.getKey()).getPath();
+            final int occurrence = occurrences.merge(guidValue + "\0" + targetFolder, 1, Integer::sum) - 1;
+            fingerprintsByRow.put(row.getKey(),
+                new RowFingerprints.Record(RowFingerprints.fingerprint(guidValue, targetFolder, occurrence), guidValue, targetFolder));
+        }
+        final Map<String, Deque<RowFingerprints.Record>> staleRecords = context.fingerprints.staleRecordsByGuid(
+            fingerprintsByRow.values().stream().map(RowFingerprints.Record::getFingerprint).collect(Collectors.toList()));
+        // A folder some row still resolves to keeps its files, and the quarantine folder is shared by all incomplete rows.
+        final Set<String> currentFolders = fingerprintsByRow.values().stream().map(RowFingerprints.Record::getTargetFolder)
+            .collect(Collectors.toSet());
+        currentFolders.add(targetQuarantineFolderPath.getPath());
+        staleRecords.values().forEach(records -> records.removeIf(record -> currentFolders.contains(record.getTargetFolder())));
+        context.setStaleRecords(staleRecords);
+        return fingerprintsByRow;
+    }
+
+    /**
+     * Plans the row, moving the files of its previous target folder if the row was changed to resolve to another one.
+     *
+     * @param fingerprint recorded once the row is durable, null if rows are not fingerprinted
+     */
+    private void processFingerprintedRow(final SheetContext context, final Map<String, String> rowKeyValueMap, final int rowIndex,
+                                         final RowFingerprints.Record fingerprint) throws IOException {
+        if (fingerprint == null) {
+            processCopyOperationOnGivenRow(context, rowKeyValueMap, rowIndex);
+            checkpointWhenDurable(context, rowIndex);
+            return;
+        }
+        final RowFingerprints.Record relocated = context.pollStaleRecord(rowKeyValueMap.get(DEFAULT_GUID_NAME.toLowerCase()));
+        if (relocated != null) {
+            logger.info("Row index {} of sheet {} moved from target folder {} to {}, moving its files", rowIndex, context,
+                relocated.getTargetFolder(), fingerprint.getTargetFolder());
+            context.relocationFolderId = context.pathTable.intern(relocated.getTargetFolder());
+            context.relocationFiles = relocated.getTargetFiles();
+        }
+        final List<String> targetFiles = new ArrayList<>();
+        context.rowTargetFiles = targetFiles;
+        try {
+            processCopyOperationOnGivenRow(context, rowKeyValueMap, rowIndex);
+        } finally {
+            context.relocationFolderId = NO_RELOCATION;
+            context.relocationFiles = Collections.emptySet();
+            context.rowTargetFiles = null;
+        }
+        durabilitySync.whenRowDurable(() -> {
+            try {
+                context.fingerprints.add(fingerprint.withTargetFiles(targetFiles));
+                if (relocated != null) {
+                    context.fingerprints.remove(relocated);
+                    deleteEmptyTargetFolders(new File(relocated.getTargetFolder()));
+                }
+                updatePropertiesFileWithStartIndex(context, rowIndex);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Removes the previous target folder of a moved row and its parents up to TARGET_FOLDER, as long as they are empty.
+     */
+    private void deleteEmptyTargetFolders(File folder) {
+        final String targetRoot = new File(targetFolderPath).getAbsolutePath() + File.separator;
+        while (folder != null && folder.getAbsolutePath().startsWith(targetRoot) && folder.delete()) {
+            logger.info("Deleted the empty target folder {}", folder.getPath());
+            folder = folder.getParentFile();
+        }
+    }
+
+    /**
+     * @return the rows being processed, one per sheet
+     */
+    private List<String> currentRows() {
+        return sheetContexts.values().stream()
+            .filter(context -> context.currentRow >= 0)
+            .map(context -> context + " row " + context.currentRow)
+            .collect(Collectors.toList());
+    }
+
+    private void shutdown() {
+        // Nothing is left waiting on a pause the run no longer reports.
+        copySettings.resume();
+        runControl.unregister();
+        if (verificationStage != null) {
+            try {
+                verificationStage.awaitCompletion();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting for pending verifications");
+            }
+            verificationStage.shutdown();
+            StatsUtil.getInstance().flushChanges();
+        }
+        // After the verification, its recopies have to be synced as well.
+        durabilitySync.shutdown();
+        if (profileReport != null) {
+            profileReport.flush();
+        }
+        if (concurrencyController != null) {
+            concurrencyController.stop();
+        }
+        if (smallFilePacker != null) {
+            smallFilePacker.shutdown();
+        }
         executorService.shutdown();
+        if (scanExecutor != null) {
+            scanExecutor.shutdown();
+        }
+        EventTrace.getInstance().shutdown();
     }
 
-    private void takeBackUpOfExistingLogIfPresent() {
+    static void takeBackUpOfExistingLogIfPresent() {
         final File propsFilePath = DataOrganizerApplication.getPropsFilePath();
         if (propsFilePath.exists()) {
             FileUtil.rename(propsFilePath, propsFilePath.getName() + "-backup-" + new SimpleDateFormat("yyyy-MM-dd HH-mm-ss-SSS").format(new Date()));
@@ -185,20 +794,56 @@ public class ProcessExecutor {
         StatsUtil.getInstance();
     }
 
-    private void readSheetAndStartFileCopy(final Map<Integer, String> colIndexToHeaderMap, final int start_index, final Sheet sheet) throws IOException {
+    /**
+     * @param pendingRows rows up to the start index that still have to be read, as they wait for their guid folder
+     */
+    private static Map<Integer, Map<String, String>> readSheetRows(final Sheet sheet, final int start_index, final Set<Integer> pendingRows) {
+        final Map<Integer, String> colIndexToHeaderMap = new HashMap<>();
+        final Map<Integer, Map<String, String>> rows = new LinkedHashMap<>();
         Map<String, String> colKeyValueMapInCurrentRow;
         for (Row row : sheet) {
             int rowIndex = row.getRowNum();
-            if (rowIndex != 0 && rowIndex <= start_index) {
+            if (rowIndex != 0 && rowIndex <= start_index && !pendingRows.contains(rowIndex)) {
                 continue;
             }
             colKeyValueMapInCurrentRow = new HashMap<>();
             iterateOverAllColsInRowToStoreInKeyValuePair(colIndexToHeaderMap, rowIndex, colKeyValueMapInCurrentRow, row);
-            if (rowIndex > 0 && (isValidGUIDName(colKeyValueMapInCurrentRow, rowIndex))) {
-                processCopyOperationOnGivenRow(colKeyValueMapInCurrentRow, rowIndex);
-                updatePropertiesFileWithStartIndex(rowIndex);
+            if (rowIndex > 0) {
+                rows.put(rowIndex, colKeyValueMapInCurrentRow);
             }
         }
+        return rows;
+    }
+
+    /**
+     * Rows are split by the target folder they resolve to. Every row writing into a folder, duplicate rows of a guid as well
+     * as other guids resolving to it, is planned by the same process, whose reservations resolve their name collisions.
+     * The folder is hashed relative to TARGET_FOLDER, so shards on hosts mounting it elsewhere agree.
+     */
+    private boolean isAssignedToShard(final Map<String, String> colKeyValueMapInCurrentRow, final int rowIndex) {
+        if (shardCount <= 1) {
+            return true;
+        }
+        final File targetFolder = iterateOverPathSequenceToAppendPath(pathSequences, colKeyValueMapInCurrentRow,
+            new File(targetFolderPath), rowIndex);
+        // All rows missing a folder column share the quarantine folder, wherever it is.
+        final String shardKey = targetFolder == targetQuarantineFolderPath ? QUARANTINE_SHARD_KEY
+            : new File(targetFolderPath).toPath().relativize(targetFolder.toPath()).toString().replace(File.separatorChar, '/');
+        return Math.floorMod(shardHash(shardKey), shardCount) == shardIndex;
+    }
+
+    /**
+     * String hashes of folders differing in the same value twice, e.g. episode number and title, all share their low bit,
+     * so with an even shard count they would all land in one shard. Mixed like the murmur3 finalizer, every bit counts.
+     */
+    static int shardHash(final String shardKey) {
+        int hash = shardKey.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
     }
 
     private boolean isValidGUIDName(final Map<String, String> colKeyValueMapInCurrentRow, final int rowIndex) {
@@ -208,17 +853,89 @@ public class ProcessExecutor {
             return false;
         }
 
-        final File guidSrcFolder = new File(sourceFolderPath, guidValue);
-        if (!guidSrcFolder.exists()) {
+        if (!sourceIndex.contains(guidValue)) {
             logger.info("Skipping row index {} as the guid path does not exists", rowIndex);
             return false;
         }
         return true;
     }
 
-    private void updatePropertiesFileWithStartIndex(final int rowIndex) throws IOException {
-        PropFileHandler.setProperty(PropKeysEnum.START_INDEX.name() + "_" + inputFile, rowIndex + "", this.properties);
-        PropFileHandler.flush(this.properties, DataOrganizerApplication.getPropFilePath());
+    /**
+     * @return rows saved as waiting for their guid folder that are not queued in this process yet, e.g. after a restart
+     */
+    private Set<Integer> readPendingRows(final SheetContext context) {
+        final Set<Integer> pendingRows = new HashSet<>();
+        final String value = this.properties.getProperty(context.pendingRowsKey());
+        if (StringUtil.isNotBlank(value)) {
+            Arrays.stream(value.split(",")).map(String::trim).map(Integer::valueOf).forEach(pendingRows::add);
+        }
+        pendingRows.removeAll(context.pendingRowIndexes);
+        return pendingRows;
+    }
+
+    /**
+     * A folder that is still settling is waited for like a missing one, its files may still be being written.
+     *
+     * @return true if the row waits for its guid folder, it is then planned by {@link #processPendingRows(String)}
+     */
+    private boolean queueUntilGUIDFolderArrives(final SheetContext context, final Map<String, String> colKeyValueMapInCurrentRow,
+                                                final int rowIndex, final RowFingerprints.Record fingerprint) {
+        final String guidValue = colKeyValueMapInCurrentRow.get(DEFAULT_GUID_NAME.toLowerCase());
+        if (guidValue == null || guidValue.isEmpty()
+            || (sourceIndex.contains(guidValue) && (deliveryWatcher == null || !deliveryWatcher.isSettling(guidValue)))) {
+            return false;
+        }
+        pendingRowsByGuid.computeIfAbsent(guidValue, guid -> new CopyOnWriteArrayList<>())
+            .add(new PendingRow(context, rowIndex, colKeyValueMapInCurrentRow, fingerprint));
+        context.pendingRowIndexes.add(rowIndex);
+        logger.info("Queued row index {} of sheet {} until its guid folder {} arrives and settles", rowIndex, context, guidValue);
+        return true;
+    }
+
+    private void processPendingRows(final String guidValue) throws IOException {
+        final List<PendingRow> pendingRows = pendingRowsByGuid.remove(guidValue);
+        if (pendingRows == null) {
+            return;
+        }
+        for (final PendingRow pendingRow : pendingRows) {
+            pendingRow.context.pendingRowIndexes.remove(pendingRow.rowIndex);
+            if (isValidGUIDName(pendingRow.values, pendingRow.rowIndex)) {
+                processFingerprintedRow(pendingRow.context, pendingRow.values, pendingRow.rowIndex, pendingRow.fingerprint);
+            } else {
+                checkpointWhenDurable(pendingRow.context, pendingRow.rowIndex);
+            }
+        }
+        durabilitySync.flush();
+    }
+
+    /**
+     * Checkpoints the row once its files are durable under the sync policy.
+     */
+    private void checkpointWhenDurable(final SheetContext context, final int rowIndex) {
+        durabilitySync.whenRowDurable(() -> {
+            try {
+                updatePropertiesFileWithStartIndex(context, rowIndex);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void updatePropertiesFileWithStartIndex(final SheetContext context, final int rowIndex) throws IOException {
+        // Batched syncs checkpoint from the sync thread while the sheet thread may checkpoint a row without files.
+        synchronized (context) {
+            // Rows waiting for their guid folder complete after later rows, the checkpoint never moves back for them.
+            if (rowIndex > PropFileHandler.getInteger(context.checkpointKey, this.properties, 0)) {
+                PropFileHandler.setProperty(context.checkpointKey, rowIndex + "", this.properties);
+            }
+            if (context.pendingRowIndexes.isEmpty()) {
+                this.properties.remove(context.pendingRowsKey());
+            } else {
+                PropFileHandler.setProperty(context.pendingRowsKey(), context.pendingRowIndexes.stream().map(String::valueOf)
+                    .collect(Collectors.joining(",")), this.properties);
+            }
+            PropFileHandler.flush(this.properties, DataOrganizerApplication.getCheckpointFilePath());
+        }
     }
 
     private static void iterateOverAllColsInRowToStoreInKeyValuePair(final Map<Integer, String> colIndexToHeaderMap, final int rowIndex, final Map<String, String> colKeyValueMapInCurrentRow, final Row row) {
@@ -238,7 +955,7 @@ public class ProcessExecutor {
         if (Objects.requireNonNull(cellType) == CellType.NUMERIC && DateUtil.isCellDateFormatted(cell)) {
             breakDateFieldAndStoreInKeyValueMap(rowKeyValueMap, cell);
         } else if (Objects.requireNonNull(cellType) == CellType.NUMERIC) {
-            rowKeyValueMap.put(colIndexToHeaderMap.get(cell.getColumnIndex()), decimalFormat.format(cell.getNumericCellValue()) + "");
+            rowKeyValueMap.put(colIndexToHeaderMap.get(cell.getColumnIndex()), decimalFormat.get().format(cell.getNumericCellValue()) + "");
         } else if (cellType == CellType.STRING) {
             rowKeyValueMap.put(colIndexToHeaderMap.get(cell.getColumnIndex()), cell.getStringCellValue().trim());
         }
@@ -257,17 +974,53 @@ public class ProcessExecutor {
         rowKeyValueMap.put(DateKeys.DAY.value, dates[2]);
     }
 
-    private void processCopyOperationOnGivenRow(final Map<String, String> rowKeyValueMap, final int rowIndex) throws IOException {
-        final File targetFolder = createFolderStructureIfNeeded(pathSequences, rowKeyValueMap, targetFolderPath, rowIndex);
-        List<Runnable> taskList = new ArrayList<>();
-        copyFilesFromSourceToTarget(new File(sourceFolderPath, rowKeyValueMap.get(DEFAULT_GUID_NAME)), targetFolder, taskList, rowIndex);
+    private void processCopyOperationOnGivenRow(final SheetContext context, final Map<String, String> rowKeyValueMap, final int rowIndex)
+        throws IOException {
+        final long startNanos = System.nanoTime();
+        context.currentRow = rowIndex;
+        if (profileReport != null) {
+            context.rowProfile = profileReport.startRow(context.manifest.getName(), context.sheetName, rowIndex,
+                rowKeyValueMap.get(DEFAULT_GUID_NAME));
+        }
+        try {
+            final File targetFolder = createFolderStructureIfNeeded(pathSequences, rowKeyValueMap, targetFolderPath, rowIndex);
+            final File srcFolder = new File(sourceFolderPath, rowKeyValueMap.get(DEFAULT_GUID_NAME));
+            context.rowTransferMode = resolveTransferMode(srcFolder, targetFolder);
+            copyFilesFromSourceToTarget(srcFolder, targetFolder, context, rowIndex);
 
-        if (!taskList.isEmpty()) {
-            logger.info("Awaiting copy operation for row {} to be completed.", rowIndex);
-            executeTaskList(taskList);
-            StatsUtil.getInstance().flushChanges();
-            logger.info("Completed copy operation for row {}.", rowIndex);
+            if (context.hasPlannedFiles()) {
+                logger.info("Awaiting copy operation for row {} of sheet {} to be completed.", rowIndex, context);
+                executeTaskList(context);
+                StatsUtil.getInstance().flushChanges();
+                logger.info("Completed copy operation for row {} of sheet {}.", rowIndex, context);
+            }
+            if (context.rowProfile != null) {
+                context.rowProfile.complete();
+                profileReport.completeRow(context.rowProfile);
+            }
+            EventTrace.getInstance().record(EventTrace.EventType.ROW_DONE, 0, rowIndex, EventTrace.NO_ID, 0, System.nanoTime() - startNanos);
+        } finally {
+            context.rowProfile = null;
+            context.currentRow = -1;
+            // Left over only if planning failed. The ids of the row are not needed anymore, the next row starts a new table.
+            clearPlannedBatch(context);
+            context.pathTable = new PathTable();
+        }
+    }
+
+    private TransferMode resolveTransferMode(final File srcFolder, final File targetFolder) {
+        if (transferMode != TransferMode.AUTO) {
+            return transferMode;
         }
+        try {
+            if (Files.getFileStore(srcFolder.toPath()).equals(Files.getFileStore(targetFolder.toPath()))) {
+                return TransferMode.HARDLINK;
+            }
+        } catch (IOException e) {
+            logger.error("Failed to compare file stores of {} and {}, copying", srcFolder.getPath(), targetFolder.getPath());
+            logger.error(e);
+        }
+        return TransferMode.COPY;
     }
 
     private File createFolderStructureIfNeeded(final String[] pathSequences, final Map<String, String> rowEntryKeyValuePair, final String outputFolderPath,
@@ -275,7 +1028,8 @@ public class ProcessExecutor {
         File folderPathToBeCreated = new File(outputFolderPath);
         folderPathToBeCreated = iterateOverPathSequenceToAppendPath(pathSequences, rowEntryKeyValuePair, folderPathToBeCreated, rowIndex);
         try {
-            if (!folderPathToBeCreated.exists() && !folderPathToBeCreated.mkdirs()) {
+            // Another sheet may create the same folder concurrently.
+            if (!folderPathToBeCreated.mkdirs() && !folderPathToBeCreated.exists()) {
                 logger.error("Failed to create the folder path: {}", folderPathToBeCreated);
             }
         } catch (Exception e) {
@@ -342,92 +1096,243 @@ public class ProcessExecutor {
     /**
      * @param srcFolder    folder from where files to be copied
      * @param targetFolder target folder where files need to be copied
-     * @param taskList     taskList for executing completable future
+     * @param context      sheet collecting the planned copy tasks
      * @throws IOException throw exception if any
      */
-    private void copyFilesFromSourceToTarget(File srcFolder, File targetFolder, List<Runnable> taskList, int rowIndex) throws IOException {
-        if (!srcFolder.exists()) {
+    private void copyFilesFromSourceToTarget(File srcFolder, File targetFolder, SheetContext context, int rowIndex) throws IOException {
+        if (!sourceIndex.contains(srcFolder.getName())) {
             logger.error("Source folder {} is not present, skipping the row index {} for it ", srcFolder.getPath(), rowIndex);
             return;
         }
+        final int targetFolderId = context.pathTable.intern(targetFolder);
+        final ParallelTreeScanner.Visitor visitor = new ParallelTreeScanner.Visitor() {
+            @Override
+            public boolean preVisitDirectory(Path dir) {
+                return visitSourceDirectory(dir);
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                visitSourceFile(file, attrs, srcFolder, targetFolderId, context);
+            }
+        };
+
+        if (scanCache != null) {
+            scanCache.walk(srcFolder.toPath(), visitor);
+            return;
+        }
+        if (treeScanner != null) {
+            treeScanner.walk(srcFolder.toPath(), visitor);
+            return;
+        }
         Files.walkFileTree(srcFolder.toPath(), new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                if (isMatchingExcludePattern(dir.toFile().getPath())) {
-                    logger.info("skipping sub-path as matched to exclude pattern {}", dir.toFile().getPath());
-                    FileUtil.appendEntryToLogFile(DataOrganizerApplication.getSkippedLogFile(), dir.toFile().getPath() + "\n", failFast);
-                    StatsUtil.getInstance().updateFolderStats(true);
-                    return FileVisitResult.SKIP_SUBTREE;
-                }
-                return FileVisitResult.CONTINUE;
+                return visitor.preVisitDirectory(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
             }
 
             @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                if (!Files.isDirectory(file)) {
-                    if (isMatchingExcludePattern(file.toFile().getPath()) || isMatchingExcludeFileTypes(file.toFile().getPath())) {
-                        logger.info("skipping file {} as per exclude pattern and file types", file.toFile().getPath());
-                        FileUtil.appendEntryToLogFile(DataOrganizerApplication.getSkippedLogFile(), file.toFile().getPath() + "\n", failFast);
-                        StatsUtil.getInstance().updateStats(0, false, true, false);
-                        return FileVisitResult.CONTINUE;
-                    }
-                    File targetFile = getTargetFile(file, targetFolder);
-
-                    if (checkIfFileAlreadyExists(targetFile)) {
-                        logger.info("File {} with same name already present at target {}", file.toFile().getPath(), targetFile.getPath());
-                        //File targetFileInst = targetFile.exists() ? targetFile : new File(targetFileToSrcFileMap.get(targetFile.getPath()));
-                       /* if (verifyTheFileIsSame(file.toFile(), targetFileInst)) {
-                            //Same file already copied, so skip this one
-                            logger.info("Skipping the duplicate file {}", file.toFile().getPath());
-                            FileUtil.appendEntryToLogFile(DataOrganizerApplication.getDuplicateLogFile(), file.toFile().getPath(), failFast);
-                            StatsUtil.getInstance().updateDupFile();
-                            return FileVisitResult.CONTINUE;
-                        } else {*/
-                        // file with same name already present, so rename this one.
-                        int counter = 0;
-                        String oldPath = targetFile.getPath();
-                        while (targetFile.exists() || targetFileToSrcFileMap.containsKey(targetFile.getPath())) {
-                            counter += 1;
-                            targetFile = FileUtil.appendSuffix(new File(oldPath), "-" + counter);
-                        }
-                        logger.info("Renaming the target file {} with {}", oldPath, targetFile.getPath());
-                        //}
-
-                    }
-                    addNewCopyTask(file, targetFile, taskList, srcFolder);
-                }
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                visitor.visitFile(file, attrs);
                 return FileVisitResult.CONTINUE;
             }
         });
     }
 
-    private void addNewCopyTask(final Path file, final File targetFile, final List<Runnable> taskList, final File srcFolder) {
-        targetFileToSrcFileMap.put(targetFile.getPath(), file.toFile().getPath());
-        taskList.add(new CopyFileTask(file.toFile(), targetFile, blockSize, useStreamCopy, failFast));
-        if (taskList.size() >= 1000) {
-            executeTaskList(taskList);
-            logger.info("Completed copy operation on batch on files inside {}", srcFolder.getPath());
+    private boolean visitSourceDirectory(final Path dir) {
+        if (isMatchingExcludePattern(dir.toFile().getPath())) {
+            logger.info("skipping sub-path as matched to exclude pattern {}", dir.toFile().getPath());
+            FileUtil.appendEntryToLogFile(DataOrganizerApplication.getSkippedLogFile(), dir.toFile().getPath() + "\n", failFast);
+            StatsUtil.getInstance().updateFolderStats(true);
+            return false;
+        }
+        return true;
+    }
+
+    private void visitSourceFile(final Path file, final BasicFileAttributes attrs, final File srcFolder, final int targetFolderId,
+                                 final SheetContext context) {
+        // Only links need a look at the file system, walks do not follow them but a link to a folder is not copied either.
+        if (!attrs.isDirectory() && !(attrs.isSymbolicLink() && Files.isDirectory(file))) {
+            if (isMatchingExcludePattern(file.toFile().getPath()) || isMatchingExcludeFileTypes(file.toFile().getPath())) {
+                logger.info("skipping file {} as per exclude pattern and file types", file.toFile().getPath());
+                FileUtil.appendEntryToLogFile(DataOrganizerApplication.getSkippedLogFile(), file.toFile().getPath() + "\n", failFast);
+                StatsUtil.getInstance().updateStats(0, false, true, false);
+                return;
+            }
+            final PathTable pathTable = context.pathTable;
+            final String targetFileName = replaceCharsIfAny(file.getFileName().toString());
+            int targetFileId = pathTable.child(targetFolderId, targetFileName);
+
+            if (!reserveTargetFile(targetFileId, context)) {
+                final String oldPath = pathTable.toPath(targetFileId);
+                logger.info("File {} with same name already present at target {}", file.toFile().getPath(), oldPath);
+                // file with same name already present, so rename this one.
+                int counter = 0;
+                do {
+                    counter += 1;
+                    targetFileId = pathTable.child(targetFolderId, FileUtil.appendSuffix(new File(targetFileName), "-" + counter).getPath());
+                } while (!reserveTargetFile(targetFileId, context));
+                logger.info("Renaming the target file {} with {}", oldPath, pathTable.toPath(targetFileId));
+            }
+            // A renamed file may not be the one of the same name in the previous folder, it is copied again.
+            final int relocatedFileId = pathTable.name(targetFileId).equals(targetFileName)
+                ? findRelocatedFile(context, targetFileName, attrs.size()) : NO_RELOCATION;
+            // A relocated file is moved from its previous target.
+            final int sourceFileId = relocatedFileId != NO_RELOCATION ? relocatedFileId : pathTable.intern(file.toString());
+            final boolean packed = relocatedFileId == NO_RELOCATION && isPackedFile(context, attrs.size());
+            // Packed files live in the archive of the folder, which other rows share.
+            if (context.rowTargetFiles != null && !packed) {
+                context.rowTargetFiles.add(pathTable.name(targetFileId));
+            }
+            if (relocatedFileId != NO_RELOCATION) {
+                context.plannedRelocations.add(relocatedFileId, targetFileId, attrs.size());
+            } else if (packed) {
+                context.plannedPacks.add(sourceFileId, targetFileId, attrs.size());
+            } else if (inodeOrderPlanner != null) {
+                final long[] physicalKey = InodeOrderTaskPlanner.readPhysicalKey(file);
+                context.plannedCopies.add(sourceFileId, targetFileId, attrs.size(), physicalKey[0], physicalKey[1]);
+            } else {
+                context.plannedCopies.add(sourceFileId, targetFileId, attrs.size());
+            }
+            // Moves within the target tree do not count against the batch bytes.
+            if (relocatedFileId == NO_RELOCATION) {
+                context.pendingBatchBytes += attrs.size();
+            }
+            if (context.rowProfile != null) {
+                context.rowProfile.planned(attrs.size());
+            }
+            EventTrace.getInstance().record(EventTrace.EventType.FILE_PLANNED, context.rowTransferMode.ordinal(), pathTable, sourceFileId,
+                targetFileId, attrs.size(), 0);
+            executeTaskListIfBatchIsFull(context, srcFolder);
         }
     }
 
-    private boolean checkIfFileAlreadyExists(final File targetFile) {
-        return (targetFile.exists() || targetFileToSrcFileMap.containsKey(targetFile.getPath()));
+    /**
+     * @return the file of the same name and length the row put into its previous target folder, or NO_RELOCATION
+     */
+    private int findRelocatedFile(final SheetContext context, final String targetFileName, final long length) {
+        if (context.relocationFolderId == NO_RELOCATION || !context.relocationFiles.contains(targetFileName)) {
+            return NO_RELOCATION;
+        }
+        final int relocatedFileId = context.pathTable.child(context.relocationFolderId, targetFileName);
+        final File relocatedFile = context.pathTable.toFile(relocatedFileId);
+        return relocatedFile.isFile() && relocatedFile.length() == length ? relocatedFileId : NO_RELOCATION;
     }
 
-    private File getTargetFile(final Path file, final File targetFolder) {
-        String targetFileName = file.toFile().getName();
-        targetFileName = replaceCharsIfAny(targetFileName);
-        return new File(targetFolder, targetFileName);
+    /**
+     * Packing only replaces plain copies, moved and hard linked files keep their own target file.
+     */
+    private boolean isPackedFile(final SheetContext context, final long length) {
+        return smallFilePacker != null && length < packThreshold && context.rowTransferMode == TransferMode.COPY;
+    }
+
+    private void executeTaskListIfBatchIsFull(final SheetContext context, final File srcFolder) {
+        if (context.plannedCopies.size + context.plannedPacks.size + context.plannedRelocations.size >= batchMaxFiles || (batchMaxBytes > 0 && context.pendingBatchBytes >= batchMaxBytes)) {
+            executeTaskList(context);
+            logger.info("Completed copy operation on batch on files inside {}", srcFolder.getPath());
+        }
     }
 
-    private void executeTaskList(final List<Runnable> taskList) {
-        CompletableFuture<?>[] futures = taskList.stream()
-            .map(task -> CompletableFuture.runAsync(task, executorService))
-            .toArray(CompletableFuture[]::new);
+    /**
+     * Claims the target path for this sheet until its batch is copied.
+     *
+     * @return false if the file exists or another planned copy already uses the path
+     */
+    private boolean reserveTargetFile(final int targetFileId, final SheetContext context) {
+        final String targetPath = context.pathTable.toPath(targetFileId);
+        if (!reservedTargets.add(targetPath)) {
+            return false;
+        }
+        // Checked after claiming, a batch of another sheet may have written and released the path just before.
+        if (new File(targetPath).exists()) {
+            reservedTargets.remove(targetPath);
+            return false;
+        }
+        context.addReservedTarget(targetFileId);
+        return true;
+    }
+
+    /**
+     * Creates the copy tasks of the planned batch, their files are built from the path ids only when each copy runs.
+     */
+    private void executeTaskList(final SheetContext context) {
+        final PathTable pathTable = context.pathTable;
+        final long startNanos = System.nanoTime();
+        final int plannedFiles = context.plannedCopies.size + context.plannedPacks.size + context.plannedRelocations.size;
+        final PlannedFiles copies = context.plannedCopies;
+        final List<CopyFileTask> taskList = new ArrayList<>(copies.size);
+        for (int i = 0; i < copies.size; i++) {
+            final CopyFileTask task = new CopyFileTask(pathTable, copies.sources[i], copies.targets[i], copies.lengths[i], context.rowTransferMode, copySettings);
+            task.setRowProfile(context.rowProfile);
+            taskList.add(task);
+        }
+        final List<CopyTask> plannedTasks = inodeOrderPlanner != null
+            ? inodeOrderPlanner.plan(taskList, copies.devices, copies.inodes) : taskPlanner.plan(taskList);
+        final List<CompletableFuture<Void>> futures = plannedTasks.stream()
+            .map(this::submitCopyTask)
+            .collect(Collectors.toList());
+        final PlannedFiles relocations = context.plannedRelocations;
+        for (int i = 0; i < relocations.size; i++) {
+            final CopyFileTask task = new CopyFileTask(pathTable, relocations.sources[i], relocations.targets[i], relocations.lengths[i],
+                TransferMode.MOVE, copySettings);
+            task.setRowProfile(context.rowProfile);
+            futures.add(submitCopyTask(task));
+        }
+        packedFilesByFolder(pathTable, context.plannedPacks)
+            .forEach((folderId, files) -> futures.add(smallFilePacker.pack(reserveArchiveFile(folderId, context), files)));
         logger.info("Starting copy operation...");
-        CompletableFuture.allOf(futures).join();
-        taskList.clear();
-        targetFileToSrcFileMap.clear();
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            final long batchNanos = System.nanoTime() - startNanos;
+            if (context.rowProfile != null) {
+                context.rowProfile.batchCopied(batchNanos);
+            }
+            EventTrace.getInstance().record(EventTrace.EventType.BATCH_DONE, 0, plannedFiles, EventTrace.NO_ID, 0, batchNanos);
+            clearPlannedBatch(context);
+        }
+    }
+
+    /**
+     * Drops the planned files of the sheet and releases their target paths.
+     */
+    private void clearPlannedBatch(final SheetContext context) {
+        context.plannedCopies.clear();
+        context.plannedPacks.clear();
+        context.plannedRelocations.clear();
+        for (int i = 0; i < context.reservedTargetCount; i++) {
+            reservedTargets.remove(context.pathTable.toPath(context.reservedTargetIds[i]));
+        }
+        context.reservedTargetCount = 0;
+        context.pendingBatchBytes = 0;
+    }
+
+    private Map<Integer, List<SmallFilePacker.PackedFile>> packedFilesByFolder(final PathTable pathTable, final PlannedFiles packs) {
+        final Map<Integer, List<SmallFilePacker.PackedFile>> packedFiles = new LinkedHashMap<>();
+        for (int i = 0; i < packs.size; i++) {
+            packedFiles.computeIfAbsent(pathTable.parent(packs.targets[i]), folderId -> new ArrayList<>())
+                .add(new SmallFilePacker.PackedFile(pathTable, packs.sources[i], packs.targets[i], packs.lengths[i]));
+        }
+        return packedFiles;
+    }
+
+    private File reserveArchiveFile(final int folderId, final SheetContext context) {
+        final PathTable pathTable = context.pathTable;
+        final String archiveName = SmallFilePacker.ARCHIVE_NAME + smallFilePacker.getFormat().getExtension();
+        int archiveId = pathTable.child(folderId, archiveName);
+        int counter = 0;
+        while (!reserveTargetFile(archiveId, context)) {
+            counter += 1;
+            archiveId = pathTable.child(folderId, FileUtil.appendSuffix(new File(archiveName), "-" + counter).getPath());
+        }
+        return pathTable.toFile(archiveId);
+    }
+
+    private CompletableFuture<Void> submitCopyTask(final CopyTask task) {
+        if (deviceScheduler != null) {
+            return deviceScheduler.submit(task.getFromPath(), task.getToPath(), task);
+        }
+        return CompletableFuture.runAsync(task, executorService);
     }
 
     private boolean verifyTheFileIsSame(final File srcFile, final File targetFile) {
@@ -467,6 +1372,132 @@ public class ProcessExecutor {
         return false;
     }
 
+    /**
+     * Planning state of one manifest sheet. Sheets are planned concurrently, each on its own thread.
+     */
+    private static class SheetContext {
+        private final File manifest;
+        private final String sheetName;
+        private final String checkpointKey;
+        private final PlannedFiles plannedCopies = new PlannedFiles();
+        // Small files to pack into the archive of their target folder.
+        private final PlannedFiles plannedPacks = new PlannedFiles();
+        // Files of the row's previous target folder to move to the new one, sources are those target files.
+        private final PlannedFiles plannedRelocations = new PlannedFiles();
+        // Planned paths of the row being processed as ids, replaced by an empty table after each row.
+        private PathTable pathTable = new PathTable();
+        private int[] reservedTargetIds = new int[64];
+        private int reservedTargetCount;
+        private final Set<Integer> pendingRowIndexes = new ConcurrentSkipListSet<>();
+        // Transfer mode of the row being planned, AUTO resolved against the row's source and target stores.
+        private TransferMode rowTransferMode;
+        private long pendingBatchBytes;
+        // Loaded on the first run of the sheet when rows are fingerprinted.
+        private RowFingerprints fingerprints;
+        // Recorded target folders of rows the sheet no longer has, by guid, latest first.
+        private Map<String, Deque<RowFingerprints.Record>> staleRecords = Collections.emptyMap();
+        // Profile of the row being planned, null unless the profile report is on.
+        private RowProfileReport.RowProfile rowProfile;
+        // Previous target folder of the row being planned, NO_RELOCATION unless the row changed it.
+        private int relocationFolderId = NO_RELOCATION;
+        // Files the row put into its previous target folder, only these are moved from there.
+        private Set<String> relocationFiles = Collections.emptySet();
+        // Names of the files planned into the target folder of the row, null unless rows are fingerprinted.
+        private List<String> rowTargetFiles;
+        // Row being processed, read over JMX, -1 between rows.
+        private volatile int currentRow = -1;
+
+        SheetContext(File manifest, String sheetName, String checkpointKey) {
+            this.manifest = manifest;
+            this.sheetName = sheetName;
+            this.checkpointKey = checkpointKey;
+        }
+
+        boolean hasPlannedFiles() {
+            return plannedCopies.size > 0 || plannedPacks.size > 0 || plannedRelocations.size > 0;
+        }
+
+        synchronized void setStaleRecords(final Map<String, Deque<RowFingerprints.Record>> staleRecords) {
+            this.staleRecords = staleRecords;
+        }
+
+        /**
+         * Each stale record is handed to one changed row of its guid only.
+         */
+        synchronized RowFingerprints.Record pollStaleRecord(final String guid) {
+            final Deque<RowFingerprints.Record> records = staleRecords.get(guid);
+            return records == null ? null : records.pollFirst();
+        }
+
+        void addReservedTarget(final int targetFileId) {
+            if (reservedTargetCount == reservedTargetIds.length) {
+                reservedTargetIds = Arrays.copyOf(reservedTargetIds, reservedTargetCount * 2);
+            }
+            reservedTargetIds[reservedTargetCount++] = targetFileId;
+        }
+
+        String pendingRowsKey() {
+            return PropKeysEnum.PENDING_ROWS.name() + checkpointKey.substring(PropKeysEnum.START_INDEX.name().length());
+        }
+
+        @Override
+        public String toString() {
+            return manifest.getName() + ":" + sheetName;
+        }
+    }
+
+    /**
+     * Source id, target id, length and, for inode ordered reads, the source device and inode of each planned file in
+     * parallel arrays.
+     */
+    private static class PlannedFiles {
+        private int[] sources = new int[64];
+        private int[] targets = new int[64];
+        private long[] lengths = new long[64];
+        private long[] devices = new long[64];
+        private long[] inodes = new long[64];
+        private int size;
+
+        void add(final int sourceId, final int targetId, final long length) {
+            add(sourceId, targetId, length, InodeOrderTaskPlanner.UNKNOWN, InodeOrderTaskPlanner.UNKNOWN);
+        }
+
+        void add(final int sourceId, final int targetId, final long length, final long device, final long inode) {
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                devices = Arrays.copyOf(devices, size * 2);
+                inodes = Arrays.copyOf(inodes, size * 2);
+            }
+            sources[size] = sourceId;
+            targets[size] = targetId;
+            lengths[size] = length;
+            devices[size] = device;
+            inodes[size] = inode;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    private static class PendingRow {
+        private final SheetContext context;
+        private final int rowIndex;
+        private final Map<String, String> values;
+        // Null unless rows are fingerprinted.
+        private final RowFingerprints.Record fingerprint;
+
+        PendingRow(SheetContext context, int rowIndex, Map<String, String> values, RowFingerprints.Record fingerprint) {
+            this.context = context;
+            this.rowIndex = rowIndex;
+            this.values = values;
+            this.fingerprint = fingerprint;
+        }
+    }
+
     enum DateKeys {
         DECADE("decade"),
         YEAR("year"),
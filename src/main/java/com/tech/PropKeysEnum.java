@@ -20,6 +20,54 @@ public enum PropKeysEnum {
     REPLACE_CHARS,
     GUID_NAME,
     FAIL_FAST,
-    SHALLOW_FILE_COMPARISON
+    SHALLOW_FILE_COMPARISON,
+    ADAPTIVE_COPY_THREADS,
+    MIN_COPY_THREADS,
+    MAX_COPY_THREADS,
+    ADAPTIVE_INTERVAL_SECONDS,
+    DEVICE_SCHEDULING,
+    DEVICE_COPY_THREADS,
+    DEVICE_COPY_THREADS_OVERRIDES,
+    MAX_COPY_RATE,
+    COPY_RATE_SCHEDULE,
+    EXECUTION_MODE,
+    VIRTUAL_IO_PERMITS,
+    BATCH_MAX_FILES,
+    BATCH_MAX_BYTES,
+    SMALL_FILE_THRESHOLD,
+    SMALL_FILE_BATCH_COUNT,
+    TRANSFER_MODE,
+    TREE_HASH_CHUNK_SIZE,
+    HASH_THREADS,
+    VERIFY_POLICY,
+    VERIFY_THREADS,
+    VERIFY_MAX_RATE,
+    VERIFY_MAX_RECOPIES,
+    SHEET_THREADS,
+    SHARD_INDEX,
+    SHARD_COUNT,
+    MERGE_SHARDS,
+    WATCH,
+    WATCH_SETTLE_SECONDS,
+    PENDING_ROWS,
+    RETRY_FAILED,
+    RETRY_MAX_ATTEMPTS,
+    RETRY_BACKOFF_MILLIS,
+    RETRY_MAX_BACKOFF_SECONDS,
+    PACK_FORMAT,
+    PACK_THRESHOLD,
+    PREALLOCATE_TARGETS,
+    SYNC_POLICY,
+    SYNC_BATCH_FILES,
+    SYNC_BATCH_BYTES,
+    READ_ORDER,
+    READERS_PER_DEVICE,
+    SOURCE_INDEX_REFRESH_SECONDS,
+    SCAN_CACHE,
+    ROW_FINGERPRINTS,
+    PROFILE_REPORT,
+    EVENT_TRACE,
+    EVENT_TRACE_BUFFER,
+    FILE_LOG_SAMPLE
 
 }
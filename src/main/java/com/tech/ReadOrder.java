@@ -0,0 +1,13 @@
+package com.tech;
+
+public enum ReadOrder {
+    SCAN,
+    INODE;
+
+    public static ReadOrder fromValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return SCAN;
+        }
+        return ReadOrder.valueOf(value.trim().toUpperCase());
+    }
+}
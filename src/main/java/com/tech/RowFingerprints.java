@@ -0,0 +1,192 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprints of the processed rows of one manifest sheet, kept across runs so a corrected manifest only plans the rows
+ * that changed.
+ * <p>
+ * A fingerprint hashes the guid with the target folder the row resolves to, which covers every column the folder is built
+ * from as well as the folder settings. Rows may be inserted or reordered, an unchanged row keeps its fingerprint. Each
+ * record also keeps the guid, the target folder and the names of the files the row put there, so a changed row of a known
+ * guid can move exactly its own files and never those of other rows sharing the folder.
+ * <p>
+ * The file has one line per record, fingerprint, guid, target folder and the file names separated by {@code /} in tab
+ * separated fields, and a line starting with {@code -} drops the fingerprint after it. Lines are appended as rows complete
+ * and compacted on the next load, which drops unreadable lines. Records written without file names relocate nothing.
+ */
+public class RowFingerprints {
+
+    static Logger logger = LogManager.getLogger(RowFingerprints.class);
+
+    private static final String SEPARATOR = "\t";
+    private static final String REMOVED = "-";
+    // Cannot be part of a file name on any platform.
+    private static final String FILE_SEPARATOR = "/";
+
+    private final File file;
+    private final Map<Long, Record> records = new LinkedHashMap<>();
+
+    private RowFingerprints(File file) {
+        this.file = file;
+    }
+
+    public static RowFingerprints load(final File file) throws IOException {
+        final RowFingerprints fingerprints = new RowFingerprints(file);
+        if (!file.exists()) {
+            return fingerprints;
+        }
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (final String line : lines) {
+            try {
+                if (line.startsWith(REMOVED)) {
+                    fingerprints.records.remove(Long.parseUnsignedLong(line.substring(REMOVED.length()), 16));
+                    continue;
+                }
+                final String[] fields = line.split(SEPARATOR, 4);
+                if (fields.length >= 3) {
+                    final long fingerprint = Long.parseUnsignedLong(fields[0], 16);
+                    final List<String> targetFiles = fields.length == 4 && !fields[3].isEmpty()
+                        ? Arrays.asList(fields[3].split(FILE_SEPARATOR)) : Collections.emptyList();
+                    fingerprints.records.put(fingerprint, new Record(fingerprint, fields[1], fields[2], targetFiles));
+                }
+            } catch (NumberFormatException e) {
+                // E.g. the last line of a run that was killed while appending it, its row is planned again.
+                logger.error("Skipping unreadable row fingerprint line {} of {}", line, file.getPath());
+            }
+        }
+        if (lines.size() > fingerprints.records.size()) {
+            fingerprints.compact();
+        }
+        logger.info("Loaded {} row fingerprints from {}", fingerprints.records.size(), file.getPath());
+        return fingerprints;
+    }
+
+    /**
+     * @param occurrence how many earlier rows of the sheet have the same guid and target folder, so duplicate rows differ
+     */
+    public static long fingerprint(final String guid, final String targetFolder, final int occurrence) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(guid.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(targetFolder.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(occurrence).getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized boolean contains(final long fingerprint) {
+        return records.containsKey(fingerprint);
+    }
+
+    /**
+     * @param current fingerprints of all rows of the sheet as it is now
+     * @return target folders of the records no current row has, by guid, latest first
+     */
+    public synchronized Map<String, Deque<Record>> staleRecordsByGuid(final Collection<Long> current) {
+        final Set<Long> currentFingerprints = new HashSet<>(current);
+        final Map<String, Deque<Record>> stale = new HashMap<>();
+        records.values().stream()
+            .filter(record -> !currentFingerprints.contains(record.fingerprint))
+            .forEach(record -> stale.computeIfAbsent(record.guid, guid -> new ArrayDeque<>()).addFirst(record));
+        return stale;
+    }
+
+    public synchronized void add(final Record record) throws IOException {
+        records.put(record.fingerprint, record);
+        append(record.toLine());
+    }
+
+    /**
+     * Drops a stale record once its files moved to the row that replaced it.
+     */
+    public synchronized void remove(final Record record) throws IOException {
+        if (records.remove(record.fingerprint) != null) {
+            append(REMOVED + Long.toHexString(record.fingerprint) + "\n");
+        }
+    }
+
+    private void append(final String line) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void compact() throws IOException {
+        final File compacted = new File(file.getPath() + ".tmp");
+        final StringBuilder content = new StringBuilder();
+        records.values().forEach(record -> content.append(record.toLine()));
+        Files.write(compacted.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static class Record {
+        private final long fingerprint;
+        private final String guid;
+        private final String targetFolder;
+        // Names of the files the row put into the target folder, empty until the row was processed.
+        private final Set<String> targetFiles;
+
+        public Record(long fingerprint, String guid, String targetFolder) {
+            this(fingerprint, guid, targetFolder, Collections.emptyList());
+        }
+
+        private Record(long fingerprint, String guid, String targetFolder, Collection<String> targetFiles) {
+            this.fingerprint = fingerprint;
+            this.guid = guid;
+            this.targetFolder = targetFolder;
+            this.targetFiles = new LinkedHashSet<>(targetFiles);
+        }
+
+        /**
+         * @param targetFiles names of the files the row put into its target folder
+         */
+        public Record withTargetFiles(final Collection<String> targetFiles) {
+            return new Record(fingerprint, guid, targetFolder, targetFiles);
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getTargetFolder() {
+            return targetFolder;
+        }
+
+        public Set<String> getTargetFiles() {
+            return Collections.unmodifiableSet(targetFiles);
+        }
+
+        private String toLine() {
+            return Long.toHexString(fingerprint) + SEPARATOR + guid + SEPARATOR + targetFolder + SEPARATOR
+                + String.join(FILE_SEPARATOR, targetFiles) + "\n";
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.tech;
+
+import com.tech.utils.FileUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performance profile of the run by row and by file extension, written as CSV next to copy-stats.properties.
+ * <p>
+ * row-profile.csv gets one line per row as soon as its copies completed: scan time, planned files and bytes, copy wall
+ * time, the effective rate over that time, the slowest file and the failures. Scan time is the time of the row not spent
+ * waiting for its batches, which includes creating the target folder and planning. extension-profile.csv sums the copied
+ * files by extension and is rewritten every few seconds and at the end of the run.
+ */
+public class RowProfileReport {
+
+    static Logger logger = LogManager.getLogger(RowProfileReport.class);
+
+    private static final String ROW_REPORT = "row-profile.csv";
+    private static final String EXTENSION_REPORT = "extension-profile.csv";
+    private static final String ROW_HEADER = "manifest,sheet,row,guid,scan_ms,files,bytes,copy_ms,mb_per_s,slowest_file,slowest_file_ms,failures\n";
+    private static final String EXTENSION_HEADER = "extension,files,bytes,copy_ms,mb_per_s,slowest_file_ms,failures\n";
+    private static final long EXTENSION_REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final File reportFolder;
+    private final boolean failFast;
+    private final Map<String, ExtensionProfile> extensions = new ConcurrentHashMap<>();
+    private long extensionsWrittenAt = System.nanoTime();
+
+    public RowProfileReport(File reportFolder, boolean failFast) {
+        this.reportFolder = reportFolder;
+        this.failFast = failFast;
+    }
+
+    public RowProfile startRow(final String manifest, final String sheet, final int rowIndex, final String guid) {
+        return new RowProfile(manifest, sheet, rowIndex, guid);
+    }
+
+    /**
+     * Appends the line of the row and rewrites the extension report if its interval passed.
+     */
+    public synchronized void completeRow(final RowProfile row) {
+        final File rowReport = new File(reportFolder, ROW_REPORT);
+        FileUtil.appendEntryToLogFile(rowReport, (rowReport.exists() ? "" : ROW_HEADER) + row.toCsv(), failFast);
+        if (System.nanoTime() - extensionsWrittenAt >= EXTENSION_REPORT_INTERVAL_NANOS) {
+            writeExtensionReport();
+        }
+    }
+
+    public synchronized void flush() {
+        writeExtensionReport();
+    }
+
+    private void writeExtensionReport() {
+        extensionsWrittenAt = System.nanoTime();
+        final StringBuilder report = new StringBuilder(EXTENSION_HEADER);
+        new TreeMap<>(extensions).forEach((extension, profile) -> report.append(profile.toCsv(extension)));
+        final File extensionReport = new File(reportFolder, EXTENSION_REPORT);
+        final File tempReport = new File(reportFolder, EXTENSION_REPORT + ".tmp");
+        try {
+            Files.createDirectories(reportFolder.toPath());
+            Files.write(tempReport.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tempReport.toPath(), extensionReport.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Only the report is out of date, the copies are not affected.
+            logger.error("Failed to write the extension profile {}", extensionReport.getPath());
+            logger.error(e);
+        }
+    }
+
+    private static String csv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String megabytesPerSecond(final long bytes, final long nanos) {
+        return nanos <= 0 ? "0" : String.format(Locale.ROOT, "%.2f", bytes / 1048576d / (nanos / 1_000_000_000d));
+    }
+
+    /**
+     * Profile of one row. Planning runs on the sheet thread, the files are reported by the copy threads.
+     */
+    public class RowProfile {
+        private final String manifest;
+        private final String sheet;
+        private final int rowIndex;
+        private final String guid;
+        private final long startNanos = System.nanoTime();
+        private int files;
+        private long bytes;
+        private long copyNanos;
+        private int failures;
+        private String slowestFile = "";
+        private long slowestFileNanos;
+        private long rowNanos;
+
+        RowProfile(String manifest, String sheet, int rowIndex, String guid) {
+            this.manifest = manifest;
+            this.sheet = sheet;
+            this.rowIndex = rowIndex;
+            this.guid = guid;
+        }
+
+        synchronized void planned(final long length) {
+            files++;
+            bytes += length;
+        }
+
+        synchronized void batchCopied(final long nanos) {
+            copyNanos += nanos;
+        }
+
+        /**
+         * @param nanos time the copy thread spent on the file
+         */
+        void fileDone(final File target, final long length, final long nanos, final boolean failed) {
+            synchronized (this) {
+                if (failed) {
+                    failures++;
+                }
+                if (nanos > slowestFileNanos) {
+                    slowestFileNanos = nanos;
+                    slowestFile = target.getPath();
+                }
+            }
+            extensions.computeIfAbsent(FileUtil.getExtensionByApacheCommonLib(target.getName()).toLowerCase(Locale.ROOT),
+                extension -> new ExtensionProfile()).fileDone(length, nanos, failed);
+        }
+
+        synchronized void complete() {
+            rowNanos = System.nanoTime() - startNanos;
+        }
+
+        private synchronized String toCsv() {
+            return csv(manifest) + "," + csv(sheet) + "," + rowIndex + ","
+                + csv(guid == null ? "" : guid) + "," + millis(Math.max(0, rowNanos - copyNanos)) + "," + files + "," + bytes + ","
+                + millis(copyNanos) + "," + megabytesPerSecond(bytes, copyNanos) + "," + csv(slowestFile) + ","
+                + millis(slowestFileNanos) + "," + failures + "\n";
+        }
+    }
+
+    /**
+     * Copied files of one extension, the copy time is the sum of the times of the files, not wall time.
+     */
+    private static class ExtensionProfile {
+        private int files;
+        private long bytes;
+        private long copyNanos;
+        private long slowestFileNanos;
+        private int failures;
+
+        synchronized void fileDone(final long length, final long nanos, final boolean failed) {
+            files++;
+            bytes += length;
+            copyNanos += nanos;
+            slowestFileNanos = Math.max(slowestFileNanos, nanos);
+            if (failed) {
+                failures++;
+            }
+        }
+
+        synchronized String toCsv(final String extension) {
+            return csv(extension) + "," + files + "," + bytes + "," + millis(copyNanos) + "," + megabytesPerSecond(bytes, copyNanos) + ","
+                + millis(slowestFileNanos) + "," + failures + "\n";
+        }
+    }
+}
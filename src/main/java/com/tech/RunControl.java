@@ -0,0 +1,160 @@
+package com.tech;
+
+import com.tech.utils.BandwidthThrottler;
+import com.tech.utils.StatsUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+/**
+ * Live stats and controls of the run over JMX, so a long run can be slowed down, paused or tuned without restarting it.
+ * <p>
+ * Every change applies to the files that have not started yet, files being copied complete with the settings they started
+ * with. With ADAPTIVE_COPY_THREADS the controller carries on from the thread count set here, within its bounds.
+ */
+public class RunControl implements RunControlMBean {
+
+    static Logger logger = LogManager.getLogger(RunControl.class);
+
+    private static final String OBJECT_NAME = "com.tech:type=DataOrganizer";
+
+    private final CopySettings copySettings;
+    // Null when copies run on virtual threads, their concurrency is bounded by the permits of virtualCopies instead.
+    private final ThreadPoolExecutor copyPool;
+    private final BoundedExecutorService virtualCopies;
+    private final Supplier<List<String>> currentRows;
+    private ObjectName objectName;
+
+    public RunControl(CopySettings copySettings, ThreadPoolExecutor copyPool, BoundedExecutorService virtualCopies,
+                      Supplier<List<String>> currentRows) {
+        this.copySettings = copySettings;
+        this.copyPool = copyPool;
+        this.virtualCopies = virtualCopies;
+        this.currentRows = currentRows;
+    }
+
+    public void register() {
+        try {
+            objectName = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            logger.info("Registered the management bean {}", OBJECT_NAME);
+        } catch (JMException e) {
+            // The run itself does not depend on it.
+            logger.error("Failed to register the management bean {}", OBJECT_NAME);
+            logger.error(e);
+            objectName = null;
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.error(e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public int getFilesCopied() {
+        return StatsUtil.getInstance().getFilesCopied();
+    }
+
+    @Override
+    public int getFilesFailed() {
+        return StatsUtil.getInstance().getFilesFailed();
+    }
+
+    @Override
+    public int getFilesSkipped() {
+        return StatsUtil.getInstance().getFilesSkipped();
+    }
+
+    @Override
+    public String getBytesCopied() {
+        return StatsUtil.readableFileSize(StatsUtil.getInstance().getTotalLengthCopied());
+    }
+
+    @Override
+    public String getEffectiveRate() {
+        return StatsUtil.readableRate(StatsUtil.getInstance().getEffectiveRate());
+    }
+
+    @Override
+    public String getRateLimit() {
+        return BandwidthThrottler.describeRate(BandwidthThrottler.getInstance().getCurrentRate());
+    }
+
+    @Override
+    public String[] getCurrentRows() {
+        return currentRows.get().toArray(new String[0]);
+    }
+
+    @Override
+    public boolean isPaused() {
+        return copySettings.isPaused();
+    }
+
+    @Override
+    public void pause() {
+        copySettings.pause();
+        logger.info("Copies paused over JMX, files being copied complete");
+    }
+
+    @Override
+    public void resume() {
+        copySettings.resume();
+        logger.info("Copies resumed over JMX");
+    }
+
+    @Override
+    public int getCopyThreads() {
+        return copyPool == null ? virtualCopies.getMaxPermits() : copyPool.getMaximumPoolSize();
+    }
+
+    @Override
+    public void setCopyThreads(int copyThreads) {
+        if (copyThreads <= 0) {
+            throw new IllegalArgumentException("Copy threads have to be positive: " + copyThreads);
+        }
+        if (copyPool == null) {
+            // Directory listings share the permits, so they follow the new bound too.
+            logger.info("Changing concurrent virtual thread copies {} -> {} over JMX", virtualCopies.getMaxPermits(), copyThreads);
+            virtualCopies.setMaxPermits(copyThreads);
+            return;
+        }
+        logger.info("Changing copy threads {} -> {} over JMX", copyPool.getMaximumPoolSize(), copyThreads);
+        AdaptiveConcurrencyController.resize(copyPool, copyThreads);
+    }
+
+    @Override
+    public int getCopyBlockSize() {
+        return copySettings.getCopyBlockSize();
+    }
+
+    @Override
+    public void setCopyBlockSize(int copyBlockSize) {
+        copySettings.setCopyBlockSize(copyBlockSize);
+        logger.info("Changed copy block size to {} over JMX", copyBlockSize);
+    }
+
+    @Override
+    public boolean isUseStreamCopy() {
+        return copySettings.isUseStreamCopy();
+    }
+
+    @Override
+    public void setUseStreamCopy(boolean useStreamCopy) {
+        copySettings.setUseStreamCopy(useStreamCopy);
+        logger.info("Changed stream copy to {} over JMX", useStreamCopy);
+    }
+}
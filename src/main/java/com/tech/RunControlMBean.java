@@ -0,0 +1,48 @@
+package com.tech;
+
+/**
+ * Management interface of a running organizer, registered as com.tech:type=DataOrganizer, e.g. for jconsole.
+ */
+public interface RunControlMBean {
+
+    int getFilesCopied();
+
+    int getFilesFailed();
+
+    int getFilesSkipped();
+
+    String getBytesCopied();
+
+    String getEffectiveRate();
+
+    String getRateLimit();
+
+    /**
+     * @return sheets planning or copying a row right now, with the row index
+     */
+    String[] getCurrentRows();
+
+    boolean isPaused();
+
+    /**
+     * Holds every file not started yet, files being copied complete.
+     */
+    void pause();
+
+    void resume();
+
+    /**
+     * @return copy threads, or the concurrent copies allowed when copies run on virtual threads
+     */
+    int getCopyThreads();
+
+    void setCopyThreads(int copyThreads);
+
+    int getCopyBlockSize();
+
+    void setCopyBlockSize(int copyBlockSize);
+
+    boolean isUseStreamCopy();
+
+    void setUseStreamCopy(boolean useStreamCopy);
+}
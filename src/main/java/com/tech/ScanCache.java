@@ -0,0 +1,307 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the scan of each guid folder on disk, so a rerun only lists the directories that changed since.
+ * <p>
+ * A directory's modification time changes whenever an entry is added, removed or renamed in it. A directory whose time
+ * still matches the cache is served from it, entry names, sizes and times included, and only its subdirectories are
+ * checked again, so an unchanged tree costs one attribute read per directory instead of one listing per directory and one
+ * per file. Files changed in place keep their directory's time and are not detected, the copy itself reads the actual
+ * length. Excluded directories are cached without their subtree, the exclusion itself is evaluated again on every scan as
+ * the patterns may have changed.
+ * <p>
+ * One file per guid folder holds the tree in pre-order, read whole to load it. A directory is a name, its
+ * modification time and its entry count followed by its entries, an entry is a flags byte and a name followed by size and
+ * time for a file or by the directory itself.
+ */
+public class ScanCache {
+
+    static Logger logger = LogManager.getLogger(ScanCache.class);
+
+    private static final int MAGIC = 0x444F5343;
+    private static final int VERSION = 1;
+    private static final byte DIRECTORY = 1;
+    private static final byte EXCLUDED = 2;
+    private static final byte SYMBOLIC_LINK = 4;
+    private static final String EXTENSION = ".scan";
+    // A directory changed within this time of the scan may change again with the same time, it is listed again next time.
+    private static final long RACY_MILLIS = 2000;
+    private static final long UNTRUSTED = Long.MIN_VALUE;
+
+    private final File cacheFolder;
+
+    public ScanCache(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    /**
+     * Walks the folder like {@link Files#walkFileTree} would, serving unchanged directories from the cache, and saves the
+     * result for the next run.
+     */
+    public void walk(final Path root, final ParallelTreeScanner.Visitor visitor) throws IOException {
+        if (!visitor.preVisitDirectory(root)) {
+            return;
+        }
+        final File cacheFile = getCacheFile(root);
+        final CachedDirectory cached = load(cacheFile, root);
+        final long scanStart = System.currentTimeMillis();
+        final Counts counts = new Counts();
+        final CachedDirectory scanned = walk(root, root.getFileName().toString(), cached, visitor, scanStart, counts);
+        logger.info("Scanned {}, {} directories from cache and {} listed", root, counts.cached, counts.listed);
+        try {
+            save(cacheFile, root, scanned);
+        } catch (IOException e) {
+            // Only the next run gets slower.
+            logger.error("Failed to save the scan cache {}", cacheFile.getPath());
+            logger.error(e);
+        }
+    }
+
+    private CachedDirectory walk(final Path dir, final String name, final CachedDirectory cached, final ParallelTreeScanner.Visitor visitor,
+                                 final long scanStart, final Counts counts) throws IOException {
+        final long modifiedTime = Files.getLastModifiedTime(dir, LinkOption.NOFOLLOW_LINKS).toMillis();
+        final CachedDirectory scanned = new CachedDirectory(name, scanStart - modifiedTime < RACY_MILLIS ? UNTRUSTED : modifiedTime);
+        final List<CachedEntry> entries;
+        if (cached != null && cached.modifiedTime == modifiedTime) {
+            entries = cached.entries;
+            counts.cached++;
+        } else {
+            entries = list(dir, cached);
+            counts.listed++;
+        }
+        for (final CachedEntry entry : entries) {
+            final Path path = dir.resolve(entry.name);
+            if ((entry.flags & DIRECTORY) == 0) {
+                visitor.visitFile(path, entry);
+                scanned.entries.add(entry);
+            } else if (!visitor.preVisitDirectory(path)) {
+                scanned.entries.add(new CachedEntry(entry.name, (byte) (DIRECTORY | EXCLUDED), 0, 0, null));
+            } else {
+                scanned.entries.add(new CachedEntry(entry.name, DIRECTORY, 0, 0,
+                    walk(path, entry.name, entry.directory, visitor, scanStart, counts)));
+            }
+        }
+        return scanned;
+    }
+
+    /**
+     * Subdirectories keep their cached subtree, they are checked on their own.
+     */
+    private static List<CachedEntry> list(final Path dir, final CachedDirectory cached) throws IOException {
+        final Map<String, CachedDirectory> cachedSubdirectories = new HashMap<>();
+        if (cached != null) {
+            cached.entries.stream().filter(entry -> entry.directory != null).forEach(entry -> cachedSubdirectories.put(entry.name, entry.directory));
+        }
+        final List<CachedEntry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (final Path path : stream) {
+                final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                final String name = path.getFileName().toString();
+                if (attrs.isDirectory()) {
+                    entries.add(new CachedEntry(name, DIRECTORY, 0, 0, cachedSubdirectories.get(name)));
+                } else {
+                    entries.add(new CachedEntry(name, attrs.isSymbolicLink() ? SYMBOLIC_LINK : 0, attrs.size(),
+                        attrs.lastModifiedTime().toMillis(), null));
+                }
+            }
+        }
+        return entries;
+    }
+
+    private File getCacheFile(final Path root) {
+        final String path = root.toAbsolutePath().toString();
+        return new File(cacheFolder, root.getFileName() + "-" + Integer.toHexString(path.hashCode()) + EXTENSION);
+    }
+
+    private static CachedDirectory load(final File cacheFile, final Path root) {
+        if (!cacheFile.exists()) {
+            return null;
+        }
+        try {
+            // Not mapped, a mapping outlives the load and on Windows the file can not be replaced while it is mapped.
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !readString(buffer).equals(root.toAbsolutePath().toString())) {
+                logger.info("Ignoring scan cache {} written for another version or folder", cacheFile.getPath());
+                return null;
+            }
+            return readDirectory(buffer, readString(buffer));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Ignoring unreadable scan cache {}", cacheFile.getPath());
+            logger.error(e);
+            return null;
+        }
+    }
+
+    private static CachedDirectory readDirectory(final ByteBuffer buffer, final String name) {
+        final CachedDirectory directory = new CachedDirectory(name, buffer.getLong());
+        final int entryCount = buffer.getInt();
+        for (int i = 0; i < entryCount; i++) {
+            final byte flags = buffer.get();
+            final String entryName = readString(buffer);
+            if ((flags & EXCLUDED) != 0) {
+                directory.entries.add(new CachedEntry(entryName, flags, 0, 0, null));
+            } else if ((flags & DIRECTORY) != 0) {
+                directory.entries.add(new CachedEntry(entryName, flags, 0, 0, readDirectory(buffer, entryName)));
+            } else {
+                directory.entries.add(new CachedEntry(entryName, flags, buffer.getLong(), buffer.getLong(), null));
+            }
+        }
+        return directory;
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void save(final File cacheFile, final Path root, final CachedDirectory directory) throws IOException {
+        Files.createDirectories(cacheFile.getParentFile().toPath());
+        // Rows of the same guid may be scanned by two sheets at once, each writes its own file and the last move wins.
+        final Path tempFile = Files.createTempFile(cacheFile.getParentFile().toPath(), cacheFile.getName(), ".tmp");
+        try {
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                writeString(outputStream, root.toAbsolutePath().toString());
+                writeString(outputStream, directory.name);
+                writeDirectory(outputStream, directory);
+            }
+            Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static void writeDirectory(final DataOutputStream outputStream, final CachedDirectory directory) throws IOException {
+        outputStream.writeLong(directory.modifiedTime);
+        outputStream.writeInt(directory.entries.size());
+        for (final CachedEntry entry : directory.entries) {
+            outputStream.writeByte(entry.flags);
+            writeString(outputStream, entry.name);
+            if ((entry.flags & EXCLUDED) != 0) {
+                continue;
+            }
+            if (entry.directory != null) {
+                writeDirectory(outputStream, entry.directory);
+            } else {
+                outputStream.writeLong(entry.size);
+                outputStream.writeLong(entry.modifiedTime);
+            }
+        }
+    }
+
+    /**
+     * Unlike {@link DataOutputStream#writeUTF(String)} plain UTF-8, which the loader decodes straight from the read buffer.
+     */
+    private static void writeString(final DataOutputStream outputStream, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Name too long for the scan cache: " + value);
+        }
+        outputStream.writeShort(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private static class CachedDirectory {
+        private final String name;
+        private final long modifiedTime;
+        private final List<CachedEntry> entries = new ArrayList<>();
+
+        CachedDirectory(String name, long modifiedTime) {
+            this.name = name;
+            this.modifiedTime = modifiedTime;
+        }
+    }
+
+    /**
+     * A file or subdirectory, files are handed to the visitor as their own attributes.
+     */
+    private static class CachedEntry implements BasicFileAttributes {
+        private final String name;
+        private final byte flags;
+        private final long size;
+        private final long modifiedTime;
+        // Null for files, excluded directories and directories not scanned before.
+        private final CachedDirectory directory;
+
+        CachedEntry(String name, byte flags, long size, long modifiedTime, CachedDirectory directory) {
+            this.name = name;
+            this.flags = flags;
+            this.size = size;
+            this.modifiedTime = modifiedTime;
+            this.directory = directory;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return FileTime.fromMillis(modifiedTime);
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return (flags & (DIRECTORY | SYMBOLIC_LINK)) == 0;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return (flags & DIRECTORY) != 0;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return (flags & SYMBOLIC_LINK) != 0;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+
+    private static class Counts {
+        private int cached;
+        private int listed;
+    }
+}
@@ -0,0 +1,69 @@
+package com.tech;
+
+import com.tech.utils.StatsUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Combines the stats and audit logs of all shard runs into the regular log folder, so the report reads like the one of a
+ * single process. Any earlier content of that folder is backed up first.
+ */
+public class ShardMerger {
+
+    static Logger logger = LogManager.getLogger(ShardMerger.class);
+
+    public void merge() throws IOException {
+        final List<File> shardFolders = DataOrganizerApplication.getShardPropsFilePaths();
+        if (shardFolders.isEmpty()) {
+            logger.error("No shard logs found to merge");
+            return;
+        }
+        ProcessExecutor.takeBackUpOfExistingLogIfPresent();
+        final File mergedFolder = DataOrganizerApplication.getPropsFilePath();
+        if (!mergedFolder.mkdirs()) {
+            throw new IOException("Failed to create the folder path: " + mergedFolder);
+        }
+
+        final List<File> statsFiles = new ArrayList<>();
+        for (final File shardFolder : shardFolders) {
+            final File statsFile = new File(shardFolder, DataOrganizerApplication.getStatsFilePath().getName());
+            if (statsFile.exists()) {
+                statsFiles.add(statsFile);
+            } else {
+                logger.error("Shard {} has no stats file", shardFolder.getName());
+            }
+        }
+        StatsUtil.mergeStatsFiles(statsFiles, DataOrganizerApplication.getStatsFilePath());
+
+        for (final File auditLog : DataOrganizerApplication.getAuditLogPaths()) {
+            mergeAuditLog(shardFolders, auditLog);
+        }
+        logger.info("Merged the logs of {} shards into {}", shardFolders.size(), mergedFolder.getPath());
+    }
+
+    private static void mergeAuditLog(final List<File> shardFolders, final File mergedLog) throws IOException {
+        final List<File> shardLogs = new ArrayList<>();
+        for (final File shardFolder : shardFolders) {
+            final File shardLog = new File(shardFolder, mergedLog.getName());
+            if (shardLog.exists()) {
+                shardLogs.add(shardLog);
+            }
+        }
+        if (shardLogs.isEmpty()) {
+            return;
+        }
+        try (OutputStream outputStream = Files.newOutputStream(mergedLog.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (final File shardLog : shardLogs) {
+                Files.copy(shardLog.toPath(), outputStream);
+            }
+        }
+    }
+}
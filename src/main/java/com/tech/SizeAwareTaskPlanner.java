@@ -0,0 +1,62 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders a window of planned copies before they are submitted.
+ * <p>
+ * Files below the small file threshold are grouped into {@link BatchCopyTask}s, then all work is ordered largest first so
+ * that big files start early and the small batches fill the gaps at the end instead of one huge file forming the tail.
+ */
+public class SizeAwareTaskPlanner {
+
+    static Logger logger = LogManager.getLogger(SizeAwareTaskPlanner.class);
+
+    private final long smallFileThreshold;
+    private final int smallFileBatchCount;
+    private final boolean failFast;
+
+    /**
+     * @param smallFileThreshold  files smaller than this many bytes are batched, 0 disables batching
+     * @param smallFileBatchCount max files in one batched task
+     */
+    public SizeAwareTaskPlanner(long smallFileThreshold, int smallFileBatchCount, boolean failFast) {
+        this.smallFileThreshold = smallFileThreshold;
+        this.smallFileBatchCount = Math.max(1, smallFileBatchCount);
+        this.failFast = failFast;
+    }
+
+    public List<CopyTask> plan(final List<CopyFileTask> window) {
+        final List<CopyTask> planned = new ArrayList<>();
+        List<CopyFileTask> smallFiles = new ArrayList<>();
+        int batches = 0;
+        for (final CopyFileTask task : window) {
+            if (smallFileThreshold <= 0 || smallFileBatchCount == 1 || task.getLength() >= smallFileThreshold) {
+                planned.add(task);
+                continue;
+            }
+            smallFiles.add(task);
+            if (smallFiles.size() >= smallFileBatchCount) {
+                planned.add(new BatchCopyTask(smallFiles, failFast));
+                smallFiles = new ArrayList<>();
+                batches++;
+            }
+        }
+        if (smallFiles.size() == 1) {
+            planned.add(smallFiles.get(0));
+        } else if (!smallFiles.isEmpty()) {
+            planned.add(new BatchCopyTask(smallFiles, failFast));
+            batches++;
+        }
+        planned.sort(Comparator.comparingLong(CopyTask::getLength).reversed());
+        if (batches > 0) {
+            logger.info("Planned {} files as {} tasks, {} of them small file batches", window.size(), planned.size(), batches);
+        }
+        return planned;
+    }
+}
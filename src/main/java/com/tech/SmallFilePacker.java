@@ -0,0 +1,202 @@
+package com.tech;
+
+import com.tech.utils.BandwidthThrottler;
+import com.tech.utils.PathTable;
+import com.tech.utils.StatsUtil;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes the small files of a target folder into one uncompressed archive instead of one target file each.
+ * <p>
+ * All archives are written one after another by a single writer thread, so the target sees long sequential writes.
+ * Next to every archive an index lists each entry with the offset of its data in the archive, its length and its source.
+ * The copied and failed logs still get one entry per file, a packed file is logged as {@code source->archive!entry}.
+ * When an archive fails, its files are logged as failed with their plain target path, so a retry copies them loose.
+ * Unless the sync policy is none, an archive and its index are synced before their files are logged.
+ */
+public class SmallFilePacker {
+
+    static Logger logger = LogManager.getLogger(SmallFilePacker.class);
+
+    public static final String ARCHIVE_NAME = "packed-files";
+    private static final String INDEX_SUFFIX = ".index";
+
+    private final PackFormat format;
+    private final boolean failFast;
+    private final DurabilitySync durabilitySync;
+    // Pause of the run, packing holds before every file like a copy does.
+    private final CopySettings settings;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "pack-writer"));
+
+    public SmallFilePacker(PackFormat format, CopySettings settings) {
+        this.format = format;
+        this.failFast = settings.isFailFast();
+        this.durabilitySync = settings.getDurabilitySync();
+        this.settings = settings;
+    }
+
+    public PackFormat getFormat() {
+        return format;
+    }
+
+    public CompletableFuture<Void> pack(final File archive, final List<PackedFile> files) {
+        return CompletableFuture.runAsync(() -> write(archive, files), writer);
+    }
+
+    public void shutdown() {
+        writer.shutdown();
+    }
+
+    private void write(final File archive, final List<PackedFile> files) {
+        logger.info("Starting packing {} files into {}", files.size(), archive);
+        final StringBuilder copiedEntries = new StringBuilder();
+        final StringBuilder failedEntries = new StringBuilder();
+        final StringBuilder index = new StringBuilder();
+        final List<PackedFile> packed = new ArrayList<>();
+        final BandwidthThrottler throttler = BandwidthThrottler.getInstance();
+        final long startNanos = System.nanoTime();
+        try {
+            try (SeekableByteChannel zipChannel = format == PackFormat.ZIP ? Files.newByteChannel(archive.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE) : null;
+                 ArchiveOutputStream outputStream = open(archive, zipChannel)) {
+                for (final PackedFile file : files) {
+                    settings.awaitResumed();
+                    final File source = file.source();
+                    final byte[] content;
+                    try {
+                        // Below the pack threshold, so read whole. The entry then gets the length actually read.
+                        content = Files.readAllBytes(source.toPath());
+                    } catch (IOException e) {
+                        logger.error(e);
+                        logger.error("Failed to read file {} for packing", source);
+                        failedEntries.append(source.getPath()).append("->").append(file.target().getPath()).append("\n");
+                        StatsUtil.getInstance().updateStats(file.length, false, false, true);
+                        continue;
+                    }
+                    throttler.acquire(content.length);
+                    outputStream.putArchiveEntry(newEntry(file.targetName(), content.length));
+                    // The zip stream only counts entry data, the position of its channel includes the headers.
+                    final long offset = zipChannel != null ? zipChannel.position() : outputStream.getBytesWritten();
+                    outputStream.write(content);
+                    outputStream.closeArchiveEntry();
+                    StatsUtil.getInstance().recordBytesTransferred(content.length);
+                    index.append(file.targetName()).append('\t').append(offset).append('\t').append(content.length)
+                        .append('\t').append(source.getPath()).append('\n');
+                    packed.add(file);
+                }
+                outputStream.finish();
+            }
+            Files.write(new File(archive.getPath() + INDEX_SUFFIX).toPath(), index.toString().getBytes());
+            durabilitySync.syncNow(archive);
+            durabilitySync.syncNow(new File(archive.getPath() + INDEX_SUFFIX));
+        } catch (Exception e) {
+            logger.error(e);
+            logger.error("Failed to write archive {}, logging its {} files as failed", archive, packed.size());
+            deleteQuietly(archive);
+            deleteQuietly(new File(archive.getPath() + INDEX_SUFFIX));
+            for (final PackedFile file : packed) {
+                failedEntries.append(file.source().getPath()).append("->").append(file.target().getPath()).append("\n");
+                StatsUtil.getInstance().updateStats(file.length, false, false, true);
+            }
+            CopyFileTask.appendLogEntries(copiedEntries, failedEntries, failFast);
+            if (failFast) {
+                throw new RuntimeException(e);
+            }
+            return;
+        } finally {
+            StatsUtil.getInstance().recordFileLatency(System.nanoTime() - startNanos);
+        }
+
+        // Only counted once the archive is complete, a partly written archive holds no usable file.
+        for (final PackedFile file : packed) {
+            copiedEntries.append(file.source().getPath()).append("->").append(archive.getPath()).append('!').append(file.targetName()).append("\n");
+            StatsUtil.getInstance().updateStats(file.length, true, false, false);
+            StatsUtil.getInstance().updatePackedFileStats();
+        }
+        CopyFileTask.appendLogEntries(copiedEntries, failedEntries, failFast);
+        logger.info("Completed packing {} files into {}", packed.size(), archive);
+    }
+
+    private ArchiveOutputStream open(final File archive, final SeekableByteChannel zipChannel) throws IOException {
+        if (format == PackFormat.TAR) {
+            final TarArchiveOutputStream outputStream = new TarArchiveOutputStream(Files.newOutputStream(archive.toPath()));
+            outputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            outputStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            return outputStream;
+        }
+        // Seekable, so stored entries need neither their size nor their crc up front.
+        final ZipArchiveOutputStream outputStream = new ZipArchiveOutputStream(zipChannel);
+        outputStream.setMethod(ZipArchiveOutputStream.STORED);
+        outputStream.setUseZip64(Zip64Mode.AsNeeded);
+        return outputStream;
+    }
+
+    private ArchiveEntry newEntry(final String name, final long size) {
+        if (format == PackFormat.TAR) {
+            final TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(size);
+            return entry;
+        }
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setSize(size);
+        return entry;
+    }
+
+    private static void deleteQuietly(final File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.error("Failed to delete file {}", file.getPath());
+            logger.error(e);
+        }
+    }
+
+    /**
+     * A small file planned into the archive of its target folder, kept as path ids until the archive is written.
+     */
+    public static class PackedFile {
+        private final PathTable pathTable;
+        private final int sourceId;
+        // Target the file would have had unpacked, its name is the entry name.
+        private final int targetId;
+        private final long length;
+
+        public PackedFile(PathTable pathTable, int sourceId, int targetId, long length) {
+            this.pathTable = pathTable;
+            this.sourceId = sourceId;
+            this.targetId = targetId;
+            this.length = length;
+        }
+
+        File source() {
+            return pathTable.toFile(sourceId);
+        }
+
+        File target() {
+            return pathTable.toFile(targetId);
+        }
+
+        String targetName() {
+            return pathTable.name(targetId);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.tech;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Names of the entries of SRC_FOLDER, read with one streamed listing instead of one existence check per row.
+ * <p>
+ * On a network file system with hundreds of thousands of guid folders, the listing is a few round trips for the whole
+ * folder where checking every row costs one each. The names are kept in an open addressing table of strings. A name that
+ * is missing lists the folder again, at most once per refresh interval, so folders delivered during the run are still found.
+ * <br>A listing that fails keeps the names of the previous one, and until a listing succeeds again a missing name is checked
+ * on the file system, so a listing error never makes rows look missing.
+ */
+public class SourceIndex {
+
+    static Logger logger = LogManager.getLogger(SourceIndex.class);
+
+    private final File sourceFolder;
+    private final long refreshMillis;
+    private String[] names = new String[1024];
+    private int size;
+    // Names are compared lower case when the source folder is on a case insensitive file system.
+    private boolean caseInsensitive;
+    // 0 until the first listing, which happens on the first lookup.
+    private long listedAt;
+    // Set while the last listing failed, the names may then be incomplete.
+    private boolean listingFailed;
+
+    /**
+     * @param refreshMillis min time between two listings caused by missing names
+     */
+    public SourceIndex(File sourceFolder, long refreshMillis) {
+        this.sourceFolder = sourceFolder;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * @param name guid folder name, a name with separators is checked on the file system instead
+     */
+    public synchronized boolean contains(final String name) {
+        if (name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0) {
+            return new File(sourceFolder, name).exists();
+        }
+        if (listedAt == 0 || (!find(key(name)) && System.currentTimeMillis() - listedAt >= refreshMillis)) {
+            refresh();
+        }
+        return find(key(name)) || (listingFailed && new File(sourceFolder, name).exists());
+    }
+
+    /**
+     * Adds a folder known to have arrived, e.g. reported by the watch mode.
+     */
+    public synchronized void add(final String name) {
+        insert(key(name));
+    }
+
+    public synchronized void refresh() {
+        final long start = System.currentTimeMillis();
+        final List<String> listedNames = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(sourceFolder.toPath())) {
+            for (final Path entry : entries) {
+                listedNames.add(entry.getFileName().toString());
+            }
+        } catch (IOException e) {
+            logger.error("Failed to list the source folder {}, checking missing names one by one until the next listing",
+                sourceFolder.getPath());
+            logger.error(e);
+            listingFailed = true;
+            listedAt = System.currentTimeMillis();
+            return;
+        }
+        listingFailed = false;
+        caseInsensitive = isCaseInsensitive(listedNames);
+        names = new String[1024];
+        size = 0;
+        listedNames.forEach(listedName -> insert(key(listedName)));
+        listedAt = System.currentTimeMillis();
+        logger.info("Listed {} entries of source folder {} in {} ms", size, sourceFolder.getPath(), listedAt - start);
+    }
+
+    /**
+     * The row values were matched by {@link File#exists()} before, which ignores case on Windows and macOS by default.
+     */
+    private boolean isCaseInsensitive(final List<String> listedNames) {
+        for (final String listedName : listedNames) {
+            final String upperCaseName = listedName.toUpperCase(Locale.ROOT);
+            if (!upperCaseName.equals(listedName)) {
+                return new File(sourceFolder, upperCaseName).exists();
+            }
+        }
+        return false;
+    }
+
+    private String key(final String name) {
+        return caseInsensitive ? name.toLowerCase(Locale.ROOT) : name;
+    }
+
+    private boolean find(final String name) {
+        return name.equals(names[slot(name)]);
+    }
+
+    private void insert(final String name) {
+        if ((size + 1) * 4 > names.length * 3) {
+            final String[] oldNames = names;
+            names = new String[oldNames.length * 2];
+            Arrays.stream(oldNames).filter(oldName -> oldName != null).forEach(oldName -> names[slot(oldName)] = oldName);
+        }
+        final int slot = slot(name);
+        if (names[slot] == null) {
+            names[slot] = name;
+            size++;
+        }
+    }
+
+    /**
+     * @return slot holding the name, or the empty slot where it would go
+     */
+    private int slot(final String name) {
+        final int hash = name.hashCode() * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & (names.length - 1);
+        while (names[slot] != null && !names[slot].equals(name)) {
+            slot = (slot + 1) & (names.length - 1);
+        }
+        return slot;
+    }
+}
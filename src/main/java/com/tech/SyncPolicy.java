@@ -0,0 +1,18 @@
+package com.tech;
+
+public enum SyncPolicy {
+    NONE,
+    PER_FILE,
+    BATCHED,
+    AT_ROW_END;
+
+    /**
+     * @param value none, per-file, batched or at-row-end
+     */
+    public static SyncPolicy fromValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NONE;
+        }
+        return SyncPolicy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
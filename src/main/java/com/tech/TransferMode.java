@@ -0,0 +1,18 @@
+package com.tech;
+
+public enum TransferMode {
+    COPY,
+    MOVE,
+    HARDLINK,
+    /**
+     * Hard link when source and target share a file store, copy otherwise.
+     */
+    AUTO;
+
+    public static TransferMode fromValue(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return COPY;
+        }
+        return TransferMode.valueOf(value.trim().toUpperCase());
+    }
+}
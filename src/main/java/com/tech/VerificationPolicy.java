@@ -0,0 +1,71 @@
+package com.tech;
+
+import com.tech.utils.StatsUtil;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which copied files get a checksum verification. Parsed from VERIFY_POLICY:
+ * none, all, sample:&lt;percent&gt;, above:&lt;size&gt; or below:&lt;size&gt;.
+ */
+public class VerificationPolicy {
+
+    private enum Kind {
+        NONE,
+        ALL,
+        SAMPLE,
+        ABOVE,
+        BELOW
+    }
+
+    private final Kind kind;
+    private final double value;
+
+    private VerificationPolicy(Kind kind, double value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    public static VerificationPolicy parse(String policy) {
+        if (policy == null || policy.trim().isEmpty()) {
+            return new VerificationPolicy(Kind.NONE, 0);
+        }
+        final String[] kindAndValue = policy.trim().split(":", 2);
+        final Kind kind = Kind.valueOf(kindAndValue[0].trim().toUpperCase());
+        if (kind == Kind.NONE || kind == Kind.ALL) {
+            return new VerificationPolicy(kind, 0);
+        }
+        if (kindAndValue.length != 2) {
+            throw new IllegalArgumentException("Verification policy " + policy + " needs a value, e.g. sample:5 or above:1 GB");
+        }
+        final String value = kindAndValue[1].trim();
+        if (kind == Kind.SAMPLE) {
+            return new VerificationPolicy(kind, Double.parseDouble(value.replace("%", "")));
+        }
+        return new VerificationPolicy(kind, StatsUtil.parseReadableSize(value));
+    }
+
+    public boolean isEnabled() {
+        return kind != Kind.NONE;
+    }
+
+    public boolean shouldVerify(long length) {
+        switch (kind) {
+            case ALL:
+                return true;
+            case SAMPLE:
+                return ThreadLocalRandom.current().nextDouble(100) < value;
+            case ABOVE:
+                return length > value;
+            case BELOW:
+                return length < value;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return kind == Kind.NONE || kind == Kind.ALL ? kind.name().toLowerCase() : kind.name().toLowerCase() + ":" + value;
+    }
+}
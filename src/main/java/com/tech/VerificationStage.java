@@ -0,0 +1,163 @@
+package com.tech;
+
+import com.tech.utils.BandwidthThrottler;
+import com.tech.utils.CheckSumUtil;
+import com.tech.utils.EventTrace;
+import com.tech.utils.FileUtil;
+import com.tech.utils.StatsUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+
+/**
+ * Compares source and target checksums of copied files in the background, on its own pool and with its own read budget,
+ * so the copy threads never reread a file.
+ * <p>
+ * Mismatches are written to the failed verification log and handed back for a recopy, which is verified again.
+ */
+public class VerificationStage implements CopyListener {
+
+    static Logger logger = LogManager.getLogger(VerificationStage.class);
+
+    private final ExecutorService executor;
+    private final VerificationPolicy policy;
+    private final String checksumScheme;
+    private final int blockSize;
+    private final BandwidthThrottler throttler;
+    private final int maxRecopies;
+    private final boolean failFast;
+    private final BiFunction<File, File, CompletableFuture<Void>> recopier;
+    private final Map<String, Integer> recopiesByTarget = new ConcurrentHashMap<>();
+
+    private int pending;
+
+    /**
+     * @param throttler   read budget of the verification, shared by source and target reads
+     * @param maxRecopies recopies of one file before it is left as failed
+     * @param recopier    copies source to target again and completes when done
+     */
+    public VerificationStage(ExecutorService executor, VerificationPolicy policy, String checksumScheme, int blockSize,
+                             BandwidthThrottler throttler, int maxRecopies, boolean failFast,
+                             BiFunction<File, File, CompletableFuture<Void>> recopier) {
+        this.executor = executor;
+        this.policy = policy;
+        this.checksumScheme = checksumScheme;
+        this.blockSize = blockSize;
+        this.throttler = throttler;
+        this.maxRecopies = maxRecopies;
+        this.failFast = failFast;
+        this.recopier = recopier;
+    }
+
+    @Override
+    public void onTransferred(final CopyFileTask task, final TransferMode appliedMode, final long length) {
+        // A hard link is the source itself and a moved source is gone, also when the move fell back to a copy and a delete.
+        if (appliedMode != TransferMode.COPY || task.getTransferMode() == TransferMode.MOVE) {
+            return;
+        }
+        final File source = task.getFromPath();
+        final File target = task.getToPath();
+        // Recopies are always verified again.
+        if (!recopiesByTarget.containsKey(target.getPath()) && !policy.shouldVerify(length)) {
+            return;
+        }
+        incrementPending();
+        try {
+            executor.execute(() -> {
+                try {
+                    verify(source, target);
+                } finally {
+                    decrementPending();
+                }
+            });
+        } catch (RuntimeException e) {
+            decrementPending();
+            logger.error("Failed to queue verification of {}", target.getPath());
+            logger.error(e);
+        }
+    }
+
+    private void verify(final File source, final File target) {
+        String mismatch;
+        try {
+            if (source.length() != target.length()) {
+                mismatch = "length " + source.length() + " != " + target.length();
+            } else {
+                final String sourceChecksum = CheckSumUtil.getInstance().getFileChecksum(source, checksumScheme, blockSize, throttler);
+                final String targetChecksum = CheckSumUtil.getInstance().getFileChecksum(target, checksumScheme, blockSize, throttler);
+                mismatch = sourceChecksum.equals(targetChecksum) ? null : "checksum " + sourceChecksum + " != " + targetChecksum;
+            }
+        } catch (Exception e) {
+            logger.error(e);
+            mismatch = "verification error " + e.getMessage();
+        }
+
+        if (mismatch == null) {
+            if (EventTrace.getInstance().sampleFileLog()) {
+                logger.info("Verified {} against {}", target.getPath(), source.getPath());
+            }
+            StatsUtil.getInstance().updateVerificationStats(true);
+            recopiesByTarget.remove(target.getPath());
+            return;
+        }
+
+        logger.error("Verification failed for {} -> {}: {}", source.getPath(), target.getPath(), mismatch);
+        StatsUtil.getInstance().updateVerificationStats(false);
+        FileUtil.appendEntryToLogFile(DataOrganizerApplication.getVerifyFailedLogPath(), source.getPath() + "->" + target.getPath() + "\n", failFast);
+        scheduleRecopy(source, target);
+    }
+
+    private void scheduleRecopy(final File source, final File target) {
+        if (!source.exists()) {
+            // Nothing to recopy from, the target is the only copy left and stays as it is.
+            logger.error("Source {} no longer exists, not recopying {}", source.getPath(), target.getPath());
+            recopiesByTarget.remove(target.getPath());
+            return;
+        }
+        final int attempt = recopiesByTarget.merge(target.getPath(), 1, Integer::sum);
+        if (attempt > maxRecopies) {
+            logger.error("Giving up on {} after {} recopies", target.getPath(), maxRecopies);
+            recopiesByTarget.remove(target.getPath());
+            // Left as failed, so the next run copies it again instead of trusting its copied entry.
+            FileUtil.appendEntryToLogFile(DataOrganizerApplication.getFailedFileLogPath(), source.getPath() + "->" + target.getPath() + "\n", failFast);
+            StatsUtil.getInstance().updateRevokedCopyStats(source.length());
+            return;
+        }
+        logger.info("Queueing recopy {} of {} to {}", attempt, source.getPath(), target.getPath());
+        incrementPending();
+        recopier.apply(source, target).whenComplete((result, e) -> decrementPending());
+    }
+
+    private synchronized void incrementPending() {
+        pending++;
+    }
+
+    private synchronized void decrementPending() {
+        pending--;
+        if (pending == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until every queued verification and recopy has finished.
+     */
+    public synchronized void awaitCompletion() throws InterruptedException {
+        if (pending > 0) {
+            logger.info("Waiting for {} pending verifications", pending);
+        }
+        while (pending > 0) {
+            wait();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
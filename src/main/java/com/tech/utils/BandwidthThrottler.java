@@ -0,0 +1,172 @@
+package com.tech.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Global token bucket limiting the bytes per second of all copy workers together.
+ * <p>
+ * Workers call {@link #acquire(long)} once per block. Instead of counting tokens, every call reserves the time slot its block
+ * needs at the current rate and parks until that slot, which keeps the flow smooth and costs one short lock per block.
+ * An optional time-of-day schedule picks the rate, e.g. {@code 09:00-18:00=200 MB->*=0}, where 0 means unlimited.
+ */
+public class BandwidthThrottler {
+
+    static Logger logger = LogManager.getLogger(BandwidthThrottler.class);
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    // Idle capacity that may be spent as a burst after a pause.
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long SCHEDULE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile long defaultRate;
+    private volatile List<ScheduleEntry> schedule = new ArrayList<>();
+    private volatile long currentRate;
+    private volatile long nextScheduleCheckNanos;
+    private long nextFreeNanos;
+
+    private static class InstanceHolder {
+        private static final BandwidthThrottler INSTANCE = new BandwidthThrottler();
+    }
+
+    public static BandwidthThrottler getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @param maxRate       bytes per second outside of the schedule, 0 or less for unlimited
+     * @param rateSchedule  optional schedule in the form HH:mm-HH:mm=rate->*=rate
+     */
+    public synchronized void configure(long maxRate, String rateSchedule) {
+        this.defaultRate = Math.max(0, maxRate);
+        this.schedule = parseSchedule(rateSchedule);
+        this.nextScheduleCheckNanos = 0;
+        refreshRate(System.nanoTime());
+        logger.info("Bandwidth limit configured, default {}, schedule {}", describeRate(defaultRate), schedule);
+    }
+
+    public boolean isEnabled() {
+        return defaultRate > 0 || !schedule.isEmpty();
+    }
+
+    /**
+     * @return rate in effect right now in bytes per second, 0 when unlimited
+     */
+    public long getCurrentRate() {
+        refreshRate(System.nanoTime());
+        return currentRate;
+    }
+
+    public void acquire(long bytes) {
+        if (bytes <= 0 || !isEnabled()) {
+            return;
+        }
+        final long now = System.nanoTime();
+        refreshRate(now);
+        final long rate = currentRate;
+        if (rate <= 0) {
+            return;
+        }
+        final long waitNanos;
+        synchronized (this) {
+            final long earliest = now - BURST_NANOS;
+            if (nextFreeNanos < earliest) {
+                nextFreeNanos = earliest;
+            }
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += (long) ((double) bytes * NANOS_PER_SECOND / rate);
+        }
+        if (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+    private void refreshRate(final long now) {
+        if (now - nextScheduleCheckNanos < 0) {
+            return;
+        }
+        nextScheduleCheckNanos = now + SCHEDULE_CHECK_NANOS;
+        final LocalTime time = LocalTime.now();
+        long rate = defaultRate;
+        for (final ScheduleEntry entry : schedule) {
+            if (entry.matches(time)) {
+                rate = entry.rate;
+                break;
+            }
+        }
+        if (rate != currentRate) {
+            logger.info("Bandwidth limit changed from {} to {}", describeRate(currentRate), describeRate(rate));
+            currentRate = rate;
+        }
+    }
+
+    public static String describeRate(long rate) {
+        return rate <= 0 ? "unlimited" : StatsUtil.readableFileSize(rate) + "/s";
+    }
+
+    /**
+     * Parses a rate like 200 MB, 200MB/s or 209715200 into bytes per second.
+     */
+    public static long parseRate(String rate) {
+        return rate == null ? 0 : StatsUtil.parseReadableSize(rate.trim().replaceAll("(?i)/s$", ""));
+    }
+
+    private static List<ScheduleEntry> parseSchedule(String rateSchedule) {
+        final List<ScheduleEntry> entries = new ArrayList<>();
+        if (rateSchedule == null || rateSchedule.trim().isEmpty()) {
+            return entries;
+        }
+        for (String entry : rateSchedule.split("->")) {
+            final String[] windowAndRate = entry.split("=");
+            if (windowAndRate.length != 2) {
+                throw new IllegalArgumentException("Invalid bandwidth schedule entry " + entry);
+            }
+            final String window = windowAndRate[0].trim();
+            final long rate = parseRate(windowAndRate[1]);
+            if (window.equals("*")) {
+                entries.add(new ScheduleEntry(null, null, rate));
+            } else {
+                final String[] fromTo = window.split("-");
+                if (fromTo.length != 2) {
+                    throw new IllegalArgumentException("Invalid bandwidth schedule window " + window);
+                }
+                entries.add(new ScheduleEntry(LocalTime.parse(fromTo[0].trim()), LocalTime.parse(fromTo[1].trim()), rate));
+            }
+        }
+        return entries;
+    }
+
+    private static class ScheduleEntry {
+        private final LocalTime from;
+        private final LocalTime to;
+        private final long rate;
+
+        ScheduleEntry(LocalTime from, LocalTime to, long rate) {
+            this.from = from;
+            this.to = to;
+            this.rate = rate;
+        }
+
+        boolean matches(LocalTime time) {
+            if (from == null) {
+                return true;
+            }
+            if (from.isBefore(to)) {
+                return !time.isBefore(from) && time.isBefore(to);
+            }
+            // Window over midnight, e.g. 22:00-06:00.
+            return !time.isBefore(from) || time.isBefore(to);
+        }
+
+        @Override
+        public String toString() {
+            return (from == null ? "*" : from + "-" + to) + "=" + describeRate(rate);
+        }
+    }
+}
@@ -6,8 +6,16 @@ import org.apache.logging.log4j.Logger;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -16,6 +24,25 @@ public class CheckSumUtil {
 
     public static final int DEFAULT_BLOCK_SIZE = 4096;
     public static final String DEFAULT_SCHEME = "SHA-256";
+    /**
+     * Prefix of the chunked tree hash schemes, e.g. TREE-SHA-256. Fixed size chunks are hashed in parallel and the chunk
+     * digests are combined into one root digest, so the value differs from the plain scheme and depends on the chunk size.
+     */
+    public static final String TREE_SCHEME_PREFIX = "TREE-";
+    public static final int DEFAULT_TREE_CHUNK_SIZE = 32 * 1024 * 1024;
+    public static final int MIN_TREE_CHUNK_SIZE = DEFAULT_BLOCK_SIZE;
+    public static final int MAX_TREE_CHUNK_SIZE = 1024 * 1024 * 1024;
+    // Leaf digests are held in one array.
+    private static final long MAX_TREE_CHUNKS = Integer.MAX_VALUE - 8;
+    private static final int TREE_READ_BUFFER_SIZE = 1024 * 1024;
+    private static final byte TREE_LEAF_TAG = 0;
+    private static final byte TREE_ROOT_TAG = 1;
+
+    // Digests are reused per thread instead of created per file.
+    private final ThreadLocal<Map<String, MessageDigest>> threadDigests = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<byte[]> threadReadBuffers = ThreadLocal.withInitial(() -> new byte[TREE_READ_BUFFER_SIZE]);
+    private volatile int treeChunkSize = DEFAULT_TREE_CHUNK_SIZE;
+    private volatile ForkJoinPool treeHashPool = ForkJoinPool.commonPool();
 
     private static class InstanceHolder {
         private static final CheckSumUtil INSTANCE = new CheckSumUtil();
@@ -29,6 +56,40 @@ public class CheckSumUtil {
         return MessageDigest.getInstance(DEFAULT_SCHEME);
     }
 
+    /**
+     * @param chunkSize bytes per tree hash chunk, 0 or less for the default
+     * @param threads   parallelism of the tree hash pool, 0 or less for the common pool
+     * @throws IllegalArgumentException if the chunk size is out of the supported range
+     */
+    public synchronized void configureTreeHash(long chunkSize, int threads) {
+        if (chunkSize > 0 && (chunkSize < MIN_TREE_CHUNK_SIZE || chunkSize > MAX_TREE_CHUNK_SIZE)) {
+            throw new IllegalArgumentException("Tree hash chunk size has to be between " + StatsUtil.readableFileSize(MIN_TREE_CHUNK_SIZE)
+                + " and " + StatsUtil.readableFileSize(MAX_TREE_CHUNK_SIZE) + ": " + chunkSize);
+        }
+        this.treeChunkSize = chunkSize > 0 ? (int) chunkSize : DEFAULT_TREE_CHUNK_SIZE;
+        final ForkJoinPool oldPool = this.treeHashPool;
+        this.treeHashPool = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+        if (oldPool != ForkJoinPool.commonPool()) {
+            oldPool.shutdown();
+        }
+        logger.info("Tree hash configured with chunk size {} and parallelism {}", treeChunkSize, treeHashPool.getParallelism());
+    }
+
+    /**
+     * @return reset digest owned by the calling thread, must not be shared with other threads
+     */
+    public MessageDigest getThreadDigest(String algorithm) throws NoSuchAlgorithmException {
+        final Map<String, MessageDigest> digests = threadDigests.get();
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
     public String getFileChecksum(File file) throws IOException, NoSuchAlgorithmException {
         return getFileChecksum(getDefaultMessageDigest(), file);
     }
@@ -38,7 +99,17 @@ public class CheckSumUtil {
     }
 
     public String getFileChecksum(MessageDigest digest, File file, int blockSize) throws IOException {
-        logger.info("Calculating checksum for the file {}, block size {} and digest algo {}", file.getPath(), blockSize, digest.getAlgorithm());
+        return getFileChecksum(digest, file, blockSize, null);
+    }
+
+    /**
+     * @param throttler limits the read rate, null for unlimited
+     */
+    public String getFileChecksum(MessageDigest digest, File file, int blockSize, BandwidthThrottler throttler) throws IOException {
+        final boolean logFile = EventTrace.getInstance().sampleFileLog();
+        if (logFile) {
+            logger.info("Calculating checksum for the file {}, block size {} and digest algo {}", file.getPath(), blockSize, digest.getAlgorithm());
+        }
 
         if (blockSize <= 0) {
             blockSize = DEFAULT_BLOCK_SIZE;
@@ -48,17 +119,24 @@ public class CheckSumUtil {
             byte[] byteArray = new byte[blockSize];
             int bytesCount;
             while ((bytesCount = fis.read(byteArray)) != -1) {
+                acquire(throttler, bytesCount);
                 digest.update(byteArray, 0, bytesCount);
             }
         }
 
-        byte[] bytes = digest.digest();
+        final String checksum = toHex(digest.digest());
+        if (logFile) {
+            logger.info("Successfully Calculated checksum for the file {}", file.getPath());
+        }
+
+        return checksum;
+    }
+
+    private static String toHex(final byte[] bytes) {
         StringBuilder sb = new StringBuilder();
         for (final byte aByte : bytes) {
             sb.append(Integer.toString((aByte & 0xff) + 0x100, 16).substring(1));
         }
-        logger.info("Successfully Calculated checksum for the file {}", file.getPath());
-
         return sb.toString();
     }
 
@@ -67,6 +145,10 @@ public class CheckSumUtil {
             return false;
         }
         scheme = scheme.toUpperCase();
+        if (scheme.startsWith(TREE_SCHEME_PREFIX)) {
+            scheme = scheme.substring(TREE_SCHEME_PREFIX.length());
+            return scheme.equals("SHA-1") || scheme.equals("SHA-256") || scheme.equals("MD5");
+        }
         return scheme.equals("SHA-1") || scheme.equals("SHA-256") || scheme.equals("MD5") || scheme.equals("CRC32");
     }
 
@@ -75,15 +157,154 @@ public class CheckSumUtil {
     }
 
     public String getFileChecksum(File file, String checkSumScheme, int blockSize) throws IOException, NoSuchAlgorithmException {
-        if (isValidCheckSumScheme(checkSumScheme)) {
+        return getFileChecksum(file, checkSumScheme, blockSize, null);
+    }
+
+    /**
+     * @param throttler limits the read rate, null for unlimited
+     */
+    public String getFileChecksum(File file, String checkSumScheme, int blockSize, BandwidthThrottler throttler)
+        throws IOException, NoSuchAlgorithmException {
+        if (!isValidCheckSumScheme(checkSumScheme)) {
             checkSumScheme = DEFAULT_SCHEME;
         }
         checkSumScheme = checkSumScheme.toUpperCase();
 
+        final long startNanos = System.nanoTime();
+        final String checksum;
         if (checkSumScheme.equals("CRC32")) {
-            return String.valueOf(calculateChecksumUsingCRC32(file));
+            checksum = String.valueOf(calculateChecksumUsingCRC32(file, blockSize, throttler));
+        } else if (checkSumScheme.startsWith(TREE_SCHEME_PREFIX)) {
+            checksum = getTreeChecksum(file, checkSumScheme.substring(TREE_SCHEME_PREFIX.length()), throttler);
         } else {
-            return getFileChecksum(MessageDigest.getInstance(checkSumScheme), file, blockSize);
+            checksum = getFileChecksum(getThreadDigest(checkSumScheme), file, blockSize, throttler);
+        }
+        if (EventTrace.getInstance().isEnabled()) {
+            EventTrace.getInstance().record(EventTrace.EventType.CHECKSUM, 0, EventTrace.NO_ID, EventTrace.NO_ID, file.length(),
+                System.nanoTime() - startNanos);
+        }
+        return checksum;
+    }
+
+    private static void acquire(final BandwidthThrottler throttler, final long bytes) {
+        if (throttler != null) {
+            throttler.acquire(bytes);
+        }
+    }
+
+    /**
+     * Hashes fixed size chunks of the file in parallel on the tree hash pool using positional reads, then hashes the
+     * chunk size and the chunk digests in order into the root digest.
+     */
+    public String getTreeChecksum(File file, String algorithm) throws IOException, NoSuchAlgorithmException {
+        return getTreeChecksum(file, algorithm, null);
+    }
+
+    /**
+     * @param throttler limits the read rate of all chunk readers together, null for unlimited
+     */
+    public String getTreeChecksum(File file, String algorithm, BandwidthThrottler throttler) throws IOException, NoSuchAlgorithmException {
+        final boolean logFile = EventTrace.getInstance().sampleFileLog();
+        if (logFile) {
+            logger.info("Calculating tree checksum for the file {}, chunk size {} and digest algo {}", file.getPath(), treeChunkSize, algorithm);
+        }
+        final int chunkSize = treeChunkSize;
+        // Fails early on an unknown algorithm.
+        getThreadDigest(algorithm);
+        final MessageDigest root;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long chunkCount = Math.max(1, (size + chunkSize - 1) / chunkSize);
+            if (chunkCount > MAX_TREE_CHUNKS) {
+                throw new IOException("File " + file.getPath() + " has more than " + MAX_TREE_CHUNKS + " chunks of " + chunkSize
+                    + " bytes, use a larger tree hash chunk size");
+            }
+            final int chunks = (int) chunkCount;
+            final byte[][] leaves = new byte[chunks][];
+            try {
+                treeHashPool.invoke(new LeafHashTask(channel, algorithm, chunkSize, size, leaves, 0, chunks, throttler));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            // Taken after the leaves, a caller running inside the pool may have hashed leaves with its own digest.
+            root = getThreadDigest(algorithm);
+            root.update(TREE_ROOT_TAG);
+            root.update(ByteBuffer.allocate(Long.BYTES).putLong(chunkSize).array());
+            for (final byte[] leaf : leaves) {
+                root.update(leaf);
+            }
+        }
+        final String checksum = toHex(root.digest());
+        if (logFile) {
+            logger.info("Successfully calculated tree checksum for the file {}", file.getPath());
+        }
+        return checksum;
+    }
+
+    private byte[] hashChunk(final FileChannel channel, final String algorithm, final long start, final long end,
+                             final BandwidthThrottler throttler) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = getThreadDigest(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+        final byte[] buffer = threadReadBuffers.get();
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        digest.update(TREE_LEAF_TAG);
+        long position = start;
+        while (position < end) {
+            byteBuffer.clear();
+            byteBuffer.limit((int) Math.min(buffer.length, end - position));
+            final int read = channel.read(byteBuffer, position);
+            if (read < 0) {
+                throw new IOException("File shrunk while hashing at position " + position);
+            }
+            acquire(throttler, read);
+            digest.update(buffer, 0, read);
+            position += read;
+        }
+        return digest.digest();
+    }
+
+    private class LeafHashTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final String algorithm;
+        private final int chunkSize;
+        private final long size;
+        private final byte[][] leaves;
+        private final int from;
+        private final int to;
+        private final BandwidthThrottler throttler;
+
+        LeafHashTask(FileChannel channel, String algorithm, int chunkSize, long size, byte[][] leaves, int from, int to,
+                     BandwidthThrottler throttler) {
+            this.channel = channel;
+            this.algorithm = algorithm;
+            this.chunkSize = chunkSize;
+            this.size = size;
+            this.leaves = leaves;
+            this.from = from;
+            this.to = to;
+            this.throttler = throttler;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new LeafHashTask(channel, algorithm, chunkSize, size, leaves, from, middle, throttler),
+                    new LeafHashTask(channel, algorithm, chunkSize, size, leaves, middle, to, throttler));
+                return;
+            }
+            final long start = (long) from * chunkSize;
+            try {
+                leaves[from] = hashChunk(channel, algorithm, start, Math.min(size, start + chunkSize), throttler);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 
@@ -92,17 +313,27 @@ public class CheckSumUtil {
     }
 
     public long calculateChecksumUsingCRC32(File file, int blockSize) throws IOException {
-        logger.info("Calculating crc32 checksum for the file {}", file.getPath());
+        return calculateChecksumUsingCRC32(file, blockSize, null);
+    }
+
+    public long calculateChecksumUsingCRC32(File file, int blockSize, BandwidthThrottler throttler) throws IOException {
+        final boolean logFile = EventTrace.getInstance().sampleFileLog();
+        if (logFile) {
+            logger.info("Calculating crc32 checksum for the file {}", file.getPath());
+        }
         try (FileInputStream stream = new FileInputStream(file)) {
             Checksum sum = new CRC32();
             byte[] buf = new byte[blockSize];
             int count;
             while ((count = stream.read(buf)) != -1) {
                 if (count > 0) {
+                    acquire(throttler, count);
                     sum.update(buf, 0, count);
                 }
             }
-            logger.info("Successfully calculated crc32 checksum for the file {}", file.getPath());
+            if (logFile) {
+                logger.info("Successfully calculated crc32 checksum for the file {}", file.getPath());
+            }
             return sum.getValue();
         }
     }
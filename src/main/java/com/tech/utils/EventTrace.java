@@ -0,0 +1,324 @@
+package com.tech.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binary trace of the per-file events of the run, as an alternative to logging a few lines per file.
+ * <p>
+ * Events are fixed size records written into a preallocated ring buffer, which costs a compare-and-set and seven array
+ * stores on the calling thread. A background thread drains the ring into the trace file every few milliseconds. When the
+ * ring is full the event is dropped and counted instead of blocking the copy, the count is written at the end of the trace.
+ * <p>
+ * Paths are passed as the ids of their planning {@link PathTable}, or as the files a copy already holds, and only resolved
+ * by the drainer. It gives each path a trace id and writes the path the first time it appears, and the name of each thread,
+ * so {@link EventTraceConverter} can turn the trace into CSV without the process. Trace ids are kept per planning table
+ * while the table is in use, the paths themselves are not kept.
+ * <p>
+ * The file starts with the magic, the version and the wall clock time of the trace start. Each record is a tag byte and its
+ * body: an event is type, flags, thread id, nanos since the start, two ids, bytes and duration in nanos.
+ * <br>Also decides which files get their INFO lines logged, every file, every n-th file or none.
+ */
+public class EventTrace {
+
+    static Logger logger = LogManager.getLogger(EventTrace.class);
+
+    public static final int NO_ID = -1;
+    static final int MAGIC = 0x44545243;
+    static final int VERSION = 1;
+    static final byte EVENT_RECORD = 0;
+    static final byte PATH_RECORD = 1;
+    static final byte THREAD_RECORD = 2;
+    static final byte DROPPED_RECORD = 3;
+    private static final int LONGS_PER_EVENT = 5;
+    private static final long DRAIN_INTERVAL_MILLIS = 20;
+
+    public enum EventType {
+        // ids: source and target path, flags: transfer mode
+        FILE_PLANNED(true),
+        FILE_COPIED(true),
+        FILE_FAILED(true),
+        // bytes: file length
+        CHECKSUM(false),
+        // first id: planned files of the batch
+        BATCH_DONE(false),
+        // first id: row index
+        ROW_DONE(false);
+
+        final boolean pathIds;
+
+        EventType(boolean pathIds) {
+            this.pathIds = pathIds;
+        }
+    }
+
+    private volatile boolean enabled;
+    private long[] events;
+    // Path table or source and target file of each slot, two per event.
+    private Object[] paths;
+    private AtomicLongArray published;
+    private int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    // Next sequence to drain, written by the drainer only.
+    private volatile long drained;
+    private final LongAdder dropped = new LongAdder();
+    private long startNanos;
+    // Trace id + 1 by table id, per planning table, dropped with the table. Written by the drainer only.
+    private final Map<PathTable, int[]> traceIdsByTable = new WeakHashMap<>();
+    private int nextTraceId;
+    private final Queue<Thread> newThreads = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Boolean> threadRegistered = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private DataOutputStream outputStream;
+    private ScheduledExecutorService drainer;
+    private File traceFile;
+
+    private volatile int fileLogSample = 1;
+    private final AtomicLong fileLogCounter = new AtomicLong();
+
+    private static class InstanceHolder {
+        private static final EventTrace INSTANCE = new EventTrace();
+    }
+
+    public static EventTrace getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Starts tracing into the given file.
+     *
+     * @param capacity events the ring holds, rounded up to a power of two
+     */
+    public synchronized void start(final File traceFile, final int capacity) throws IOException {
+        if (enabled) {
+            return;
+        }
+        final int ringSize = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.events = new long[ringSize * LONGS_PER_EVENT];
+        this.paths = new Object[ringSize * 2];
+        this.published = new AtomicLongArray(ringSize);
+        this.mask = ringSize - 1;
+        this.traceFile = traceFile;
+        Files.createDirectories(traceFile.getAbsoluteFile().getParentFile().toPath());
+        outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(traceFile.toPath()), 64 * 1024));
+        outputStream.writeInt(MAGIC);
+        outputStream.writeInt(VERSION);
+        outputStream.writeLong(System.currentTimeMillis());
+        startNanos = System.nanoTime();
+        drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "event-trace");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::drain, DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        enabled = true;
+        logger.info("Tracing events into {} with a ring of {} events", traceFile.getPath(), ringSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param sample 1 logs every file, n every n-th file and 0 or less none
+     */
+    public void configureFileLog(final int sample) {
+        this.fileLogSample = sample;
+    }
+
+    /**
+     * @return true if the INFO lines of the next file are logged
+     */
+    public boolean sampleFileLog() {
+        final int sample = fileLogSample;
+        return sample == 1 || (sample > 1 && fileLogCounter.getAndIncrement() % sample == 0);
+    }
+
+    public void record(final EventType type, final int flags, final int firstId, final int secondId, final long bytes, final long durationNanos) {
+        publish(type, flags, null, null, firstId, secondId, bytes, durationNanos);
+    }
+
+    /**
+     * Records a file event by the ids of its paths in the planning table, the paths are resolved by the drainer.
+     */
+    public void record(final EventType type, final int flags, final PathTable table, final int sourceId, final int targetId,
+                       final long bytes, final long durationNanos) {
+        publish(type, flags, table, null, sourceId, targetId, bytes, durationNanos);
+    }
+
+    /**
+     * Records a file event of a copy not planned in a path table.
+     */
+    public void record(final EventType type, final int flags, final File source, final File target, final long bytes,
+                       final long durationNanos) {
+        publish(type, flags, source, target, NO_ID, NO_ID, bytes, durationNanos);
+    }
+
+    private void publish(final EventType type, final int flags, final Object firstPath, final Object secondPath,
+                         final int firstId, final int secondId, final long bytes, final long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        final Thread thread = Thread.currentThread();
+        if (!threadRegistered.get()) {
+            threadRegistered.set(Boolean.TRUE);
+            newThreads.add(thread);
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - drained > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        final int slot = (int) (sequence & mask);
+        final int offset = slot * LONGS_PER_EVENT;
+        events[offset] = (long) type.ordinal() << 48 | (long) (flags & 0xFFFF) << 32 | (thread.getId() & 0xFFFFFFFFL);
+        events[offset + 1] = System.nanoTime() - startNanos;
+        events[offset + 2] = (long) firstId << 32 | (secondId & 0xFFFFFFFFL);
+        events[offset + 3] = bytes;
+        events[offset + 4] = durationNanos;
+        paths[slot * 2] = firstPath;
+        paths[slot * 2 + 1] = secondPath;
+        published.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Writes the published events in order, stops at the first slot still being written.
+     */
+    private synchronized void drain() {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            Thread thread;
+            while ((thread = newThreads.poll()) != null) {
+                outputStream.writeByte(THREAD_RECORD);
+                outputStream.writeInt((int) thread.getId());
+                outputStream.writeUTF(thread.getName());
+            }
+            long sequence = drained;
+            while (published.get((int) (sequence & mask)) == sequence + 1) {
+                final int slot = (int) (sequence & mask);
+                final int offset = slot * LONGS_PER_EVENT;
+                final long header = events[offset];
+                long ids = events[offset + 2];
+                final Object firstPath = paths[slot * 2];
+                if (firstPath instanceof PathTable) {
+                    ids = (long) traceId((PathTable) firstPath, (int) (ids >> 32)) << 32
+                        | (traceId((PathTable) firstPath, (int) ids) & 0xFFFFFFFFL);
+                } else if (firstPath != null) {
+                    ids = (long) traceId((File) firstPath) << 32 | (traceId((File) paths[slot * 2 + 1]) & 0xFFFFFFFFL);
+                }
+                // Lets go of the table once its rows are drained.
+                paths[slot * 2] = null;
+                paths[slot * 2 + 1] = null;
+                outputStream.writeByte(EVENT_RECORD);
+                outputStream.writeLong(header);
+                outputStream.writeLong(events[offset + 1]);
+                outputStream.writeLong(ids);
+                outputStream.writeLong(events[offset + 3]);
+                outputStream.writeLong(events[offset + 4]);
+                sequence++;
+                // Frees the slot for the producers.
+                drained = sequence;
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            logger.error("Failed to write the event trace {}, stopping it", traceFile.getPath());
+            logger.error(e);
+            enabled = false;
+            closeQuietly();
+        }
+    }
+
+    /**
+     * @return trace id of the path, written to the trace the first time the table id is seen
+     */
+    private int traceId(final PathTable table, final int id) throws IOException {
+        if (id < 0) {
+            return NO_ID;
+        }
+        int[] traceIds = traceIdsByTable.get(table);
+        if (traceIds == null || traceIds.length <= id) {
+            traceIds = Arrays.copyOf(traceIds == null ? new int[0] : traceIds, Math.max(1024, Integer.highestOneBit(id) << 1));
+            traceIdsByTable.put(table, traceIds);
+        }
+        if (traceIds[id] == 0) {
+            traceIds[id] = writePath(table.toPath(id)) + 1;
+        }
+        return traceIds[id] - 1;
+    }
+
+    /**
+     * @return trace id of the file, files outside a table are rare and get a new one each time
+     */
+    private int traceId(final File file) throws IOException {
+        return file == null ? NO_ID : writePath(file.getPath());
+    }
+
+    private int writePath(final String path) throws IOException {
+        final int id = nextTraceId++;
+        outputStream.writeByte(PATH_RECORD);
+        outputStream.writeInt(id);
+        outputStream.writeUTF(path);
+        return id;
+    }
+
+    /**
+     * Drains the remaining events and closes the trace file.
+     */
+    public synchronized void shutdown() {
+        if (drainer == null) {
+            return;
+        }
+        enabled = false;
+        drainer.shutdown();
+        try {
+            drainer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainer = null;
+        drain();
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            outputStream.writeByte(DROPPED_RECORD);
+            outputStream.writeLong(dropped.sum());
+            outputStream.close();
+            logger.info("Closed the event trace {}, {} events dropped", traceFile.getPath(), dropped.sum());
+        } catch (IOException e) {
+            logger.error("Failed to close the event trace {}", traceFile.getPath());
+            logger.error(e);
+        }
+        outputStream = null;
+    }
+
+    private void closeQuietly() {
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        outputStream = null;
+    }
+}
@@ -0,0 +1,110 @@
+package com.tech.utils;
+
+import com.tech.TransferMode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts an {@link EventTrace} file to CSV, one line per event.
+ * <p>
+ * Usage: java -cp ArrangeData.jar com.tech.utils.EventTraceConverter trace-file [csv-file]
+ * <br>Writes to standard output when no CSV file is given. Paths are resolved for the file events, the flags of copied
+ * files are the applied transfer mode.
+ */
+public class EventTraceConverter {
+
+    private static final String HEADER = "time,elapsed_us,thread,event,mode,first_id,source,second_id,target,bytes,duration_us\n";
+
+    private EventTraceConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: EventTraceConverter trace-file [csv-file]");
+            return;
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]), 64 * 1024));
+             Writer writer = new BufferedWriter(args.length > 1
+                 ? Files.newBufferedWriter(new File(args[1]).toPath(), StandardCharsets.UTF_8)
+                 : new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            final long events = convert(inputStream, writer);
+            writer.flush();
+            System.err.println("Converted " + events + " events");
+        }
+    }
+
+    private static long convert(final DataInputStream inputStream, final Writer writer) throws IOException {
+        if (inputStream.readInt() != EventTrace.MAGIC || inputStream.readInt() != EventTrace.VERSION) {
+            throw new IOException("Not an event trace of this version");
+        }
+        final long startMillis = inputStream.readLong();
+        final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        final Map<Integer, String> paths = new HashMap<>();
+        final Map<Integer, String> threads = new HashMap<>();
+        final EventTrace.EventType[] types = EventTrace.EventType.values();
+        final TransferMode[] modes = TransferMode.values();
+        long events = 0;
+        writer.write(HEADER);
+        while (true) {
+            final int tag;
+            try {
+                tag = inputStream.readByte();
+            } catch (EOFException e) {
+                // The process did not close the trace, everything drained so far is converted.
+                return events;
+            }
+            if (tag == EventTrace.PATH_RECORD) {
+                paths.put(inputStream.readInt(), inputStream.readUTF());
+            } else if (tag == EventTrace.THREAD_RECORD) {
+                threads.put(inputStream.readInt(), inputStream.readUTF());
+            } else if (tag == EventTrace.DROPPED_RECORD) {
+                final long dropped = inputStream.readLong();
+                if (dropped > 0) {
+                    System.err.println(dropped + " events were dropped while the ring was full");
+                }
+                return events;
+            } else if (tag == EventTrace.EVENT_RECORD) {
+                final long header = inputStream.readLong();
+                final long elapsedNanos = inputStream.readLong();
+                final long ids = inputStream.readLong();
+                final long bytes = inputStream.readLong();
+                final long durationNanos = inputStream.readLong();
+                final EventTrace.EventType type = types[(int) (header >>> 48)];
+                final int flags = (int) (header >>> 32) & 0xFFFF;
+                final int thread = (int) header;
+                final int firstId = (int) (ids >> 32);
+                final int secondId = (int) ids;
+                writer.write(timeFormat.format(new Date(startMillis + elapsedNanos / 1_000_000)) + "," + elapsedNanos / 1000 + ","
+                    + csv(threads.getOrDefault(thread, String.valueOf(thread))) + "," + type + ","
+                    + (type.pathIds && flags < modes.length ? modes[flags].name() : "") + ","
+                    + firstId + "," + csv(type.pathIds ? paths.getOrDefault(firstId, "") : "") + ","
+                    + secondId + "," + csv(type.pathIds ? paths.getOrDefault(secondId, "") : "") + ","
+                    + bytes + "," + durationNanos / 1000 + "\n");
+                events++;
+            } else {
+                throw new IOException("Unknown record tag " + tag);
+            }
+        }
+    }
+
+    private static String csv(final String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
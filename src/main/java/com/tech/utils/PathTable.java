@@ -0,0 +1,243 @@
+package com.tech.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Interns paths as nodes of a parent-pointer trie, so a planned path is a single int id.
+ * <p>
+ * A node keeps only the id of its parent and of its last segment, and each distinct segment string is stored once. Files of
+ * the same folders share all their parent nodes, so millions of planned paths cost a few primitive arrays instead of a
+ * {@link File} and a path string each. The path is built again only when it is used.
+ * <p>
+ * Splitting on the separator and joining again gives back the exact path string, leading, doubled and trailing separators
+ * included. Ids stay valid for the life of the table. All methods are thread safe.
+ */
+public class PathTable {
+
+    // Id of the empty path, every other node descends from it.
+    public static final int ROOT = 0;
+    private static final Pattern SEPARATOR = Pattern.compile(Pattern.quote(File.separator));
+
+    private final Map<String, Integer> segmentIds = new HashMap<>();
+    private final List<String> segments = new ArrayList<>();
+    private int[] parents = new int[1024];
+    private int[] segmentOfNode = new int[1024];
+    private int nodeCount = 1;
+    // Child node by (parent id, segment id).
+    private final LongIntMap children = new LongIntMap();
+
+    public synchronized int intern(final String path) {
+        int node = ROOT;
+        for (final String segment : SEPARATOR.split(path, -1)) {
+            node = childOf(node, segment);
+        }
+        return node;
+    }
+
+    public int intern(final File file) {
+        return intern(file.getPath());
+    }
+
+    /**
+     * @return id of the path {@code name} inside the path {@code parent}
+     */
+    public synchronized int child(final int parent, final String name) {
+        return childOf(parent, name);
+    }
+
+    public synchronized int parent(final int id) {
+        return parents[id];
+    }
+
+    public synchronized String name(final int id) {
+        return id == ROOT ? "" : segments.get(segmentOfNode[id]);
+    }
+
+    public synchronized String toPath(final int id) {
+        if (id == ROOT) {
+            return "";
+        }
+        int depth = 0;
+        for (int node = id; node != ROOT; node = parents[node]) {
+            depth++;
+        }
+        final String[] names = new String[depth];
+        for (int node = id; node != ROOT; node = parents[node]) {
+            names[--depth] = segments.get(segmentOfNode[node]);
+        }
+        return String.join(File.separator, names);
+    }
+
+    public File toFile(final int id) {
+        return new File(toPath(id));
+    }
+
+    /**
+     * @return number of interned paths, parent folders included
+     */
+    public synchronized int size() {
+        return nodeCount - 1;
+    }
+
+    private int childOf(final int parent, final String name) {
+        final int segment = segmentIds.computeIfAbsent(name, key -> {
+            segments.add(key);
+            return segments.size() - 1;
+        });
+        final long key = ((long) parent << 32) | segment;
+        final int existing = children.get(key);
+        if (existing >= 0) {
+            return existing;
+        }
+        if (nodeCount == parents.length) {
+            parents = Arrays.copyOf(parents, nodeCount * 2);
+            segmentOfNode = Arrays.copyOf(segmentOfNode, nodeCount * 2);
+        }
+        parents[nodeCount] = parent;
+        segmentOfNode[nodeCount] = segment;
+        children.put(key, nodeCount);
+        return nodeCount++;
+    }
+
+    /**
+     * Open addressing map of non negative long keys to int values, without a boxed entry per node.
+     */
+    private static class LongIntMap {
+        private static final long EMPTY = -1;
+        private long[] keys = newKeys(1024);
+        private int[] values = new int[1024];
+        private int size;
+
+        int get(final long key) {
+            for (int slot = slot(key, keys.length); ; slot = (slot + 1) & (keys.length - 1)) {
+                if (keys[slot] == EMPTY) {
+                    return -1;
+                }
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+        }
+
+        void put(final long key, final int value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            insert(keys, values, key, value);
+            size++;
+        }
+
+        private void grow() {
+            final long[] newKeys = newKeys(keys.length * 2);
+            final int[] newValues = new int[values.length * 2];
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    insert(newKeys, newValues, keys[slot], values[slot]);
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        private static void insert(final long[] keys, final int[] values, final long key, final int value) {
+            int slot = slot(key, keys.length);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private static int slot(final long key, final int capacity) {
+            final long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+        }
+
+        private static long[] newKeys(final int capacity) {
+            final long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+
+    /**
+     * Set of path ids kept in a primitive open addressing table. Thread safe.
+     */
+    public static class IdSet {
+        private static final int EMPTY = -1;
+        private int[] slots = newSlots(1024);
+        private int size;
+
+        /**
+         * @return false if the id was in the set already
+         */
+        public synchronized boolean add(final int id) {
+            if ((size + 1) * 4 > slots.length * 3) {
+                final int[] oldSlots = slots;
+                slots = newSlots(oldSlots.length * 2);
+                for (final int oldId : oldSlots) {
+                    if (oldId != EMPTY) {
+                        slots[find(oldId)] = oldId;
+                    }
+                }
+            }
+            final int slot = find(id);
+            if (slots[slot] == id) {
+                return false;
+            }
+            slots[slot] = id;
+            size++;
+            return true;
+        }
+
+        public synchronized boolean contains(final int id) {
+            return slots[find(id)] == id;
+        }
+
+        public synchronized void remove(final int id) {
+            int slot = find(id);
+            if (slots[slot] != id) {
+                return;
+            }
+            slots[slot] = EMPTY;
+            size--;
+            // Moves later ids of the probe run back, so no lookup stops early at the freed slot.
+            for (int next = (slot + 1) & (slots.length - 1); slots[next] != EMPTY; next = (next + 1) & (slots.length - 1)) {
+                final int home = home(slots[next]);
+                if (((next - home) & (slots.length - 1)) >= ((next - slot) & (slots.length - 1))) {
+                    slots[slot] = slots[next];
+                    slots[next] = EMPTY;
+                    slot = next;
+                }
+            }
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        private int find(final int id) {
+            int slot = home(id);
+            while (slots[slot] != EMPTY && slots[slot] != id) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            return slot;
+        }
+
+        private int home(final int id) {
+            return (id * 0x9E3779B9 >>> 16 ^ id * 0x9E3779B9) & (slots.length - 1);
+        }
+
+        private static int[] newSlots(final int capacity) {
+            final int[] slots = new int[capacity];
+            Arrays.fill(slots, EMPTY);
+            return slots;
+        }
+    }
+}
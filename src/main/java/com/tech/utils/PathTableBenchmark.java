@@ -0,0 +1,154 @@
+package com.tech.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the heap taken by planning many files as path objects against planning them as {@link PathTable} ids.
+ * <p>
+ * Usage: java -Xmx2g -cp ArrangeData.jar com.tech.utils.PathTableBenchmark [files]
+ * <br>Plans the given number of files (default 1000000) in a guid folder layout. The object variant holds a source and a
+ * target {@link File} per file plus the target to source map used for name collisions before, the run table variant holds
+ * one path table for all files, the id arrays of the planning queue and the id set of reserved targets.
+ * <br>The row tables variant plans the same files row by row as the planner does, with a new table per row and the target
+ * paths reserved until the row was copied. It measures what is retained once every row is done, which stays the size of
+ * one row however many files the run plans.
+ */
+public class PathTableBenchmark {
+
+    private static final int FILES_PER_FOLDER = 200;
+    private static final int FOLDERS_PER_GUID = 25;
+
+    private PathTableBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        final int files = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println("Planning " + files + " files, " + FILES_PER_FOLDER + " per folder, " + FOLDERS_PER_GUID + " folders per guid");
+
+        final long baseline = usedHeap();
+        long start = System.nanoTime();
+        final Object objects = planAsObjects(files);
+        print("objects", usedHeap() - baseline, files, System.nanoTime() - start);
+        keep(objects);
+
+        final long secondBaseline = usedHeap();
+        start = System.nanoTime();
+        final Object interned = planAsIds(files);
+        print("run table", usedHeap() - secondBaseline, files, System.nanoTime() - start);
+        keep(interned);
+
+        final long thirdBaseline = usedHeap();
+        start = System.nanoTime();
+        final Object perRow = planRowsAsIds(files);
+        print("row tables", usedHeap() - thirdBaseline, files, System.nanoTime() - start);
+        keep(perRow);
+    }
+
+    private static Object planAsObjects(final int files) {
+        final List<File[]> planned = new ArrayList<>();
+        final Map<String, String> targetToSource = new HashMap<>();
+        for (int i = 0; i < files; i++) {
+            final File source = new File(sourcePath(i));
+            final File target = new File(targetPath(i));
+            planned.add(new File[]{source, target});
+            targetToSource.put(target.getPath(), source.getPath());
+        }
+        return new Object[]{planned, targetToSource};
+    }
+
+    private static Object planAsIds(final int files) {
+        final PathTable pathTable = new PathTable();
+        final PathTable.IdSet reserved = new PathTable.IdSet();
+        final int[] sources = new int[files];
+        final int[] targets = new int[files];
+        int targetFolderId = -1;
+        for (int i = 0; i < files; i++) {
+            // The planner interns the target folder once per row and adds each file name to it.
+            if (i % FILES_PER_FOLDER == 0) {
+                targetFolderId = pathTable.intern(new File(targetPath(i)).getParent());
+            }
+            sources[i] = pathTable.intern(sourcePath(i));
+            targets[i] = pathTable.child(targetFolderId, fileName(i));
+            reserved.add(targets[i]);
+        }
+        return new Object[]{pathTable, reserved, sources, targets};
+    }
+
+    /**
+     * A row is one target folder of files, its table and reservations are dropped once the next row starts.
+     */
+    private static Object planRowsAsIds(final int files) {
+        final Set<String> reserved = ConcurrentHashMap.newKeySet();
+        final int[] sources = new int[FILES_PER_FOLDER];
+        final int[] targets = new int[FILES_PER_FOLDER];
+        PathTable pathTable = null;
+        int targetFolderId = -1;
+        int rowFiles = 0;
+        for (int i = 0; i < files; i++) {
+            if (i % FILES_PER_FOLDER == 0) {
+                releaseRow(pathTable, reserved, targets, rowFiles);
+                pathTable = new PathTable();
+                targetFolderId = pathTable.intern(new File(targetPath(i)).getParent());
+                rowFiles = 0;
+            }
+            sources[rowFiles] = pathTable.intern(sourcePath(i));
+            targets[rowFiles] = pathTable.child(targetFolderId, fileName(i));
+            reserved.add(pathTable.toPath(targets[rowFiles]));
+            rowFiles++;
+        }
+        releaseRow(pathTable, reserved, targets, rowFiles);
+        return new Object[]{pathTable, reserved, sources, targets};
+    }
+
+    private static void releaseRow(final PathTable pathTable, final Set<String> reserved, final int[] targets, final int rowFiles) {
+        for (int i = 0; i < rowFiles; i++) {
+            reserved.remove(pathTable.toPath(targets[i]));
+        }
+    }
+
+    private static String sourcePath(final int i) {
+        final int folder = i / FILES_PER_FOLDER;
+        return String.join(File.separator, "", "mnt", "deliveries", "incoming", guid(folder / FOLDERS_PER_GUID),
+            "camera-roll", "folder-" + folder % FOLDERS_PER_GUID, fileName(i));
+    }
+
+    private static String targetPath(final int i) {
+        final int folder = i / FILES_PER_FOLDER;
+        return String.join(File.separator, "", "mnt", "archive", "organized", "2010", "Series Title " + folder % 40,
+            "201" + folder % 10, "Episode " + folder + " Title of the episode", fileName(i));
+    }
+
+    private static String guid(final int guidIndex) {
+        return String.format("%08x-4b1e-9c2d-%012x", guidIndex * 2654435761L & 0xffffffffL, guidIndex);
+    }
+
+    private static String fileName(final int i) {
+        return "IMG_" + (i % FILES_PER_FOLDER + 1000) + ".jpg";
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void print(final String variant, final long bytes, final int files, final long nanos) {
+        System.out.printf("%-10s %12s  %6d bytes per file  %8.2f s%n", variant, StatsUtil.readableFileSize(bytes), bytes / files,
+            nanos / 1_000_000_000d);
+    }
+
+    // Keeps the planned structures reachable until their heap was measured.
+    private static void keep(final Object planned) {
+        if (planned.hashCode() == System.nanoTime()) {
+            System.out.println();
+        }
+    }
+}
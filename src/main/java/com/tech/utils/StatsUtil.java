@@ -2,13 +2,19 @@ package com.tech.utils;
 
 import com.tech.DataOrganizerApplication;
 import com.tech.PropFileHandler;
+import com.tech.TransferMode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class StatsUtil {
 
@@ -19,8 +25,23 @@ public class StatsUtil {
     private AtomicInteger totalFilesSkipped;
     private AtomicInteger totalFoldersSkipped;
     private AtomicInteger totalDuplicateFiles;
+    private AtomicInteger totalFilesMoved;
+    private AtomicInteger totalFilesLinked;
+    private AtomicInteger totalFilesVerified;
+    private AtomicInteger totalFilesVerifyFailed;
+    private AtomicInteger totalFilesRecovered;
+    private AtomicInteger totalFilesPacked;
+    private AtomicInteger totalFilesRecopied;
     private volatile long totalLengthCopied;
 
+    // Live transfer counters, sampled by the adaptive concurrency controller. Not persisted.
+    private final LongAdder bytesTransferred = new LongAdder();
+    private final LongAdder filesTransferred = new LongAdder();
+    private final LongAdder transferNanos = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private long lastFlushNanos = startNanos;
+    private long lastFlushBytes;
+
     private static volatile StatsUtil instance;
     private static final Object mutex = new Object();
 
@@ -49,7 +70,16 @@ public class StatsUtil {
             totalFilesSkipped = new AtomicInteger(PropFileHandler.getInteger(StatsKey.SKIPPED_FILES.name(), statsPropFile, 0));
             totalDuplicateFiles = new AtomicInteger(PropFileHandler.getInteger(StatsKey.DUPLICATE_FILES.name(), statsPropFile, 0));
             totalFoldersSkipped = new AtomicInteger(PropFileHandler.getInteger(StatsKey.SKIPPED_FOLDERS.name(), statsPropFile, 0));
-            totalLengthCopied = parseSize(PropFileHandler.getString(StatsKey.TOTAL_COPIED_LENGTH.name(), statsPropFile, "0"));
+            totalFilesMoved = new AtomicInteger(PropFileHandler.getInteger(StatsKey.MOVED_FILES.name(), statsPropFile, 0));
+            totalFilesLinked = new AtomicInteger(PropFileHandler.getInteger(StatsKey.LINKED_FILES.name(), statsPropFile, 0));
+            totalFilesVerified = new AtomicInteger(PropFileHandler.getInteger(StatsKey.VERIFIED_FILES.name(), statsPropFile, 0));
+            totalFilesVerifyFailed = new AtomicInteger(PropFileHandler.getInteger(StatsKey.VERIFY_FAILED_FILES.name(), statsPropFile, 0));
+            totalFilesRecovered = new AtomicInteger(PropFileHandler.getInteger(StatsKey.RECOVERED_FILES.name(), statsPropFile, 0));
+            totalFilesPacked = new AtomicInteger(PropFileHandler.getInteger(StatsKey.PACKED_FILES.name(), statsPropFile, 0));
+            totalFilesRecopied = new AtomicInteger(PropFileHandler.getInteger(StatsKey.RECOPIED_FILES.name(), statsPropFile, 0));
+            // Stats files of older versions only hold the rounded readable length.
+            totalLengthCopied = PropFileHandler.getLong(StatsKey.TOTAL_COPIED_BYTES.name(), statsPropFile,
+                parseSize(PropFileHandler.getString(StatsKey.TOTAL_COPIED_LENGTH.name(), statsPropFile, "0")));
         } catch (IOException e) {
             logger.error(e);
         }
@@ -66,6 +96,108 @@ public class StatsUtil {
         }
     }
 
+    /**
+     * Files moved or hard linked are counted as copied too, these counters only tell how they got there.
+     */
+    public void updateTransferModeStats(TransferMode appliedMode) {
+        if (appliedMode == TransferMode.MOVE) {
+            totalFilesMoved.incrementAndGet();
+        } else if (appliedMode == TransferMode.HARDLINK) {
+            totalFilesLinked.incrementAndGet();
+        }
+    }
+
+    /**
+     * A file counted as copied that turned out not to be, its deferred sync or its recopy after a failed verification
+     * failed, is counted as failed instead. A sync may run before the copy thread counted the file, the totals are right
+     * once both are done.
+     */
+    public synchronized void updateRevokedCopyStats(long length) {
+        totalFilesCopied.decrementAndGet();
+        totalLengthCopied -= length;
+        totalFilesFailed.incrementAndGet();
+    }
+
+    public void updateVerificationStats(boolean isVerified) {
+        if (isVerified) {
+            totalFilesVerified.incrementAndGet();
+        } else {
+            totalFilesVerifyFailed.incrementAndGet();
+        }
+    }
+
+    /**
+     * A recopy after a failed verification replaces a file already counted as copied, it is only counted here.
+     */
+    public void updateRecopyStats() {
+        totalFilesRecopied.incrementAndGet();
+    }
+
+    /**
+     * Packed files are counted as copied too.
+     */
+    public void updatePackedFileStats() {
+        totalFilesPacked.incrementAndGet();
+    }
+
+    /**
+     * A retried file was counted as failed by the run that failed it. Every attempt counts itself again, so each attempt takes
+     * one failure back, which moves a recovered file from failed to copied.
+     */
+    public void updateRetryStats(boolean isRecovered) {
+        totalFilesFailed.updateAndGet(failed -> Math.max(0, failed - 1));
+        if (isRecovered) {
+            totalFilesRecovered.incrementAndGet();
+        }
+    }
+
+    public void recordBytesTransferred(long bytes) {
+        bytesTransferred.add(bytes);
+    }
+
+    public void recordFileLatency(long nanos) {
+        filesTransferred.increment();
+        transferNanos.add(nanos);
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred.sum();
+    }
+
+    public long getFilesTransferred() {
+        return filesTransferred.sum();
+    }
+
+    public long getTransferNanos() {
+        return transferNanos.sum();
+    }
+
+    public int getFilesCopied() {
+        return totalFilesCopied.get();
+    }
+
+    public int getFilesFailed() {
+        return totalFilesFailed.get();
+    }
+
+    public int getFilesSkipped() {
+        return totalFilesSkipped.get();
+    }
+
+    /**
+     * @return copied bytes including earlier runs resumed from the stats file
+     */
+    public long getTotalLengthCopied() {
+        return totalLengthCopied;
+    }
+
+    /**
+     * @return bytes per second transferred by this process since it started
+     */
+    public long getEffectiveRate() {
+        return rateOf(getBytesTransferred(), System.nanoTime() - startNanos);
+    }
+
     public void updateDupFile() {
         totalDuplicateFiles.incrementAndGet();
     }
@@ -82,9 +214,18 @@ public class StatsUtil {
         PropFileHandler.setProperty(StatsKey.SKIPPED_FILES.name(), totalFilesSkipped + "", statsPropFile);
         PropFileHandler.setProperty(StatsKey.SKIPPED_FOLDERS.name(), totalFoldersSkipped + "", statsPropFile);
         PropFileHandler.setProperty(StatsKey.DUPLICATE_FILES.name(), totalDuplicateFiles + "", statsPropFile);
+        PropFileHandler.setProperty(StatsKey.MOVED_FILES.name(), totalFilesMoved + "", statsPropFile);
+        PropFileHandler.setProperty(StatsKey.LINKED_FILES.name(), totalFilesLinked + "", statsPropFile);
+        PropFileHandler.setProperty(StatsKey.VERIFIED_FILES.name(), totalFilesVerified + "", statsPropFile);
+        PropFileHandler.setProperty(StatsKey.VERIFY_FAILED_FILES.name(), totalFilesVerifyFailed + "", statsPropFile);
+        PropFileHandler.setProperty(StatsKey.RECOVERED_FILES.name(), totalFilesRecovered + "", statsPropFile);
+        PropFileHandler.setProperty(StatsKey.PACKED_FILES.name(), totalFilesPacked + "", statsPropFile);
+        PropFileHandler.setProperty(StatsKey.RECOPIED_FILES.name(), totalFilesRecopied + "", statsPropFile);
 
         final String toDisplaySize = readableFileSize(totalLengthCopied);
         PropFileHandler.setProperty(StatsKey.TOTAL_COPIED_LENGTH.name(), toDisplaySize, statsPropFile);
+        PropFileHandler.setProperty(StatsKey.TOTAL_COPIED_BYTES.name(), totalLengthCopied + "", statsPropFile);
+        updateRateStats();
         try {
             PropFileHandler.flush(statsPropFile, DataOrganizerApplication.getStatsFilePath());
         } catch (IOException e) {
@@ -92,6 +233,24 @@ public class StatsUtil {
         }
     }
 
+    private void updateRateStats() {
+        final long now = System.nanoTime();
+        final long bytes = getBytesTransferred();
+        final long currentRate = rateOf(bytes - lastFlushBytes, now - lastFlushNanos);
+        final long effectiveRate = rateOf(bytes, now - startNanos);
+        lastFlushNanos = now;
+        lastFlushBytes = bytes;
+
+        PropFileHandler.setProperty(StatsKey.RATE_LIMIT.name(),
+            BandwidthThrottler.describeRate(BandwidthThrottler.getInstance().getCurrentRate()), statsPropFile);
+        PropFileHandler.setProperty(StatsKey.CURRENT_RATE.name(), readableRate(currentRate), statsPropFile);
+        PropFileHandler.setProperty(StatsKey.EFFECTIVE_RATE.name(), readableRate(effectiveRate), statsPropFile);
+    }
+
+    private static long rateOf(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : (long) (bytes * 1_000_000_000d / nanos);
+    }
+
     public static String readableFileSize(long size) {
         if (size <= 0) {
             return "0";
@@ -103,11 +262,80 @@ public class StatsUtil {
             + " " + units[digitGroups];
     }
 
+    /**
+     * Formats a measured rate, unlike {@link BandwidthThrottler#describeRate} where 0 means no limit.
+     */
+    public static String readableRate(long bytesPerSecond) {
+        return (bytesPerSecond <= 0 ? "0 B" : readableFileSize(bytesPerSecond)) + "/s";
+    }
+
+    /**
+     * Sums the stats files of shard runs into one. The shards run side by side, so their rates and rate limits add up too.
+     */
+    public static void mergeStatsFiles(final List<File> statsFiles, final File mergedStatsFile) throws IOException {
+        final Map<StatsKey, Long> totals = new EnumMap<>(StatsKey.class);
+        boolean unlimited = false;
+        for (final File statsFile : statsFiles) {
+            final Properties stats = PropFileHandler.readPropertiesFile(statsFile.getPath());
+            for (final StatsKey key : StatsKey.values()) {
+                final String value = stats.getProperty(key.name());
+                // The readable length is rounded up, the bytes are summed and it is derived from them.
+                if (value == null || key == StatsKey.SHARDS || key == StatsKey.TOTAL_COPIED_LENGTH) {
+                    continue;
+                }
+                final long parsed;
+                if (key == StatsKey.RATE_LIMIT || key == StatsKey.CURRENT_RATE || key == StatsKey.EFFECTIVE_RATE) {
+                    // Measured rates of older stats files may still read unlimited for 0.
+                    parsed = value.equals(BandwidthThrottler.describeRate(0)) ? 0 : BandwidthThrottler.parseRate(value);
+                    // One unlimited shard makes the limit of the whole run unlimited.
+                    unlimited |= key == StatsKey.RATE_LIMIT && parsed == 0;
+                } else {
+                    parsed = Long.parseLong(value.trim());
+                }
+                totals.merge(key, parsed, Long::sum);
+            }
+            final String length = stats.getProperty(StatsKey.TOTAL_COPIED_LENGTH.name());
+            if (length != null && stats.getProperty(StatsKey.TOTAL_COPIED_BYTES.name()) == null) {
+                // Written by an older version, only the readable length is there.
+                totals.merge(StatsKey.TOTAL_COPIED_BYTES, parseSize(length), Long::sum);
+            }
+        }
+
+        final Properties merged = new Properties();
+        for (final Map.Entry<StatsKey, Long> total : totals.entrySet()) {
+            final StatsKey key = total.getKey();
+            final String value;
+            if (key == StatsKey.TOTAL_COPIED_BYTES) {
+                PropFileHandler.setProperty(StatsKey.TOTAL_COPIED_LENGTH.name(), readableFileSize(total.getValue()), merged);
+                value = total.getValue() + "";
+            } else if (key == StatsKey.RATE_LIMIT) {
+                value = BandwidthThrottler.describeRate(unlimited ? 0 : total.getValue());
+            } else if (key == StatsKey.CURRENT_RATE || key == StatsKey.EFFECTIVE_RATE) {
+                value = readableRate(total.getValue());
+            } else {
+                value = total.getValue() + "";
+            }
+            PropFileHandler.setProperty(key.name(), value, merged);
+        }
+        PropFileHandler.setProperty(StatsKey.SHARDS.name(), statsFiles.size() + "", merged);
+        PropFileHandler.flush(merged, mergedStatsFile);
+    }
+
     private static final long KB_FACTOR = 1024;
     private static final long MB_FACTOR = 1024 * KB_FACTOR;
     private static final long GB_FACTOR = 1024 * MB_FACTOR;
     private static final long TB_FACTOR = 1024 * GB_FACTOR;
 
+    /**
+     * Lenient form of {@link #parseSize(String)} for user input, accepts e.g. 64 KB, 64kb, 64KiB or 65536. Blank is 0.
+     */
+    public static long parseReadableSize(String size) {
+        if (size == null || size.trim().isEmpty()) {
+            return 0;
+        }
+        return parseSize(size.trim().toUpperCase().replace("IB", "B").replaceAll("^([0-9.]+)\\s*([A-Z]+)$", "$1 $2"));
+    }
+
     public static long parseSize(String arg0) {
         int spaceNdx = arg0.trim().indexOf(" ");
         if (spaceNdx < 0) {
@@ -144,7 +372,19 @@ public class StatsUtil {
         SKIPPED_FILES,
         SKIPPED_FOLDERS,
         DUPLICATE_FILES,
-        TOTAL_COPIED_LENGTH
+        MOVED_FILES,
+        LINKED_FILES,
+        VERIFIED_FILES,
+        VERIFY_FAILED_FILES,
+        RECOVERED_FILES,
+        PACKED_FILES,
+        RECOPIED_FILES,
+        TOTAL_COPIED_LENGTH,
+        TOTAL_COPIED_BYTES,
+        RATE_LIMIT,
+        CURRENT_RATE,
+        EFFECTIVE_RATE,
+        SHARDS
     }
 
 }
@@ -0,0 +1,93 @@
+package com.tech.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Measures checksum throughput of the plain scheme against the tree scheme for 1, 2, 4 ... available cores.
+ * <p>
+ * Usage: java -cp ArrangeData.jar com.tech.utils.TreeHashBenchmark [file|sizeInMB] [algorithm]
+ * <br>A number that is not an existing file is a size, a temporary file of that size (default 1024 MB) is created and deleted
+ * afterwards. Run it twice or on
+ * a file larger than memory when the numbers should include disk reads rather than the page cache.
+ */
+public class TreeHashBenchmark {
+
+    private TreeHashBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, NoSuchAlgorithmException {
+        final String algorithm = args.length > 1 ? args[1].toUpperCase() : CheckSumUtil.DEFAULT_SCHEME;
+        File file = args.length > 0 ? new File(args[0]) : null;
+        boolean temporary = false;
+        if (file == null || !file.isFile()) {
+            final long sizeInMb;
+            if (file == null) {
+                sizeInMb = 1024;
+            } else if (args[0].matches("\\d+")) {
+                sizeInMb = Long.parseLong(args[0]);
+            } else {
+                System.err.println("No such file " + args[0] + ", give an existing file or a size in MB");
+                System.exit(1);
+                return;
+            }
+            file = createTestFile(sizeInMb);
+            temporary = true;
+        }
+        try {
+            run(file, algorithm);
+        } finally {
+            if (temporary) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    private static void run(final File file, final String algorithm) throws IOException, NoSuchAlgorithmException {
+        final CheckSumUtil checkSumUtil = CheckSumUtil.getInstance();
+        final long size = file.length();
+        System.out.println("File " + file.getPath() + " " + StatsUtil.readableFileSize(size) + ", algorithm " + algorithm);
+
+        // Warm up so the first measured run does not pay for class loading and the page cache.
+        checkSumUtil.getFileChecksum(file, algorithm, 1024 * 1024);
+
+        long start = System.nanoTime();
+        checkSumUtil.getFileChecksum(file, algorithm, 1024 * 1024);
+        print(algorithm, 1, size, System.nanoTime() - start);
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        int threads = 1;
+        while (true) {
+            checkSumUtil.configureTreeHash(CheckSumUtil.DEFAULT_TREE_CHUNK_SIZE, threads);
+            start = System.nanoTime();
+            checkSumUtil.getTreeChecksum(file, algorithm);
+            print(CheckSumUtil.TREE_SCHEME_PREFIX + algorithm, threads, size, System.nanoTime() - start);
+            if (threads == cores) {
+                break;
+            }
+            threads = Math.min(threads * 2, cores);
+        }
+    }
+
+    private static void print(final String scheme, final int threads, final long size, final long nanos) {
+        final double seconds = nanos / 1_000_000_000d;
+        System.out.printf("%-16s threads %3d  %8.2f s  %10s/s%n", scheme, threads, seconds, StatsUtil.readableFileSize((long) (size / seconds)));
+    }
+
+    private static File createTestFile(final long sizeInMb) throws IOException {
+        final File file = File.createTempFile("tree-hash-benchmark", ".bin");
+        final byte[] block = new byte[1024 * 1024];
+        final Random random = new Random(42);
+        try (OutputStream outputStream = Files.newOutputStream(file.toPath())) {
+            for (long i = 0; i < sizeInMb; i++) {
+                random.nextBytes(block);
+                outputStream.write(block);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,18 @@
+package com.tech;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates virtual thread executors. Only compiled by the java21 build profile, the default Java 8 build looks it up
+ * reflectively through {@link ExecutionMode} and falls back to platform threads when it is missing.
+ */
+public final class VirtualThreadExecutorFactory {
+
+    private VirtualThreadExecutorFactory() {
+    }
+
+    public static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+    }
+}
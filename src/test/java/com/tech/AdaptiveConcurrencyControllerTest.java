@@ -0,0 +1,147 @@
+package com.tech;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveConcurrencyControllerTest {
+
+    private final CopySettings settings = new CopySettings(4096, true, false);
+    private ThreadPoolExecutor pool;
+    private AdaptiveConcurrencyController controller;
+
+    @AfterEach
+    void tearDown() {
+        if (controller != null) {
+            controller.stop();
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ThreadPoolExecutor newPool(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    @Test
+    void startClampsThePoolIntoTheBounds() {
+        pool = newPool(2);
+        controller = new AdaptiveConcurrencyController(pool, settings, 4, 8, 60_000);
+        controller.start();
+        assertEquals(4, pool.getMaximumPoolSize());
+        assertEquals(4, pool.getCorePoolSize());
+    }
+
+    @Test
+    void startShrinksAPoolAboveTheMaximum() {
+        pool = newPool(20);
+        controller = new AdaptiveConcurrencyController(pool, settings, 1, 8, 60_000);
+        controller.start();
+        assertEquals(8, pool.getMaximumPoolSize());
+        assertEquals(8, pool.getCorePoolSize());
+    }
+
+    @Test
+    void resizeGrowsAndShrinksWithoutViolatingCoreBelowMax() {
+        pool = newPool(4);
+        AdaptiveConcurrencyController.resize(pool, 10);
+        assertEquals(10, pool.getCorePoolSize());
+        assertEquals(10, pool.getMaximumPoolSize());
+        AdaptiveConcurrencyController.resize(pool, 2);
+        assertEquals(2, pool.getCorePoolSize());
+        assertEquals(2, pool.getMaximumPoolSize());
+    }
+
+    @Test
+    void idlePoolIsNotResized() throws InterruptedException {
+        pool = newPool(3);
+        controller = new AdaptiveConcurrencyController(pool, settings, 1, 16, 10);
+        controller.start();
+        // Several sampling windows without any copy in flight.
+        Thread.sleep(100);
+        assertEquals(3, pool.getMaximumPoolSize());
+    }
+
+    @Test
+    void plateauProbesTheOtherWay() {
+        pool = newPool(4);
+        controller = new AdaptiveConcurrencyController(pool, settings, 1, 16, 60_000);
+        controller.adjust(100, 10);
+        assertEquals(5, pool.getMaximumPoolSize());
+        controller.adjust(200, 10);
+        assertEquals(6, pool.getMaximumPoolSize());
+
+        // No better than before, one worker less shows whether fewer do as well.
+        controller.adjust(202, 10);
+        assertEquals(5, pool.getMaximumPoolSize());
+        controller.adjust(204, 10);
+        assertEquals(6, pool.getMaximumPoolSize());
+    }
+
+    @Test
+    void droppedThroughputShrinksThePool() {
+        pool = newPool(8);
+        controller = new AdaptiveConcurrencyController(pool, settings, 2, 16, 60_000);
+        controller.adjust(100, 10);
+        assertEquals(9, pool.getMaximumPoolSize());
+
+        controller.adjust(50, 10);
+        assertEquals(6, pool.getMaximumPoolSize());
+        // Keeps going down while it improves.
+        controller.adjust(80, 10);
+        assertEquals(5, pool.getMaximumPoolSize());
+    }
+
+    @Test
+    void plateauAtTheBoundProbesInwards() {
+        pool = newPool(4);
+        controller = new AdaptiveConcurrencyController(pool, settings, 1, 4, 60_000);
+        controller.adjust(100, 10);
+        assertEquals(4, pool.getMaximumPoolSize());
+
+        controller.adjust(100, 10);
+        assertEquals(3, pool.getMaximumPoolSize());
+    }
+
+    @Test
+    void pausedRunIsNotSampled() throws Exception {
+        pool = newPool(4);
+        controller = new AdaptiveConcurrencyController(pool, settings, 1, 16, 60_000);
+        controller.adjust(100, 10);
+        assertEquals(5, pool.getMaximumPoolSize());
+
+        settings.pause();
+        final AtomicInteger running = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            pool.execute(() -> {
+                running.incrementAndGet();
+                settings.awaitResumed();
+            });
+        }
+        BoundedExecutorServiceTest.awaitRunning(running, 2);
+        // Busy copies and nothing transferred, as long as the run is paused.
+        controller.sampleAndAdjust();
+        controller.sampleAndAdjust();
+        assertEquals(5, pool.getMaximumPoolSize());
+
+        settings.resume();
+        // Half the throughput of before the pause is a new baseline, not a drop.
+        controller.adjust(50, 10);
+        assertEquals(6, pool.getMaximumPoolSize());
+    }
+
+    @Test
+    void invertedBoundsFallBackToTheMinimum() {
+        pool = newPool(6);
+        controller = new AdaptiveConcurrencyController(pool, settings, 5, 2, 60_000);
+        controller.start();
+        assertEquals(5, pool.getMaximumPoolSize());
+    }
+}
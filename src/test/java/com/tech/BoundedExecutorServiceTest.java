@@ -0,0 +1,80 @@
+package com.tech;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedExecutorServiceTest {
+
+    private final ExecutorService delegate = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        delegate.shutdownNow();
+    }
+
+    @Test
+    void runsNoMoreTasksAtOnceThanItHasPermits() throws InterruptedException {
+        final BoundedExecutorService executor = new BoundedExecutorService(delegate, 3);
+        final AtomicInteger running = new AtomicInteger();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                running.incrementAndGet();
+                await(gate);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        awaitRunning(running, 3);
+        // The other tasks are waiting for a permit, not running.
+        Thread.sleep(50);
+        assertEquals(3, running.get());
+        gate.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // Permits are given back after the task body, wait for the threads to finish.
+        delegate.shutdown();
+        assertTrue(delegate.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(3, executor.getPermits().availablePermits());
+    }
+
+    @Test
+    void failedTaskGivesBackItsPermit() throws InterruptedException {
+        final BoundedExecutorService executor = new BoundedExecutorService(delegate, 1);
+        final Future<?> failed = executor.submit(() -> {
+            throw new IllegalStateException("listing failed");
+        });
+        assertThrows(ExecutionException.class, failed::get);
+        final CountDownLatch next = new CountDownLatch(1);
+        executor.execute(next::countDown);
+        assertTrue(next.await(10, TimeUnit.SECONDS));
+    }
+
+    static void awaitRunning(final AtomicInteger running, final int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (running.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, running.get());
+    }
+
+    static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CopyFileTaskTest {
+
+    @TempDir
+    File folder;
+
+    private File source(String name, String content) throws IOException {
+        final File source = new File(folder, name);
+        Files.write(source.toPath(), content.getBytes());
+        return source;
+    }
+
+    private boolean transfer(File source, File target, TransferMode mode) {
+        return new CopyFileTask(source, target, -1, mode, new CopySettings(4096, true, false))
+            .copy(null, new StringBuilder(), new StringBuilder());
+    }
+
+    @Test
+    void moveOnTheSameFileSystemRenamesTheSource() throws IOException {
+        final File source = source("moved.txt", "content");
+        final File target = new File(folder, "moved-target.txt");
+
+        assertTrue(transfer(source, target, TransferMode.MOVE));
+        assertFalse(source.exists());
+        assertArrayEquals("content".getBytes(), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void moveAcrossFileSystemsSyncsTheTargetBeforeDeletingTheSource() throws IOException {
+        final File otherFileSystem = new File("/dev/shm");
+        assumeTrue(otherFileSystem.isDirectory()
+            && !Files.getFileStore(otherFileSystem.toPath()).equals(Files.getFileStore(folder.toPath())));
+        final File source = File.createTempFile("moved", ".txt", otherFileSystem);
+        try {
+            Files.write(source.toPath(), "content".getBytes());
+            final File target = new File(folder, "moved-target.txt");
+            final StringBuilder copied = new StringBuilder();
+            // A batch that is never full, a deferred entry would not be logged yet.
+            final CopySettings settings = new CopySettings(4096, true, false)
+                .withDurabilitySync(false, new DurabilitySync(SyncPolicy.BATCHED, 100, 0, false));
+
+            assertTrue(new CopyFileTask(source, target, -1, TransferMode.MOVE, settings).copy(null, copied, new StringBuilder()));
+            assertFalse(source.exists());
+            assertEquals(source.getPath() + "->" + target.getPath() + "\n", copied.toString());
+            assertArrayEquals("content".getBytes(), Files.readAllBytes(target.toPath()));
+        } finally {
+            Files.deleteIfExists(source.toPath());
+        }
+    }
+
+    @Test
+    void hardLinkSharesTheSourceFile() throws IOException {
+        final File source = source("linked.txt", "content");
+        final File target = new File(folder, "linked-target.txt");
+
+        assertTrue(transfer(source, target, TransferMode.HARDLINK));
+        assertTrue(source.exists());
+        assertTrue(Files.isSameFile(source.toPath(), target.toPath()));
+    }
+
+    @Test
+    void copyKeepsTheSource() throws IOException {
+        final File source = source("copied.txt", "content");
+        final File target = new File(folder, "copied-target.txt");
+
+        assertTrue(transfer(source, target, TransferMode.COPY));
+        assertTrue(source.exists());
+        assertFalse(Files.isSameFile(source.toPath(), target.toPath()));
+        assertArrayEquals("content".getBytes(), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void failedMoveLeavesTheSourceAndLogsItAsFailed() throws IOException {
+        final File source = source("stays.txt", "content");
+        final File target = new File(folder, "missing-folder/stays.txt");
+        final StringBuilder copied = new StringBuilder();
+        final StringBuilder failed = new StringBuilder();
+
+        assertFalse(new CopyFileTask(source, target, -1, TransferMode.MOVE, new CopySettings(4096, true, false))
+            .copy(null, copied, failed));
+        assertTrue(source.exists());
+        assertEquals(0, copied.length());
+        assertEquals(source.getPath() + "->" + target.getPath() + "\n", failed.toString());
+    }
+
+    @Test
+    void failedCopyWithoutSourceLeavesTheTargetInPlace() throws IOException {
+        // E.g. a moved file copied again, the target holds the only copy of the data.
+        final File target = source("only-copy.txt", "moved earlier");
+
+        assertFalse(transfer(new File(folder, "gone.txt"), target, TransferMode.COPY));
+        assertArrayEquals("moved earlier".getBytes(), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void failFastRethrowsTheFailure() {
+        final CopyFileTask task = new CopyFileTask(new File(folder, "gone.txt"), new File(folder, "target.txt"), -1,
+            TransferMode.COPY, new CopySettings(4096, true, true));
+        assertThrows(RuntimeException.class, () -> task.copy(null, new StringBuilder(), new StringBuilder()));
+    }
+
+    @Test
+    void parsesTransferModes() {
+        assertEquals(TransferMode.COPY, TransferMode.fromValue(null));
+        assertEquals(TransferMode.HARDLINK, TransferMode.fromValue("hardlink"));
+        assertEquals(TransferMode.AUTO, TransferMode.fromValue(" Auto "));
+        assertThrows(IllegalArgumentException.class, () -> TransferMode.fromValue("symlink"));
+    }
+}
@@ -0,0 +1,155 @@
+package com.tech;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeliveryWatcherTest {
+
+    private static final long SETTLE_MILLIS = 300;
+
+    @TempDir
+    File folder;
+
+    private final ExecutorService watchThread = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        watchThread.shutdownNow();
+    }
+
+    private static class RecordingListener implements DeliveryWatcher.Listener {
+        final BlockingQueue<File> changedManifests = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> arrivedFolders = new LinkedBlockingQueue<>();
+        final List<File> manifests;
+        final Set<String> pendingFolders;
+
+        RecordingListener(List<File> manifests, Set<String> pendingFolders) {
+            this.manifests = manifests;
+            this.pendingFolders = pendingFolders;
+        }
+
+        @Override
+        public List<File> resolveManifests() {
+            return manifests;
+        }
+
+        @Override
+        public void manifestChanged(File manifest) {
+            changedManifests.add(manifest);
+        }
+
+        @Override
+        public void sourceFolderArrived(String folderName) throws IOException {
+            arrivedFolders.add(folderName);
+        }
+
+        @Override
+        public Set<String> pendingSourceFolders() {
+            return pendingFolders;
+        }
+    }
+
+    private Future<Void> watch(final DeliveryWatcher watcher, final File manifestFolder, final File sourceFolder) {
+        return watchThread.submit(() -> {
+            watcher.watch(Collections.singletonList(manifestFolder), sourceFolder);
+            return null;
+        });
+    }
+
+    private static void awaitTrue(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void waitingFolderAndChangedManifestArePlannedOnceSettled() throws Exception {
+        final File manifestFolder = new File(folder, "manifests");
+        final File sourceFolder = new File(folder, "source");
+        Files.createDirectories(manifestFolder.toPath());
+        Files.createDirectories(new File(sourceFolder, "guid1").toPath());
+        Files.write(new File(sourceFolder, "guid1/video.mp4").toPath(), new byte[16]);
+        final File manifest = new File(manifestFolder, "manifest.xlsx");
+        final RecordingListener listener = new RecordingListener(Collections.singletonList(manifest), Collections.singleton("guid1"));
+        final DeliveryWatcher watcher = new DeliveryWatcher(listener, SETTLE_MILLIS);
+        watch(watcher, manifestFolder, sourceFolder);
+
+        // The folder already there is settling once the watch is registered.
+        awaitTrue(() -> watcher.isSettling("guid1"));
+        Files.write(manifest.toPath(), new byte[8]);
+        assertEquals("guid1", listener.arrivedFolders.poll(10, TimeUnit.SECONDS));
+        assertFalse(watcher.isSettling("guid1"));
+        assertEquals(manifest, listener.changedManifests.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void newFolderSettlesAlsoWithoutWaitingRows() throws Exception {
+        final File manifestFolder = new File(folder, "manifests");
+        final File sourceFolder = new File(folder, "source");
+        Files.createDirectories(manifestFolder.toPath());
+        Files.createDirectories(new File(sourceFolder, "guid1").toPath());
+        final RecordingListener listener = new RecordingListener(Collections.emptyList(), Collections.singleton("guid1"));
+        final DeliveryWatcher watcher = new DeliveryWatcher(listener, SETTLE_MILLIS);
+        watch(watcher, manifestFolder, sourceFolder);
+        awaitTrue(() -> watcher.isSettling("guid1"));
+
+        Files.createDirectories(new File(sourceFolder, "guid2").toPath());
+        // Rows read meanwhile have to wait for it, even though none was waiting when it arrived.
+        awaitTrue(() -> watcher.isSettling("guid2"));
+        assertFalse(watcher.isSettling("guid3"));
+        awaitTrue(() -> listener.arrivedFolders.contains("guid2"));
+        assertFalse(watcher.isSettling("guid2"));
+    }
+
+    @Test
+    void listenerFailureStopsTheWatch() throws Exception {
+        final File manifestFolder = new File(folder, "manifests");
+        final File sourceFolder = new File(folder, "source");
+        Files.createDirectories(manifestFolder.toPath());
+        Files.createDirectories(new File(sourceFolder, "guid1").toPath());
+        final RecordingListener listener = new RecordingListener(Collections.emptyList(), Collections.singleton("guid1")) {
+            @Override
+            public void sourceFolderArrived(String folderName) throws IOException {
+                throw new IOException("manifest no longer readable");
+            }
+        };
+        final Future<Void> watching = watch(new DeliveryWatcher(listener, SETTLE_MILLIS), manifestFolder, sourceFolder);
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> watching.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    void interruptStopsTheWatch() throws Exception {
+        final File manifestFolder = new File(folder, "manifests");
+        Files.createDirectories(manifestFolder.toPath());
+        final RecordingListener listener = new RecordingListener(Collections.emptyList(), Collections.emptySet());
+        final Future<Void> watching = watch(new DeliveryWatcher(listener, SETTLE_MILLIS), manifestFolder, manifestFolder);
+        watchThread.shutdownNow();
+        assertTrue(watchThread.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(watching.isDone());
+    }
+}
@@ -0,0 +1,94 @@
+package com.tech;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceAwareSchedulerTest {
+
+    @TempDir
+    File folder;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void parsesStoreLimits() {
+        final Map<String, Integer> limits = DeviceAwareScheduler.parseStoreLimits("/dev/sdb1=2->nas01:/export=6");
+        assertEquals(2, limits.size());
+        assertEquals(2, limits.get("/dev/sdb1"));
+        assertEquals(6, limits.get("nas01:/export"));
+    }
+
+    @Test
+    void ignoresStoreLimitEntriesWithoutName() {
+        final Map<String, Integer> limits = DeviceAwareScheduler.parseStoreLimits("=4->sda=3");
+        assertEquals(1, limits.size());
+        assertEquals(3, limits.get("sda"));
+        assertTrue(DeviceAwareScheduler.parseStoreLimits(" ").isEmpty());
+    }
+
+    @Test
+    void runsNoMoreTasksOnAStoreThanItsLimit() throws Exception {
+        final DeviceAwareScheduler scheduler = new DeviceAwareScheduler(pool, 2, DeviceAwareScheduler.parseStoreLimits(null));
+        final AtomicInteger running = new AtomicInteger();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(scheduler.submit(new File(folder, "source" + i), new File(folder, "target" + i), () -> {
+                running.incrementAndGet();
+                BoundedExecutorServiceTest.await(gate);
+                running.decrementAndGet();
+            }));
+        }
+        BoundedExecutorServiceTest.awaitRunning(running, 2);
+        // Threads are free, the other tasks wait for the store.
+        Thread.sleep(50);
+        assertEquals(2, running.get());
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void failedTaskFailsItsFutureAndFreesItsSlot() throws Exception {
+        final DeviceAwareScheduler scheduler = new DeviceAwareScheduler(pool, 1, DeviceAwareScheduler.parseStoreLimits(null));
+        final CompletableFuture<Void> failed = scheduler.submit(new File(folder, "a"), new File(folder, "b"), () -> {
+            throw new IllegalStateException("copy failed");
+        });
+        final CompletableFuture<Void> next = scheduler.submit(new File(folder, "c"), new File(folder, "d"), () -> {
+        });
+        final CompletionException e = assertThrows(CompletionException.class, failed::join);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        next.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void rejectedTaskFailsItsFuture() {
+        pool.shutdown();
+        final DeviceAwareScheduler scheduler = new DeviceAwareScheduler(pool, 1, DeviceAwareScheduler.parseStoreLimits(null));
+        final CompletableFuture<Void> rejected = scheduler.submit(new File(folder, "a"), new File(folder, "b"), () -> {
+        });
+        assertThrows(CompletionException.class, rejected::join);
+    }
+}
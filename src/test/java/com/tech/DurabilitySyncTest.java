@@ -0,0 +1,123 @@
+package com.tech;
+
+import com.tech.utils.StatsUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DurabilitySyncTest {
+
+    @TempDir
+    File folder;
+
+    private File target(String name) throws IOException {
+        final File target = new File(folder, name);
+        Files.write(target.toPath(), name.getBytes());
+        return target;
+    }
+
+    private static String logEntry(File target) {
+        return "source/" + target.getName() + "->" + target.getPath() + "\n";
+    }
+
+    private static String read(File log) throws IOException {
+        return log.exists() ? new String(Files.readAllBytes(log.toPath())) : "";
+    }
+
+    @Test
+    void parsesPolicies() {
+        assertEquals(SyncPolicy.NONE, SyncPolicy.fromValue(null));
+        assertEquals(SyncPolicy.PER_FILE, SyncPolicy.fromValue("per-file"));
+        assertEquals(SyncPolicy.AT_ROW_END, SyncPolicy.fromValue(" at-row-end "));
+        assertThrows(IllegalArgumentException.class, () -> SyncPolicy.fromValue("sometimes"));
+    }
+
+    @Test
+    void perFileSyncsRightAwayAndFailsForAMissingTarget() throws IOException {
+        final DurabilitySync durabilitySync = new DurabilitySync(SyncPolicy.PER_FILE, 0, 0, false);
+        final File target = target("per-file.mp4");
+        final File missing = new File(folder, "missing.mp4");
+
+        assertTrue(durabilitySync.written(target, target.length(), logEntry(target), true));
+        assertThrows(IOException.class, () -> durabilitySync.written(missing, 0, logEntry(missing), true));
+        durabilitySync.shutdown();
+    }
+
+    @Test
+    void batchedEntriesAreLoggedOnceTheirGroupIsSynced() throws Exception {
+        final DurabilitySync durabilitySync = new DurabilitySync(SyncPolicy.BATCHED, 2, 0, false);
+        final File first = target("batched-first.mp4");
+        final File recopied = target("batched-recopied.mp4");
+        final File copiedLog = DataOrganizerApplication.getCopiedFileLogPath();
+
+        assertFalse(durabilitySync.written(first, first.length(), logEntry(first), true));
+        assertFalse(read(copiedLog).contains(logEntry(first)));
+        // The second file fills the group, a recopy is not logged again.
+        assertFalse(durabilitySync.written(recopied, recopied.length(), logEntry(recopied), false));
+        durabilitySync.flush().get(10, TimeUnit.SECONDS);
+
+        assertTrue(read(copiedLog).contains(logEntry(first)));
+        assertFalse(read(copiedLog).contains(logEntry(recopied)));
+        durabilitySync.shutdown();
+    }
+
+    @Test
+    void failedSyncIsLoggedAsFailedAndRevokesTheCopy() throws Exception {
+        final DurabilitySync durabilitySync = new DurabilitySync(SyncPolicy.BATCHED, 10, 0, false);
+        final File target = target("batched-deleted.mp4");
+        final int copied = StatsUtil.getInstance().getFilesCopied();
+        final int failed = StatsUtil.getInstance().getFilesFailed();
+
+        durabilitySync.written(target, target.length(), logEntry(target), true);
+        Files.delete(target.toPath());
+        durabilitySync.flush().get(10, TimeUnit.SECONDS);
+
+        assertFalse(read(DataOrganizerApplication.getCopiedFileLogPath()).contains(logEntry(target)));
+        assertTrue(read(DataOrganizerApplication.getFailedFileLogPath()).contains(logEntry(target)));
+        assertEquals(copied - 1, StatsUtil.getInstance().getFilesCopied());
+        assertEquals(failed + 1, StatsUtil.getInstance().getFilesFailed());
+        durabilitySync.shutdown();
+    }
+
+    @Test
+    void batchedCheckpointWaitsForTheGroupOfTheRow() throws Exception {
+        final DurabilitySync durabilitySync = new DurabilitySync(SyncPolicy.BATCHED, 10, 0, false);
+        final File target = target("batched-row.mp4");
+        final CountDownLatch checkpointed = new CountDownLatch(1);
+
+        durabilitySync.written(target, target.length(), logEntry(target), true);
+        durabilitySync.whenRowDurable(checkpointed::countDown);
+        assertEquals(1, checkpointed.getCount());
+        durabilitySync.flush();
+
+        assertTrue(checkpointed.await(10, TimeUnit.SECONDS));
+        durabilitySync.shutdown();
+    }
+
+    @Test
+    void rowEndSyncsBeforeTheCheckpoint() throws IOException {
+        final DurabilitySync durabilitySync = new DurabilitySync(SyncPolicy.AT_ROW_END, 0, 0, false);
+        final File target = target("row-end.mp4");
+        final File copiedLog = DataOrganizerApplication.getCopiedFileLogPath();
+        final long logLength = copiedLog.length();
+        final AtomicBoolean loggedBeforeCheckpoint = new AtomicBoolean();
+
+        assertFalse(durabilitySync.written(target, target.length(), logEntry(target), true));
+        durabilitySync.whenRowDurable(() -> loggedBeforeCheckpoint.set(copiedLog.length() > logLength));
+
+        assertTrue(loggedBeforeCheckpoint.get());
+        assertTrue(read(copiedLog).contains(logEntry(target)));
+        durabilitySync.shutdown();
+    }
+}
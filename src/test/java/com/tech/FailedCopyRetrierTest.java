@@ -0,0 +1,91 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FailedCopyRetrierTest {
+
+    @TempDir
+    File folder;
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    private FailedCopyRetrier newRetrier(int maxAttempts) {
+        return new FailedCopyRetrier(task -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.runAsync(task);
+        }, (source, target) -> TransferMode.COPY, new CopySettings(4096, true, false), maxAttempts, 1, 5);
+    }
+
+    private File failedLog(String... entries) throws IOException {
+        final File failedLog = new File(folder, "failed.log");
+        Files.write(failedLog.toPath(), Arrays.asList(entries), Charset.defaultCharset());
+        return failedLog;
+    }
+
+    @Test
+    void recoveredEntriesLeaveTheFailedLog() throws IOException {
+        final File source = new File(folder, "source.txt");
+        Files.write(source.toPath(), "content".getBytes());
+        final File target = new File(folder, "target/show/source.txt");
+        // Listed by two runs, copied once.
+        final File failedLog = failedLog(source.getPath() + "->" + target.getPath(), source.getPath() + "->" + target.getPath());
+
+        newRetrier(3).retry(failedLog);
+
+        assertEquals(1, attempts.get());
+        assertArrayEquals("content".getBytes(), Files.readAllBytes(target.toPath()));
+        assertTrue(Files.readAllLines(failedLog.toPath(), Charset.defaultCharset()).isEmpty());
+    }
+
+    @Test
+    void failingEntryIsRetriedUpToTheMaxAttemptsAndKept() throws IOException {
+        final File source = new File(folder, "source.txt");
+        Files.write(source.toPath(), "content".getBytes());
+        // A file where the target folder has to be, every attempt fails.
+        final File blocker = new File(folder, "blocker");
+        Files.write(blocker.toPath(), new byte[0]);
+        final String entry = source.getPath() + "->" + new File(blocker, "source.txt").getPath();
+        final File failedLog = failedLog(entry);
+
+        newRetrier(3).retry(failedLog);
+
+        assertEquals(3, attempts.get());
+        assertEquals(Collections.singletonList(entry), Files.readAllLines(failedLog.toPath(), Charset.defaultCharset()));
+    }
+
+    @Test
+    void missingSourceAndUnreadableEntriesAreKeptWithoutRetrying() throws IOException {
+        final String missing = new File(folder, "missing.txt").getPath() + "->" + new File(folder, "target.txt").getPath();
+        final File failedLog = failedLog("not an entry", missing, "");
+
+        newRetrier(3).retry(failedLog);
+
+        assertEquals(1, attempts.get());
+        assertEquals(Arrays.asList("not an entry", missing), Files.readAllLines(failedLog.toPath(), Charset.defaultCharset()));
+    }
+
+    @Test
+    void missingFailedLogIsNothingToRetry() throws IOException {
+        final File failedLog = new File(folder, "failed.log");
+
+        newRetrier(3).retry(failedLog);
+
+        assertEquals(0, attempts.get());
+        assertFalse(failedLog.exists());
+    }
+}
@@ -0,0 +1,143 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class InodeOrderTaskPlannerTest {
+
+    @TempDir
+    File folder;
+
+    private final List<String> copied = Collections.synchronizedList(new ArrayList<>());
+
+    private CopyFileTask task(String name, long length) {
+        return new CopyFileTask(new File(folder, name), new File(folder, name + ".copy"), length, TransferMode.COPY,
+            new CopySettings(4096, true, false)) {
+            @Override
+            public void run() {
+                copied.add(name);
+            }
+        };
+    }
+
+    @Test
+    void readsEachDeviceInInodeOrder() {
+        final List<CopyFileTask> window = Arrays.asList(task("a", 10), task("b", 20), task("c", 30), task("d", 40), task("e", 50));
+        final long[] devices = {2, 1, 2, 1, 2};
+        final long[] inodes = {300, 20, 100, 10, 200};
+
+        final List<CopyTask> readers = new InodeOrderTaskPlanner(1).plan(window, devices, inodes);
+
+        assertEquals(2, readers.size());
+        assertEquals(new File(folder, "d"), readers.get(0).getFromPath());
+        assertEquals(60, readers.get(0).getLength());
+        assertEquals(90, readers.get(1).getLength());
+        readers.forEach(CopyTask::run);
+        assertEquals(Arrays.asList("d", "b", "c", "e", "a"), copied);
+    }
+
+    @Test
+    void readersOfADeviceShareItsQueue() {
+        final List<CopyFileTask> window = Arrays.asList(task("a", 10), task("b", 20), task("c", 30));
+        final long[] devices = {1, 1, 1};
+        final long[] inodes = {3, 2, 1};
+
+        final List<CopyTask> readers = new InodeOrderTaskPlanner(5).plan(window, devices, inodes);
+
+        // No more readers than files, the first takes them all.
+        assertEquals(3, readers.size());
+        readers.get(0).run();
+        readers.get(1).run();
+        assertEquals(Arrays.asList("c", "b", "a"), copied);
+    }
+
+    @Test
+    void batchesOfOtherSheetsShareTheReadersOfADevice() throws Exception {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final CopyFileTask blocking = new CopyFileTask(new File(folder, "a"), new File(folder, "a.copy"), 10, TransferMode.COPY,
+            new CopySettings(4096, true, false)) {
+            @Override
+            public void run() {
+                firstStarted.countDown();
+                BoundedExecutorServiceTest.await(releaseFirst);
+                copied.add("a");
+            }
+        };
+        final InodeOrderTaskPlanner planner = new InodeOrderTaskPlanner(1);
+        final List<CopyTask> firstBatch = planner.plan(Collections.singletonList(blocking), new long[]{1}, new long[]{1});
+        final List<CopyTask> secondBatch = planner.plan(Collections.singletonList(task("b", 20)), new long[]{1}, new long[]{2});
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> first = executor.submit(firstBatch.get(0));
+            BoundedExecutorServiceTest.await(firstStarted);
+            final Future<?> second = executor.submit(secondBatch.get(0));
+            Thread.sleep(100);
+            // One reader per device, the second batch waits for the first.
+            assertTrue(copied.isEmpty());
+
+            releaseFirst.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("a", "b"), copied);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unknownInodesKeepTheirScanOrder() {
+        final List<CopyFileTask> window = Arrays.asList(task("a", 10), task("b", 20), task("c", 30));
+        final long[] devices = {InodeOrderTaskPlanner.UNKNOWN, 1, InodeOrderTaskPlanner.UNKNOWN};
+        final long[] inodes = {InodeOrderTaskPlanner.UNKNOWN, 5, InodeOrderTaskPlanner.UNKNOWN};
+
+        new InodeOrderTaskPlanner(1).plan(window, devices, inodes).forEach(CopyTask::run);
+
+        assertEquals(Arrays.asList("a", "c", "b"), copied);
+    }
+
+    @Test
+    void readsTheInodeOfAnExistingFile() throws IOException {
+        assumeTrue(InodeOrderTaskPlanner.isSupported());
+        final File source = new File(folder, "source.mp4");
+        Files.write(source.toPath(), new byte[4]);
+
+        final long[] key = InodeOrderTaskPlanner.readPhysicalKey(source.toPath());
+
+        assertEquals(Files.getAttribute(source.toPath(), "unix:dev"), key[0]);
+        assertEquals(Files.getAttribute(source.toPath(), "unix:ino"), key[1]);
+        assertTrue(key[1] > 0);
+    }
+
+    @Test
+    void missingFileHasAnUnknownKey() {
+        final long[] key = InodeOrderTaskPlanner.readPhysicalKey(new File(folder, "missing.mp4").toPath());
+        assertArrayEquals(new long[]{InodeOrderTaskPlanner.UNKNOWN, InodeOrderTaskPlanner.UNKNOWN}, key);
+    }
+
+    @Test
+    void parsesReadOrders() {
+        assertEquals(ReadOrder.SCAN, ReadOrder.fromValue(""));
+        assertEquals(ReadOrder.INODE, ReadOrder.fromValue("inode"));
+        assertThrows(IllegalArgumentException.class, () -> ReadOrder.fromValue("random"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.tech;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Writes manifest workbooks and their source folders for the tests running a whole {@link ProcessExecutor}.
+ */
+final class Manifests {
+
+    static final String[] HEADER = {"guid", "decade", "series title", "year", "episode number", "episode title",
+        "title_version_additional_infor"};
+
+    private Manifests() {
+    }
+
+    /**
+     * @param sheets guids per sheet, each row gets the files of its guid folder planned under its own episode folder
+     */
+    static File write(final File workbookFile, final List<List<String>> sheets) throws IOException {
+        final List<List<String[]>> sheetRows = new ArrayList<>();
+        for (final List<String> guids : sheets) {
+            sheetRows.add(guids.stream().map(guid -> row(guid, guid)).collect(Collectors.toList()));
+        }
+        return writeRows(workbookFile, sheetRows);
+    }
+
+    /**
+     * @return row of the guid planned under the folder of the episode, rows of the same episode share the target folder
+     */
+    static String[] row(final String guid, final String episode) {
+        return new String[]{guid, "1990s", "Show", "1995", episode, "Episode " + episode, "v1"};
+    }
+
+    /**
+     * @param sheets rows per sheet, with the values of {@link #HEADER}
+     */
+    static File writeRows(final File workbookFile, final List<List<String[]>> sheets) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+            int sheetIndex = 0;
+            for (final List<String[]> rows : sheets) {
+                final Sheet sheet = workbook.createSheet("sheet" + sheetIndex++);
+                final Row header = sheet.createRow(0);
+                for (int i = 0; i < HEADER.length; i++) {
+                    header.createCell(i).setCellValue(HEADER[i]);
+                }
+                int rowIndex = 1;
+                for (final String[] values : rows) {
+                    final Row row = sheet.createRow(rowIndex++);
+                    for (int i = 0; i < values.length; i++) {
+                        row.createCell(i).setCellValue(values[i]);
+                    }
+                }
+            }
+            try (OutputStream outputStream = new FileOutputStream(workbookFile)) {
+                workbook.write(outputStream);
+            }
+        }
+        return workbookFile;
+    }
+
+    /**
+     * Creates a guid folder with the given number of small files.
+     */
+    static void source(final File sourceFolder, final String guid, final int files) throws IOException {
+        final File folder = new File(sourceFolder, guid + "/h264");
+        Files.createDirectories(folder.toPath());
+        for (int i = 0; i < files; i++) {
+            Files.write(new File(folder, guid + "-" + i + ".mov").toPath(), (guid + " file " + i).getBytes());
+        }
+    }
+
+    static Properties properties(final File inputFile, final File sourceFolder, final File targetFolder) throws IOException {
+        // Created by the application before a run, checkpoints are written next to the properties file.
+        Files.createDirectories(DataOrganizerApplication.getPropFilePath().getParentFile().toPath());
+        final Properties properties = new Properties();
+        properties.setProperty(PropKeysEnum.INPUT_FILE.name(), inputFile.getPath());
+        properties.setProperty(PropKeysEnum.SRC_FOLDER.name(), sourceFolder.getPath());
+        properties.setProperty(PropKeysEnum.TARGET_FOLDER.name(), targetFolder.getPath());
+        return properties;
+    }
+
+    /**
+     * @return names of all files below the folder
+     */
+    static List<String> files(final File folder) throws IOException {
+        if (!folder.exists()) {
+            return new ArrayList<>();
+        }
+        try (Stream<java.nio.file.Path> paths = Files.walk(folder.toPath())) {
+            return paths.filter(Files::isRegularFile).map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
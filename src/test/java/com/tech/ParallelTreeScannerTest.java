@@ -0,0 +1,107 @@
+package com.tech;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelTreeScannerTest {
+
+    @TempDir
+    Path root;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void visitsEveryFileOfTheTree() throws IOException {
+        Files.createDirectories(root.resolve("a/b"));
+        Files.createDirectories(root.resolve("c"));
+        Files.write(root.resolve("top.txt"), new byte[1]);
+        Files.write(root.resolve("a/one.txt"), new byte[2]);
+        Files.write(root.resolve("a/b/two.txt"), new byte[3]);
+        Files.write(root.resolve("c/three.txt"), new byte[4]);
+
+        final Set<String> visited = new HashSet<>();
+        new ParallelTreeScanner(executor, new Semaphore(2)).walk(root, new ParallelTreeScanner.Visitor() {
+            @Override
+            public boolean preVisitDirectory(Path dir) {
+                return true;
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                visited.add(root.relativize(file).toString().replace('\\', '/') + ":" + attrs.size());
+            }
+        });
+        assertEquals(new HashSet<>(Arrays.asList("top.txt:1", "a/one.txt:2", "a/b/two.txt:3", "c/three.txt:4")), visited);
+    }
+
+    @Test
+    void skipsTheSubtreeOfARejectedDirectory() throws IOException {
+        Files.createDirectories(root.resolve("keep"));
+        Files.createDirectories(root.resolve("skip/deeper"));
+        Files.write(root.resolve("keep/file.txt"), new byte[1]);
+        Files.write(root.resolve("skip/deeper/file.txt"), new byte[1]);
+
+        final Set<Path> visitedDirs = ConcurrentHashMap.newKeySet();
+        final Set<String> visited = new HashSet<>();
+        new ParallelTreeScanner(executor, new Semaphore(1)).walk(root, new ParallelTreeScanner.Visitor() {
+            @Override
+            public boolean preVisitDirectory(Path dir) {
+                visitedDirs.add(dir);
+                return !dir.getFileName().toString().equals("skip");
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                visited.add(root.relativize(file).toString().replace('\\', '/'));
+            }
+        });
+        assertEquals(new HashSet<>(Arrays.asList("keep/file.txt")), visited);
+        assertEquals(3, visitedDirs.size());
+    }
+
+    @Test
+    void missingRootFailsWithTheListingError() {
+        assertThrows(IOException.class, () -> new ParallelTreeScanner(executor, new Semaphore(1)).walk(root.resolve("missing"),
+            new ParallelTreeScanner.Visitor() {
+                @Override
+                public boolean preVisitDirectory(Path dir) {
+                    return true;
+                }
+
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attrs) {
+                }
+            }));
+    }
+
+    @Test
+    void virtualThreadsAreNotAvailableWithoutTheJava21Build() {
+        assertEquals(ExecutionMode.PLATFORM, ExecutionMode.fromValue(null));
+        assertEquals(ExecutionMode.VIRTUAL, ExecutionMode.fromValue(" virtual "));
+        assertThrows(IllegalArgumentException.class, () -> ExecutionMode.fromValue("green"));
+        // The default build has no factory class, the caller falls back to platform threads.
+        assertNull(ExecutionMode.newVirtualThreadExecutor("test-"));
+    }
+}
@@ -0,0 +1,56 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessExecutorManifestsTest {
+
+    @TempDir
+    File folder;
+
+    @Test
+    void processesEverySheetOfEveryWorkbook() throws IOException {
+        final File source = new File(folder, "src");
+        final File target = new File(folder, "target");
+        for (final String guid : Arrays.asList("g1", "g2", "g3", "g4", "g5")) {
+            Manifests.source(source, guid, 2);
+        }
+        Manifests.write(new File(folder, "first.xlsx"), Arrays.asList(Arrays.asList("g1", "g2"), Collections.singletonList("g3")));
+        Manifests.write(new File(folder, "second.xlsx"), Collections.singletonList(Arrays.asList("g4", "g5")));
+        final Properties properties = Manifests.properties(new File(folder, "*.xlsx"), source, target);
+        properties.setProperty(PropKeysEnum.SHEET_THREADS.name(), "3");
+
+        new ProcessExecutor(properties).readTheExcelInputFile();
+
+        assertEquals(Arrays.asList("g1-0.mov", "g1-1.mov", "g2-0.mov", "g2-1.mov", "g3-0.mov", "g3-1.mov", "g4-0.mov", "g4-1.mov",
+            "g5-0.mov", "g5-1.mov"), Manifests.files(target));
+    }
+
+    @Test
+    void noMatchingWorkbookFails() throws IOException {
+        final Properties properties = Manifests.properties(new File(folder, "*.xlsx"), new File(folder, "src"), new File(folder, "target"));
+        final IOException e = assertThrows(IOException.class, () -> new ProcessExecutor(properties).readTheExcelInputFile());
+        assertTrue(e.getMessage().startsWith("No manifest workbook found"));
+    }
+
+    @Test
+    void unreadableWorkbookFailsTheRun() throws IOException {
+        final File manifest = new File(folder, "broken.xlsx");
+        Files.write(manifest.toPath(), "not a workbook".getBytes());
+        final Properties properties = Manifests.properties(manifest, new File(folder, "src"), new File(folder, "target"));
+        assertThrows(CompletionException.class, () -> new ProcessExecutor(properties).readTheExcelInputFile());
+        assertEquals(Collections.emptyList(), Manifests.files(new File(folder, "target")));
+    }
+}
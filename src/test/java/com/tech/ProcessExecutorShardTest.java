@@ -0,0 +1,79 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessExecutorShardTest {
+
+    @TempDir
+    File folder;
+
+    /**
+     * Each shard reads its own copy of the manifest, so the checkpoint of one shard can not skip rows of the other.
+     */
+    private List<String> runShard(final File manifest, final File source, final int shardIndex) throws IOException {
+        final File shardManifest = new File(folder, "shard" + shardIndex + ".xlsx");
+        Files.copy(manifest.toPath(), shardManifest.toPath());
+        final File target = new File(folder, "target" + shardIndex);
+        final Properties properties = Manifests.properties(shardManifest, source, target);
+        properties.setProperty(PropKeysEnum.SHARD_COUNT.name(), "2");
+        properties.setProperty(PropKeysEnum.SHARD_INDEX.name(), shardIndex + "");
+        new ProcessExecutor(properties).readTheExcelInputFile();
+        return Manifests.files(target);
+    }
+
+    @Test
+    void shardsSplitTheRowsWithoutOverlap() throws IOException {
+        final File source = new File(folder, "src");
+        final List<String[]> rows = new ArrayList<>();
+        final Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 12; i++) {
+            Manifests.source(source, "g" + i, 1);
+            rows.add(Manifests.row("g" + i, "e" + i));
+            expected.add("g" + i + "-0.mov");
+        }
+        final File manifest = Manifests.writeRows(new File(folder, "in.xlsx"), Collections.singletonList(rows));
+
+        final List<String> first = runShard(manifest, source, 0);
+        final List<String> second = runShard(manifest, source, 1);
+
+        assertFalse(first.isEmpty());
+        assertFalse(second.isEmpty());
+        final Set<String> all = new HashSet<>(first);
+        all.addAll(second);
+        assertEquals(expected, all);
+        assertEquals(expected.size(), first.size() + second.size());
+    }
+
+    @Test
+    void rowsOfOneTargetFolderStayInOneShard() throws IOException {
+        // Different guids planned into one episode folder, split across shards their name collisions would be missed.
+        final File source = new File(folder, "src");
+        final List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Manifests.source(source, "g" + i, 1);
+            rows.add(Manifests.row("g" + i, "shared"));
+        }
+        final File manifest = Manifests.writeRows(new File(folder, "in.xlsx"), Collections.singletonList(rows));
+
+        final List<String> first = runShard(manifest, source, 0);
+        final List<String> second = runShard(manifest, source, 1);
+
+        assertTrue(first.isEmpty() || second.isEmpty());
+        assertEquals(6, first.size() + second.size());
+    }
+}
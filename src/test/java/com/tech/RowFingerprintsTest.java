@@ -0,0 +1,103 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowFingerprintsTest {
+
+    @TempDir
+    File folder;
+
+    @Test
+    void fingerprintCoversGuidFolderAndOccurrence() {
+        final long fingerprint = RowFingerprints.fingerprint("guid1", "/target/Show/S01", 0);
+
+        assertEquals(fingerprint, RowFingerprints.fingerprint("guid1", "/target/Show/S01", 0));
+        assertNotEquals(fingerprint, RowFingerprints.fingerprint("guid1", "/target/Show/S02", 0));
+        assertNotEquals(fingerprint, RowFingerprints.fingerprint("guid2", "/target/Show/S01", 0));
+        assertNotEquals(fingerprint, RowFingerprints.fingerprint("guid1", "/target/Show/S01", 1));
+    }
+
+    @Test
+    void recordsSurviveAReload() throws IOException {
+        final File file = new File(folder, "fingerprints/sheet.tsv");
+        final RowFingerprints fingerprints = RowFingerprints.load(file);
+        final RowFingerprints.Record withFiles = new RowFingerprints.Record(RowFingerprints.fingerprint("guid1", "/target/a", 0), "guid1", "/target/a")
+            .withTargetFiles(Arrays.asList("video.mp4", "video.srt"));
+        final RowFingerprints.Record withoutFiles = new RowFingerprints.Record(RowFingerprints.fingerprint("guid2", "/target/b", 0), "guid2", "/target/b");
+        fingerprints.add(withFiles);
+        fingerprints.add(withoutFiles);
+
+        final RowFingerprints loaded = RowFingerprints.load(file);
+
+        assertTrue(loaded.contains(withFiles.getFingerprint()));
+        assertTrue(loaded.contains(withoutFiles.getFingerprint()));
+        final Map<String, Deque<RowFingerprints.Record>> stale = loaded.staleRecordsByGuid(Collections.emptyList());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("video.mp4", "video.srt")), stale.get("guid1").getFirst().getTargetFiles());
+        assertEquals("/target/a", stale.get("guid1").getFirst().getTargetFolder());
+        assertTrue(stale.get("guid2").getFirst().getTargetFiles().isEmpty());
+    }
+
+    @Test
+    void staleRecordsAreTheOnesNoCurrentRowHasLatestFirst() throws IOException {
+        final RowFingerprints fingerprints = RowFingerprints.load(new File(folder, "sheet.tsv"));
+        final RowFingerprints.Record older = new RowFingerprints.Record(RowFingerprints.fingerprint("guid1", "/target/a", 0), "guid1", "/target/a");
+        final RowFingerprints.Record newer = new RowFingerprints.Record(RowFingerprints.fingerprint("guid1", "/target/b", 0), "guid1", "/target/b");
+        final RowFingerprints.Record current = new RowFingerprints.Record(RowFingerprints.fingerprint("guid2", "/target/c", 0), "guid2", "/target/c");
+        fingerprints.add(older);
+        fingerprints.add(newer);
+        fingerprints.add(current);
+
+        final Map<String, Deque<RowFingerprints.Record>> stale = fingerprints.staleRecordsByGuid(Collections.singletonList(current.getFingerprint()));
+
+        assertEquals(Collections.singleton("guid1"), stale.keySet());
+        assertEquals("/target/b", stale.get("guid1").getFirst().getTargetFolder());
+        assertEquals("/target/a", stale.get("guid1").getLast().getTargetFolder());
+    }
+
+    @Test
+    void removedRecordsAreCompactedAway() throws IOException {
+        final File file = new File(folder, "sheet.tsv");
+        final RowFingerprints fingerprints = RowFingerprints.load(file);
+        final RowFingerprints.Record kept = new RowFingerprints.Record(1, "guid1", "/target/a");
+        final RowFingerprints.Record removed = new RowFingerprints.Record(2, "guid2", "/target/b");
+        fingerprints.add(kept);
+        fingerprints.add(removed);
+        fingerprints.remove(removed);
+        assertEquals(3, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+
+        final RowFingerprints loaded = RowFingerprints.load(file);
+
+        assertTrue(loaded.contains(1));
+        assertFalse(loaded.contains(2));
+        assertEquals(Collections.singletonList("1\tguid1\t/target/a\t"), Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void unreadableLinesAreSkipped() throws IOException {
+        final File file = new File(folder, "sheet.tsv");
+        // Written by an older version without file names, then lines torn or damaged.
+        Files.write(file.toPath(), Arrays.asList("a1\tguid1\t/target/a", "zz\tguid2\t/target/b", "b2\tguid3", "-"), StandardCharsets.UTF_8);
+
+        final RowFingerprints loaded = RowFingerprints.load(file);
+
+        assertTrue(loaded.contains(0xa1));
+        assertEquals(Collections.singleton("guid1"), loaded.staleRecordsByGuid(Collections.emptyList()).keySet());
+        assertEquals(Collections.singletonList("a1\tguid1\t/target/a\t"), Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,94 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RowProfileReportTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    File folder;
+
+    private static List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void rowLineHoldsItsFilesTimesAndSlowestFile() throws IOException {
+        final RowProfileReport report = new RowProfileReport(folder, false);
+        final File slowest = new File(folder, "target/video.mp4");
+        final RowProfileReport.RowProfile row = report.startRow("shows, 1990s.xlsx", "Sheet1", 3, "guid1");
+        row.planned(MB);
+        row.planned(MB);
+        row.batchCopied(TimeUnit.SECONDS.toNanos(1));
+        row.fileDone(slowest, MB, TimeUnit.MILLISECONDS.toNanos(600), false);
+        row.fileDone(new File(folder, "target/video.SRT"), MB, TimeUnit.MILLISECONDS.toNanos(400), true);
+        row.complete();
+
+        report.completeRow(row);
+        report.completeRow(report.startRow("shows, 1990s.xlsx", "Sheet1", 4, null));
+
+        final List<String> lines = lines(new File(folder, "row-profile.csv"));
+        assertEquals(3, lines.size());
+        assertEquals("manifest,sheet,row,guid,scan_ms,files,bytes,copy_ms,mb_per_s,slowest_file,slowest_file_ms,failures", lines.get(0));
+        final String[] fields = lines.get(1).substring(lines.get(1).indexOf("\",") + 2).split(",");
+        assertEquals("\"shows, 1990s.xlsx\"", lines.get(1).substring(0, lines.get(1).indexOf("\",") + 1));
+        assertEquals(Arrays.asList("Sheet1", "3", "guid1"), Arrays.asList(fields).subList(0, 3));
+        assertEquals(Arrays.asList("2", String.valueOf(2 * MB), "1000", "2.00", slowest.getPath(), "600", "1"),
+            Arrays.asList(fields).subList(4, 11));
+        assertEquals("4,,0,0,0,0,0,,0,0", lines.get(2).substring(lines.get(2).indexOf("Sheet1,") + "Sheet1,".length()));
+    }
+
+    @Test
+    void extensionReportSumsFilesByExtension() throws IOException {
+        final RowProfileReport report = new RowProfileReport(folder, false);
+        final RowProfileReport.RowProfile row = report.startRow("manifest.xlsx", "Sheet1", 1, "guid1");
+        row.fileDone(new File(folder, "a.mp4"), 2 * MB, TimeUnit.MILLISECONDS.toNanos(500), false);
+        row.fileDone(new File(folder, "b.MP4"), 2 * MB, TimeUnit.MILLISECONDS.toNanos(1500), false);
+        row.fileDone(new File(folder, "c.srt"), 10, TimeUnit.MILLISECONDS.toNanos(5), true);
+
+        report.flush();
+
+        assertEquals(Arrays.asList("extension,files,bytes,copy_ms,mb_per_s,slowest_file_ms,failures",
+            "mp4,2," + 4 * MB + ",2000,2.00,1500,0", "srt,1,10,5,0.00,5,1"), lines(new File(folder, "extension-profile.csv")));
+    }
+
+    @Test
+    void unwritableReportFolderDoesNotFailTheRun() throws IOException {
+        // A file where the report folder has to be.
+        final File reportFolder = new File(folder, "reports");
+        Files.write(reportFolder.toPath(), new byte[0]);
+        final RowProfileReport report = new RowProfileReport(reportFolder, false);
+        final RowProfileReport.RowProfile row = report.startRow("manifest.xlsx", "Sheet1", 1, "guid1");
+        row.fileDone(new File(folder, "a.mp4"), 10, 1, false);
+        row.complete();
+
+        report.completeRow(row);
+        report.flush();
+
+        assertFalse(new File(reportFolder, "extension-profile.csv").exists());
+    }
+
+    @Test
+    void unwritableRowReportFailsAFailFastRun() throws IOException {
+        final File reportFolder = new File(folder, "reports");
+        Files.write(reportFolder.toPath(), new byte[0]);
+        final RowProfileReport report = new RowProfileReport(reportFolder, true);
+        final RowProfileReport.RowProfile row = report.startRow("manifest.xlsx", "Sheet1", 1, "guid1");
+
+        assertThrows(RuntimeException.class, () -> report.completeRow(row));
+    }
+}
@@ -0,0 +1,115 @@
+package com.tech;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunControlTest {
+
+    private final ThreadPoolExecutor copyPool = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    private final ExecutorService delegate = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        copyPool.shutdownNow();
+        delegate.shutdownNow();
+    }
+
+    @Test
+    void pauseHoldsCopiesOfDerivedSettingsUntilResumed() throws Exception {
+        final CopySettings settings = new CopySettings(4096, false, false);
+        final CopySettings retrySettings = settings.withDurabilitySync(false, new DurabilitySync(SyncPolicy.NONE, 0, 0, false));
+        final RunControl runControl = new RunControl(settings, copyPool, null, Collections::emptyList);
+
+        runControl.pause();
+        assertTrue(runControl.isPaused());
+        assertTrue(retrySettings.isPaused());
+        final CompletableFuture<Void> copy = CompletableFuture.runAsync(retrySettings::awaitResumed, delegate);
+        Thread.sleep(50);
+        assertFalse(copy.isDone());
+
+        runControl.resume();
+        copy.get(10, TimeUnit.SECONDS);
+        assertFalse(retrySettings.isPaused());
+    }
+
+    @Test
+    void tuningAppliesToDerivedSettings() {
+        final CopySettings settings = new CopySettings(4096, false, false);
+        final CopySettings retrySettings = settings.withDurabilitySync(false, new DurabilitySync(SyncPolicy.NONE, 0, 0, false));
+        final RunControl runControl = new RunControl(settings, copyPool, null, Collections::emptyList);
+
+        runControl.setCopyBlockSize(1 << 20);
+        runControl.setUseStreamCopy(true);
+
+        assertEquals(1 << 20, runControl.getCopyBlockSize());
+        assertEquals(1 << 20, retrySettings.getCopyBlockSize());
+        assertTrue(retrySettings.isUseStreamCopy());
+        assertThrows(IllegalArgumentException.class, () -> runControl.setCopyBlockSize(0));
+        assertEquals(1 << 20, retrySettings.getCopyBlockSize());
+    }
+
+    @Test
+    void copyThreadsResizeThePool() {
+        final RunControl runControl = new RunControl(new CopySettings(4096, false, false), copyPool, null, Collections::emptyList);
+
+        runControl.setCopyThreads(8);
+        assertEquals(8, runControl.getCopyThreads());
+        assertEquals(8, copyPool.getCorePoolSize());
+        runControl.setCopyThreads(2);
+        assertEquals(2, copyPool.getMaximumPoolSize());
+        assertThrows(IllegalArgumentException.class, () -> runControl.setCopyThreads(0));
+        assertEquals(2, runControl.getCopyThreads());
+    }
+
+    @Test
+    void copyThreadsOnVirtualThreadsResizeThePermits() {
+        final BoundedExecutorService virtualCopies = new BoundedExecutorService(delegate, 4);
+        final RunControl runControl = new RunControl(new CopySettings(4096, false, false), null, virtualCopies, Collections::emptyList);
+
+        runControl.setCopyThreads(6);
+        assertEquals(6, runControl.getCopyThreads());
+        assertEquals(6, virtualCopies.getPermits().availablePermits());
+        runControl.setCopyThreads(1);
+        assertEquals(1, virtualCopies.getPermits().availablePermits());
+        assertThrows(IllegalArgumentException.class, () -> runControl.setCopyThreads(-1));
+        assertEquals(1, virtualCopies.getMaxPermits());
+    }
+
+    @Test
+    void registeredBeanShowsTheRun() throws Exception {
+        final RunControl runControl = new RunControl(new CopySettings(4096, false, false), copyPool, null,
+            () -> Arrays.asList("manifest.xlsx/Sheet1/row 3"));
+        final RunControl secondRun = new RunControl(new CopySettings(4096, false, false), copyPool, null, Collections::emptyList);
+        final ObjectName objectName = new ObjectName("com.tech:type=DataOrganizer");
+        runControl.register();
+        try {
+            assertEquals(4, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "CopyThreads"));
+            assertArrayEquals(new String[]{"manifest.xlsx/Sheet1/row 3"},
+                (String[]) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "CurrentRows"));
+            // Already registered, the second run goes on without it.
+            secondRun.register();
+            secondRun.unregister();
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        } finally {
+            runControl.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
@@ -0,0 +1,107 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ScanCacheTest {
+
+    // Directories changed within a moment of the scan are not trusted, the tree is made an hour old.
+    private static final FileTime HOUR_AGO = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1));
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Sizes of the visited files by their path relative to the root.
+     */
+    private static Map<String, Long> walk(ScanCache scanCache, Path root, String excluded) throws IOException {
+        final Map<String, Long> sizes = new HashMap<>();
+        scanCache.walk(root, new ParallelTreeScanner.Visitor() {
+            @Override
+            public boolean preVisitDirectory(Path dir) {
+                return !dir.getFileName().toString().equals(excluded);
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                sizes.put(root.relativize(file).toString().replace(File.separatorChar, '/'), attrs.size());
+            }
+        });
+        return sizes;
+    }
+
+    /**
+     * Sets back the time of the directories, like an unchanged directory keeps its time.
+     */
+    private static void age(Path... dirs) throws IOException {
+        for (final Path dir : dirs) {
+            Files.setLastModifiedTime(dir, HOUR_AGO);
+        }
+    }
+
+    private Path tree() throws IOException {
+        final Path root = folder.resolve("source/guid1");
+        Files.createDirectories(root.resolve("extras"));
+        Files.write(root.resolve("video.mp4"), new byte[10]);
+        Files.write(root.resolve("extras/trailer.mp4"), new byte[20]);
+        age(root, root.resolve("extras"));
+        return root;
+    }
+
+    @Test
+    void unchangedDirectoriesAreServedFromTheCache() throws IOException {
+        final Path root = tree();
+        final ScanCache scanCache = new ScanCache(folder.resolve("cache").toFile());
+        assertEquals(10L, walk(scanCache, root, null).get("video.mp4"));
+
+        // Changed in place, the folder keeps its time and the cached size is served.
+        Files.write(root.resolve("video.mp4"), new byte[15]);
+        Files.write(root.resolve("extras/poster.jpg"), new byte[5]);
+        final Map<String, Long> sizes = walk(scanCache, root, null);
+
+        assertEquals(10L, sizes.get("video.mp4"));
+        assertEquals(20L, sizes.get("extras/trailer.mp4"));
+        assertEquals(5L, sizes.get("extras/poster.jpg"));
+    }
+
+    @Test
+    void excludedDirectoryIsScannedOnceNoLongerExcluded() throws IOException {
+        final Path root = tree();
+        final ScanCache scanCache = new ScanCache(folder.resolve("cache").toFile());
+        assertEquals(1, walk(scanCache, root, "extras").size());
+
+        assertEquals(2, walk(scanCache, root, null).size());
+    }
+
+    @Test
+    void unreadableCacheIsIgnoredAndWrittenAgain() throws IOException {
+        final Path root = tree();
+        final File cacheFolder = folder.resolve("cache").toFile();
+        final ScanCache scanCache = new ScanCache(cacheFolder);
+        walk(scanCache, root, null);
+        final File[] cacheFiles = cacheFolder.listFiles();
+        assertNotNull(cacheFiles);
+        assertEquals(1, cacheFiles.length);
+
+        Files.write(cacheFiles[0].toPath(), new byte[]{0x44, 0x4F, 0x53, 0x43, 0, 0, 0, 1, 0x7F});
+        Files.write(root.resolve("video.mp4"), new byte[15]);
+
+        // Listed again, so the new size is seen.
+        assertEquals(15L, walk(scanCache, root, null).get("video.mp4"));
+        Files.write(root.resolve("video.mp4"), new byte[30]);
+        assertEquals(15L, walk(scanCache, root, null).get("video.mp4"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SizeAwareTaskPlannerTest {
+
+    @TempDir
+    File folder;
+
+    private CopyFileTask task(String name, long length) {
+        return new CopyFileTask(new File(folder, name), new File(folder, name + ".copy"), length, TransferMode.COPY,
+            new CopySettings(4096, true, false));
+    }
+
+    @Test
+    void batchesSmallFilesAndOrdersLargestFirst() {
+        final List<CopyFileTask> window = Arrays.asList(task("a", 10), task("big", 5000), task("b", 20), task("c", 30),
+            task("huge", 9000), task("d", 40));
+        final List<CopyTask> planned = new SizeAwareTaskPlanner(100, 3, false).plan(window);
+
+        assertEquals(4, planned.size());
+        assertEquals(9000, planned.get(0).getLength());
+        assertEquals(5000, planned.get(1).getLength());
+        // a, b, c fill one batch, d is left alone and stays a single task.
+        assertInstanceOf(BatchCopyTask.class, planned.get(2));
+        assertEquals(3, ((BatchCopyTask) planned.get(2)).size());
+        assertEquals(60, planned.get(2).getLength());
+        assertInstanceOf(CopyFileTask.class, planned.get(3));
+        assertEquals(40, planned.get(3).getLength());
+    }
+
+    @Test
+    void zeroThresholdDisablesBatching() {
+        final List<CopyFileTask> window = Arrays.asList(task("a", 1), task("b", 3), task("c", 2));
+        final List<CopyTask> planned = new SizeAwareTaskPlanner(0, 100, false).plan(window);
+
+        final List<Long> lengths = new ArrayList<>();
+        for (final CopyTask task : planned) {
+            assertInstanceOf(CopyFileTask.class, task);
+            lengths.add(task.getLength());
+        }
+        assertEquals(Arrays.asList(3L, 2L, 1L), lengths);
+    }
+
+    @Test
+    void batchCopiesTheRestWhenOneFileFails() throws IOException {
+        final File good = new File(folder, "good.txt");
+        final File other = new File(folder, "other.txt");
+        Files.write(good.toPath(), "good".getBytes());
+        Files.write(other.toPath(), "other".getBytes());
+        final File target = new File(folder, "target");
+        assertTrue(target.mkdirs());
+        final CopySettings settings = new CopySettings(4096, true, false);
+        final BatchCopyTask batch = new BatchCopyTask(Arrays.asList(
+            new CopyFileTask(good, new File(target, "good.txt"), 4, TransferMode.COPY, settings),
+            new CopyFileTask(new File(folder, "missing.txt"), new File(target, "missing.txt"), 0, TransferMode.COPY, settings),
+            new CopyFileTask(other, new File(target, "other.txt"), 5, TransferMode.COPY, settings)), false);
+
+        batch.run();
+
+        assertArrayEquals("good".getBytes(), Files.readAllBytes(new File(target, "good.txt").toPath()));
+        assertArrayEquals("other".getBytes(), Files.readAllBytes(new File(target, "other.txt").toPath()));
+        assertFalse(new File(target, "missing.txt").exists());
+        final String failedLog = new String(Files.readAllBytes(DataOrganizerApplication.getFailedFileLogPath().toPath()));
+        assertTrue(failedLog.contains(new File(folder, "missing.txt").getPath()));
+    }
+}
@@ -0,0 +1,156 @@
+package com.tech;
+
+import com.tech.utils.PathTable;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmallFilePackerTest {
+
+    @TempDir
+    File folder;
+
+    private final PathTable pathTable = new PathTable();
+
+    private SmallFilePacker.PackedFile packedFile(String name, String content) throws IOException {
+        final File source = new File(folder, "source/" + name);
+        Files.createDirectories(source.getParentFile().toPath());
+        if (content != null) {
+            Files.write(source.toPath(), content.getBytes());
+        }
+        return new SmallFilePacker.PackedFile(pathTable, pathTable.intern(source), pathTable.intern(new File(folder, "target/" + name)),
+            content == null ? 0 : content.length());
+    }
+
+    private static void pack(SmallFilePacker packer, File archive, List<SmallFilePacker.PackedFile> files) throws Exception {
+        try {
+            packer.pack(archive, files).get(10, TimeUnit.SECONDS);
+        } finally {
+            packer.shutdown();
+        }
+    }
+
+    /**
+     * Checks every index line points at the data of its entry in the archive.
+     */
+    private static List<String> assertIndexMatches(File archive) throws IOException {
+        final byte[] archiveBytes = Files.readAllBytes(archive.toPath());
+        final List<String> names = new ArrayList<>();
+        for (final String line : Files.readAllLines(new File(archive.getPath() + ".index").toPath())) {
+            final String[] fields = line.split("\t");
+            final int offset = Integer.parseInt(fields[1]);
+            final int length = Integer.parseInt(fields[2]);
+            final byte[] source = Files.readAllBytes(new File(fields[3]).toPath());
+            assertArrayEquals(source, Arrays.copyOfRange(archiveBytes, offset, offset + length));
+            names.add(fields[0]);
+        }
+        return names;
+    }
+
+    @Test
+    void zipArchiveHoldsEveryFileAtItsIndexedOffset() throws Exception {
+        final List<SmallFilePacker.PackedFile> files = Arrays.asList(packedFile("a.srt", "first"), packedFile("b.nfo", "second file"),
+            packedFile("c.jpg", ""));
+        final File archive = new File(folder, "target/" + SmallFilePacker.ARCHIVE_NAME + PackFormat.ZIP.getExtension());
+        Files.createDirectories(archive.getParentFile().toPath());
+
+        pack(new SmallFilePacker(PackFormat.ZIP, new CopySettings(4096, true, false)), archive, files);
+
+        assertEquals(Arrays.asList("a.srt", "b.nfo", "c.jpg"), assertIndexMatches(archive));
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry("b.nfo"))) {
+                assertArrayEquals("second file".getBytes(), readAll(inputStream));
+            }
+        }
+    }
+
+    @Test
+    void tarArchiveHoldsEveryFileAtItsIndexedOffset() throws Exception {
+        final List<SmallFilePacker.PackedFile> files = Arrays.asList(packedFile("a.srt", "first"), packedFile("b.nfo", "second file"));
+        final File archive = new File(folder, "target/" + SmallFilePacker.ARCHIVE_NAME + PackFormat.TAR.getExtension());
+        Files.createDirectories(archive.getParentFile().toPath());
+
+        pack(new SmallFilePacker(PackFormat.TAR, new CopySettings(4096, true, false)), archive, files);
+
+        assertEquals(Arrays.asList("a.srt", "b.nfo"), assertIndexMatches(archive));
+        try (TarArchiveInputStream inputStream = new TarArchiveInputStream(Files.newInputStream(archive.toPath()))) {
+            final TarArchiveEntry entry = inputStream.getNextTarEntry();
+            assertNotNull(entry);
+            assertEquals("a.srt", entry.getName());
+            assertArrayEquals("first".getBytes(), readAll(inputStream));
+        }
+    }
+
+    @Test
+    void unreadableSourceIsLoggedAsFailedAndLeftOut() throws Exception {
+        final SmallFilePacker.PackedFile missing = packedFile("missing.srt", null);
+        final List<SmallFilePacker.PackedFile> files = Arrays.asList(packedFile("a.srt", "first"), missing);
+        final File archive = new File(folder, "target/" + SmallFilePacker.ARCHIVE_NAME + PackFormat.ZIP.getExtension());
+        Files.createDirectories(archive.getParentFile().toPath());
+
+        pack(new SmallFilePacker(PackFormat.ZIP, new CopySettings(4096, true, false)), archive, files);
+
+        assertEquals(Collections.singletonList("a.srt"), assertIndexMatches(archive));
+        final String failedLog = new String(Files.readAllBytes(DataOrganizerApplication.getFailedFileLogPath().toPath()));
+        assertTrue(failedLog.contains(missing.source().getPath() + "->" + missing.target().getPath()));
+    }
+
+    @Test
+    void archiveThatCannotBeWrittenLeavesNoIndex() throws Exception {
+        final List<SmallFilePacker.PackedFile> files = Collections.singletonList(packedFile("a.srt", "first"));
+        // The target folder was never created.
+        final File archive = new File(folder, "missing/" + SmallFilePacker.ARCHIVE_NAME + PackFormat.TAR.getExtension());
+
+        pack(new SmallFilePacker(PackFormat.TAR, new CopySettings(4096, true, false)), archive, files);
+
+        assertFalse(archive.exists());
+        assertFalse(new File(archive.getPath() + ".index").exists());
+    }
+
+    @Test
+    void pausedSettingsHoldThePacking() throws Exception {
+        final CopySettings settings = new CopySettings(4096, true, false);
+        final List<SmallFilePacker.PackedFile> files = Collections.singletonList(packedFile("a.srt", "first"));
+        final File archive = new File(folder, "target/" + SmallFilePacker.ARCHIVE_NAME + PackFormat.ZIP.getExtension());
+        Files.createDirectories(archive.getParentFile().toPath());
+        final SmallFilePacker packer = new SmallFilePacker(PackFormat.ZIP, settings);
+
+        settings.pause();
+        final CompletableFuture<Void> packing = packer.pack(archive, files);
+        Thread.sleep(100);
+        assertFalse(packing.isDone());
+        settings.resume();
+        packing.get(10, TimeUnit.SECONDS);
+        packer.shutdown();
+        assertEquals(Collections.singletonList("a.srt"), assertIndexMatches(archive));
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        final byte[] buffer = new byte[4096];
+        int total = 0;
+        int read;
+        while ((read = inputStream.read(buffer, total, buffer.length - total)) > 0) {
+            total += read;
+        }
+        return Arrays.copyOf(buffer, total);
+    }
+}
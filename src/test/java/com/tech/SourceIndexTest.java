@@ -0,0 +1,93 @@
+package com.tech;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SourceIndexTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @TempDir
+    File folder;
+
+    private File sourceFolder(String... names) throws IOException {
+        final File sourceFolder = new File(folder, "source");
+        for (final String name : names) {
+            Files.createDirectories(new File(sourceFolder, name).toPath());
+        }
+        return sourceFolder;
+    }
+
+    @Test
+    void findsEveryListedName() throws IOException {
+        final File sourceFolder = sourceFolder();
+        for (int i = 0; i < 2000; i++) {
+            Files.createDirectories(new File(sourceFolder, "guid" + i).toPath());
+        }
+        final SourceIndex sourceIndex = new SourceIndex(sourceFolder, NEVER);
+
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(sourceIndex.contains("guid" + i));
+        }
+        assertFalse(sourceIndex.contains("guid2000"));
+    }
+
+    @Test
+    void newFoldersAreFoundOnceTheIndexIsRefreshed() throws IOException {
+        final File sourceFolder = sourceFolder("guid1");
+        final SourceIndex throttled = new SourceIndex(sourceFolder, NEVER);
+        final SourceIndex relisting = new SourceIndex(sourceFolder, 0);
+        assertTrue(throttled.contains("guid1"));
+        assertTrue(relisting.contains("guid1"));
+
+        Files.createDirectories(new File(sourceFolder, "guid2").toPath());
+        Files.createDirectories(new File(sourceFolder, "guid3").toPath());
+
+        // Listed again at most once per interval.
+        assertFalse(throttled.contains("guid2"));
+        throttled.add("guid2");
+        assertTrue(throttled.contains("guid2"));
+        assertFalse(throttled.contains("guid3"));
+        assertTrue(relisting.contains("guid3"));
+    }
+
+    @Test
+    void namesWithSeparatorsAreCheckedOnTheFileSystem() throws IOException {
+        final File sourceFolder = sourceFolder("guid1/extras");
+        final SourceIndex sourceIndex = new SourceIndex(sourceFolder, NEVER);
+
+        assertTrue(sourceIndex.contains("guid1/extras"));
+        assertFalse(sourceIndex.contains("guid1/missing"));
+    }
+
+    @Test
+    void failedListingChecksMissingNamesOnTheFileSystem() throws IOException {
+        final File sourceFolder = new File(folder, "source");
+        final SourceIndex sourceIndex = new SourceIndex(sourceFolder, NEVER);
+        assertFalse(sourceIndex.contains("guid1"));
+
+        Files.createDirectories(new File(sourceFolder, "guid1").toPath());
+
+        assertTrue(sourceIndex.contains("guid1"));
+    }
+
+    @Test
+    void failedRefreshKeepsThePreviousNames() throws IOException {
+        final File sourceFolder = sourceFolder("guid1");
+        final SourceIndex sourceIndex = new SourceIndex(sourceFolder, NEVER);
+        assertTrue(sourceIndex.contains("guid1"));
+
+        Files.move(sourceFolder.toPath(), new File(folder, "unmounted").toPath());
+        sourceIndex.refresh();
+
+        assertTrue(sourceIndex.contains("guid1"));
+        assertFalse(sourceIndex.contains("guid2"));
+    }
+}
@@ -0,0 +1,155 @@
+package com.tech;
+
+import com.tech.utils.StatsUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerificationStageTest {
+
+    @TempDir
+    File folder;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final AtomicInteger recopies = new AtomicInteger();
+    private final CopySettings settings = new CopySettings(4096, true, false);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private VerificationStage stage(String policy, BiFunction<File, File, CompletableFuture<Void>> recopier) {
+        final VerificationStage stage = new VerificationStage(executor, VerificationPolicy.parse(policy), "SHA-256", 4096, null, 2,
+            false, (source, target) -> {
+            recopies.incrementAndGet();
+            return recopier.apply(source, target);
+        });
+        settings.addListener(stage);
+        return stage;
+    }
+
+    private CompletableFuture<Void> recopy(File source, File target) {
+        return CompletableFuture.runAsync(() -> {
+            final CopyFileTask task = new CopyFileTask(source, target, -1, TransferMode.COPY, settings);
+            task.setRecopy(true);
+            task.run();
+        });
+    }
+
+    private File write(String name, String content) throws IOException {
+        final File file = new File(folder, name);
+        Files.write(file.toPath(), content.getBytes());
+        return file;
+    }
+
+    @Test
+    void parsesPolicies() {
+        assertFalse(VerificationPolicy.parse(null).isEnabled());
+        assertTrue(VerificationPolicy.parse("all").shouldVerify(0));
+        assertTrue(VerificationPolicy.parse("above:1 KB").shouldVerify(2048));
+        assertFalse(VerificationPolicy.parse("above:1 KB").shouldVerify(512));
+        assertTrue(VerificationPolicy.parse("below:1 KB").shouldVerify(512));
+        assertFalse(VerificationPolicy.parse("sample:0%").shouldVerify(512));
+        assertTrue(VerificationPolicy.parse("sample:100").shouldVerify(512));
+    }
+
+    @Test
+    void rejectsInvalidPolicies() {
+        assertThrows(IllegalArgumentException.class, () -> VerificationPolicy.parse("above"));
+        assertThrows(IllegalArgumentException.class, () -> VerificationPolicy.parse("sometimes"));
+    }
+
+    @Test
+    void matchingCopyIsNotRecopied() throws Exception {
+        final VerificationStage stage = stage("all", this::recopy);
+        final File source = write("same.txt", "content");
+        new CopyFileTask(source, new File(folder, "same-target.txt"), -1, TransferMode.COPY, settings).run();
+        stage.awaitCompletion();
+        assertEquals(0, recopies.get());
+    }
+
+    @Test
+    void corruptTargetIsRecopiedOnceAndCountedOnce() throws Exception {
+        final VerificationStage stage = stage("all", this::recopy);
+        final File source = write("corrupt.txt", "content");
+        final File target = write("corrupt-target.txt", "CONTENT");
+        final CopyFileTask task = new CopyFileTask(source, target, -1, TransferMode.COPY, settings);
+        final int copied = StatsUtil.getInstance().getFilesCopied();
+
+        // As if the copy had written the wrong bytes.
+        stage.onTransferred(task, TransferMode.COPY, source.length());
+        stage.awaitCompletion();
+
+        assertEquals(1, recopies.get());
+        assertArrayEquals("content".getBytes(), Files.readAllBytes(target.toPath()));
+        assertEquals(copied, StatsUtil.getInstance().getFilesCopied());
+        final String verifyFailedLog = new String(Files.readAllBytes(DataOrganizerApplication.getVerifyFailedLogPath().toPath()));
+        assertTrue(verifyFailedLog.contains(source.getPath() + "->" + target.getPath()));
+    }
+
+    @Test
+    void givesUpAfterMaxRecopies() throws Exception {
+        final VerificationStage stage = stage("all", (source, target) -> {
+            // A recopy that keeps writing the wrong bytes.
+            final CopyFileTask task = new CopyFileTask(source, target, -1, TransferMode.COPY, settings);
+            return CompletableFuture.runAsync(() -> settings.notifyTransferred(task, TransferMode.COPY, source.length()));
+        });
+        final File source = write("flaky.txt", "content");
+        final File target = write("flaky-target.txt", "CONTENT");
+
+        final int copied = StatsUtil.getInstance().getFilesCopied();
+        final int failed = StatsUtil.getInstance().getFilesFailed();
+
+        stage.onTransferred(new CopyFileTask(source, target, -1, TransferMode.COPY, settings), TransferMode.COPY, source.length());
+        stage.awaitCompletion();
+
+        assertEquals(2, recopies.get());
+        assertEquals(copied - 1, StatsUtil.getInstance().getFilesCopied());
+        assertEquals(failed + 1, StatsUtil.getInstance().getFilesFailed());
+        final String failedLog = new String(Files.readAllBytes(DataOrganizerApplication.getFailedFileLogPath().toPath()));
+        assertTrue(failedLog.contains(source.getPath() + "->" + target.getPath()));
+    }
+
+    @Test
+    void requestedMoveIsNotVerified() throws Exception {
+        final VerificationStage stage = stage("all", this::recopy);
+        final File source = write("moved.txt", "content");
+        final File target = write("moved-target.txt", "CONTENT");
+
+        // A move that fell back to copy and delete.
+        stage.onTransferred(new CopyFileTask(source, target, -1, TransferMode.MOVE, settings), TransferMode.COPY, source.length());
+        stage.awaitCompletion();
+
+        assertEquals(0, recopies.get());
+        assertArrayEquals("CONTENT".getBytes(), Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    void targetWithoutSourceIsKept() throws Exception {
+        final VerificationStage stage = stage("all", this::recopy);
+        final File target = write("orphan-target.txt", "content");
+
+        stage.onTransferred(new CopyFileTask(new File(folder, "gone.txt"), target, -1, TransferMode.COPY, settings),
+            TransferMode.COPY, target.length());
+        stage.awaitCompletion();
+
+        assertEquals(0, recopies.get());
+        assertTrue(target.exists());
+    }
+}
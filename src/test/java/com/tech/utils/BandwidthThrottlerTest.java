@@ -0,0 +1,66 @@
+package com.tech.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BandwidthThrottlerTest {
+
+    @Test
+    void parsesRatesWithAndWithoutUnit() {
+        assertEquals(200L * 1024 * 1024, BandwidthThrottler.parseRate("200 MB"));
+        assertEquals(200L * 1024 * 1024, BandwidthThrottler.parseRate("200MB/s"));
+        assertEquals(209715200L, BandwidthThrottler.parseRate("209715200"));
+        assertEquals(0, BandwidthThrottler.parseRate(null));
+    }
+
+    @Test
+    void describesLimitsAndMeasuredRatesDifferently() {
+        assertEquals("unlimited", BandwidthThrottler.describeRate(0));
+        assertEquals("0 B/s", StatsUtil.readableRate(0));
+        assertEquals("2 MB/s", BandwidthThrottler.describeRate(2 * 1024 * 1024));
+        assertEquals("2 MB/s", StatsUtil.readableRate(2 * 1024 * 1024));
+    }
+
+    @Test
+    void catchAllScheduleEntryAppliesAllDay() {
+        final BandwidthThrottler throttler = new BandwidthThrottler();
+        throttler.configure(0, "*=1 MB");
+        assertTrue(throttler.isEnabled());
+        assertEquals(1024 * 1024, throttler.getCurrentRate());
+    }
+
+    @Test
+    void unlimitedThrottlerNeverWaits() {
+        final BandwidthThrottler throttler = new BandwidthThrottler();
+        throttler.configure(0, null);
+        assertFalse(throttler.isEnabled());
+        final long start = System.nanoTime();
+        throttler.acquire(Long.MAX_VALUE / 2);
+        throttler.acquire(Long.MAX_VALUE / 2);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void acquireWaitsOnceTheBurstIsSpent() {
+        final BandwidthThrottler throttler = new BandwidthThrottler();
+        throttler.configure(1024 * 1024, null);
+        final long start = System.nanoTime();
+        // Half a second of budget each, the first is mostly covered by the burst, the second has to wait for it.
+        throttler.acquire(512 * 1024);
+        throttler.acquire(512 * 1024);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    void rejectsInvalidScheduleEntries() {
+        final BandwidthThrottler throttler = new BandwidthThrottler();
+        assertThrows(IllegalArgumentException.class, () -> throttler.configure(0, "09:00-18:00"));
+        assertThrows(IllegalArgumentException.class, () -> throttler.configure(0, "09:00=1 MB"));
+    }
+}
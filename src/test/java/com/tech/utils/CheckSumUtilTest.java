@@ -0,0 +1,106 @@
+package com.tech.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckSumUtilTest {
+
+    @TempDir
+    File folder;
+
+    private final CheckSumUtil checkSumUtil = CheckSumUtil.getInstance();
+
+    @AfterEach
+    void tearDown() {
+        checkSumUtil.configureTreeHash(0, 0);
+    }
+
+    private File randomFile(int length) throws IOException {
+        final byte[] content = new byte[length];
+        new Random(length).nextBytes(content);
+        final File file = new File(folder, "random-" + length + ".bin");
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    @Test
+    void treeChecksumOfOneChunkHashesTheLeafWithTheChunkSize() throws Exception {
+        final File file = randomFile(1000);
+        checkSumUtil.configureTreeHash(CheckSumUtil.MIN_TREE_CHUNK_SIZE, 1);
+
+        final MessageDigest leaf = MessageDigest.getInstance("SHA-256");
+        leaf.update((byte) 0);
+        leaf.update(Files.readAllBytes(file.toPath()));
+        final MessageDigest root = MessageDigest.getInstance("SHA-256");
+        root.update((byte) 1);
+        root.update(ByteBuffer.allocate(Long.BYTES).putLong(CheckSumUtil.MIN_TREE_CHUNK_SIZE).array());
+        root.update(leaf.digest());
+        final StringBuilder expected = new StringBuilder();
+        for (final byte b : root.digest()) {
+            expected.append(String.format("%02x", b));
+        }
+
+        assertEquals(expected.toString(), checkSumUtil.getTreeChecksum(file, "SHA-256"));
+    }
+
+    @Test
+    void treeChecksumDoesNotDependOnTheThreadCount() throws Exception {
+        final File file = randomFile(100_000);
+        checkSumUtil.configureTreeHash(CheckSumUtil.MIN_TREE_CHUNK_SIZE, 1);
+        final String singleThreaded = checkSumUtil.getTreeChecksum(file, "SHA-256");
+        checkSumUtil.configureTreeHash(CheckSumUtil.MIN_TREE_CHUNK_SIZE, 4);
+        assertEquals(singleThreaded, checkSumUtil.getTreeChecksum(file, "SHA-256"));
+        assertEquals(singleThreaded, checkSumUtil.getFileChecksum(file, "tree-sha-256"));
+    }
+
+    @Test
+    void treeChecksumDependsOnTheChunkSize() throws Exception {
+        final File file = randomFile(100_000);
+        checkSumUtil.configureTreeHash(CheckSumUtil.MIN_TREE_CHUNK_SIZE, 2);
+        final String smallChunks = checkSumUtil.getTreeChecksum(file, "SHA-256");
+        checkSumUtil.configureTreeHash(CheckSumUtil.MIN_TREE_CHUNK_SIZE * 4, 2);
+        assertNotEquals(smallChunks, checkSumUtil.getTreeChecksum(file, "SHA-256"));
+        assertNotEquals(smallChunks, checkSumUtil.getFileChecksum(file, "SHA-256"));
+    }
+
+    @Test
+    void acceptsTreeSchemesOfTheSupportedDigests() {
+        assertTrue(checkSumUtil.isValidCheckSumScheme("TREE-SHA-256"));
+        assertTrue(checkSumUtil.isValidCheckSumScheme("tree-md5"));
+        assertFalse(checkSumUtil.isValidCheckSumScheme("TREE-CRC32"));
+    }
+
+    @Test
+    void rejectsChunkSizesOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> checkSumUtil.configureTreeHash(CheckSumUtil.MIN_TREE_CHUNK_SIZE - 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> checkSumUtil.configureTreeHash(2L * 1024 * 1024 * 1024, 1));
+        // 2 GB used to wrap to a negative int.
+        assertThrows(IllegalArgumentException.class, () -> checkSumUtil.configureTreeHash(Integer.MAX_VALUE + 1L, 1));
+    }
+
+    @Test
+    void unknownAlgorithmFailsBeforeReading() throws IOException {
+        final File file = randomFile(10);
+        assertThrows(NoSuchAlgorithmException.class, () -> checkSumUtil.getTreeChecksum(file, "SHA-999"));
+    }
+
+    @Test
+    void missingFileFails() {
+        assertThrows(IOException.class, () -> checkSumUtil.getTreeChecksum(new File(folder, "missing"), "SHA-256"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.tech.utils;
+
+import com.tech.TransferMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventTraceTest {
+
+    @TempDir
+    File folder;
+
+    private List<String> convert(File traceFile) throws IOException {
+        final File csvFile = new File(folder, "trace.csv");
+        EventTraceConverter.main(new String[]{traceFile.getPath(), csvFile.getPath()});
+        return Files.readAllLines(csvFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void convertedTraceHoldsEveryEventWithItsPaths() throws IOException {
+        final EventTrace eventTrace = new EventTrace();
+        final File traceFile = new File(folder, "events.trace");
+        final File source = new File(folder, "source/video, part 1.mp4");
+        final File target = new File(folder, "target/video.mp4");
+        final PathTable pathTable = new PathTable();
+        eventTrace.start(traceFile, 64);
+        eventTrace.record(EventTrace.EventType.FILE_PLANNED, TransferMode.HARDLINK.ordinal(), pathTable, pathTable.intern(source),
+            pathTable.intern(target), 2048, 0);
+        eventTrace.record(EventTrace.EventType.FILE_COPIED, TransferMode.HARDLINK.ordinal(), pathTable, pathTable.intern(source),
+            pathTable.intern(target), 2048, 3_000_000);
+        eventTrace.record(EventTrace.EventType.FILE_FAILED, TransferMode.COPY.ordinal(), source, target, 2048, 0);
+        eventTrace.record(EventTrace.EventType.ROW_DONE, 0, 7, EventTrace.NO_ID, 0, 0);
+        eventTrace.shutdown();
+
+        final List<String> lines = convert(traceFile);
+
+        assertEquals(5, lines.size());
+        assertEquals("time,elapsed_us,thread,event,mode,first_id,source,second_id,target,bytes,duration_us", lines.get(0));
+        final String paths = ",\"" + source.getPath() + "\",1," + target.getPath() + ",2048,";
+        assertTrue(lines.get(1).endsWith(",FILE_PLANNED,HARDLINK,0" + paths + "0"), lines.get(1));
+        // Resolved once per table, the copied event has the ids of the planned one.
+        final String copied = lines.get(2);
+        final String thread = Thread.currentThread().getName();
+        assertTrue(copied.contains("," + thread + ",FILE_COPIED,HARDLINK,"), copied);
+        assertTrue(copied.endsWith(",HARDLINK,0" + paths + "3000"), copied);
+        assertTrue(lines.get(3).endsWith(",FILE_FAILED,COPY,2,\"" + source.getPath() + "\",3," + target.getPath() + ",2048,0"), lines.get(3));
+        assertTrue(lines.get(4).endsWith(",ROW_DONE,,7,,-1,,0,0"), lines.get(4));
+    }
+
+    @Test
+    void fullRingDropsEventsInsteadOfBlocking() throws IOException {
+        final EventTrace eventTrace = new EventTrace();
+        final File traceFile = new File(folder, "events.trace");
+        eventTrace.start(traceFile, 2);
+        for (int i = 0; i < 10_000; i++) {
+            eventTrace.record(EventTrace.EventType.CHECKSUM, 0, EventTrace.NO_ID, EventTrace.NO_ID, i, 0);
+        }
+        eventTrace.shutdown();
+
+        final List<String> lines = convert(traceFile);
+
+        assertTrue(lines.size() > 1);
+        assertTrue(lines.size() < 10_001);
+    }
+
+    @Test
+    void traceOfAKilledRunIsConvertedUpToItsEnd() throws IOException {
+        final EventTrace eventTrace = new EventTrace();
+        final File traceFile = new File(folder, "events.trace");
+        eventTrace.start(traceFile, 64);
+        eventTrace.record(EventTrace.EventType.BATCH_DONE, 0, 3, EventTrace.NO_ID, 0, 0);
+        eventTrace.shutdown();
+        // Without the dropped count written on shutdown.
+        final byte[] trace = Files.readAllBytes(traceFile.toPath());
+        Files.write(traceFile.toPath(), Arrays.copyOf(trace, trace.length - 9));
+
+        assertEquals(2, convert(traceFile).size());
+    }
+
+    @Test
+    void otherFilesAreNotConverted() throws IOException {
+        final File notATrace = new File(folder, "copy-stats.properties");
+        Files.write(notATrace.toPath(), "COPIED_FILES=3\n".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> convert(notATrace));
+    }
+
+    @Test
+    void disabledTraceRecordsNothing() {
+        final EventTrace eventTrace = new EventTrace();
+
+        assertFalse(eventTrace.isEnabled());
+        eventTrace.record(EventTrace.EventType.FILE_PLANNED, 0, new File(folder, "video.mp4"), new File(folder, "target.mp4"), 0, 0);
+        eventTrace.shutdown();
+    }
+
+    @Test
+    void fileLogSampleLogsEveryNthFile() {
+        final EventTrace eventTrace = new EventTrace();
+        eventTrace.configureFileLog(3);
+        final boolean[] logged = new boolean[6];
+        for (int i = 0; i < logged.length; i++) {
+            logged[i] = eventTrace.sampleFileLog();
+        }
+        assertEquals("[true, false, false, true, false, false]", Arrays.toString(logged));
+
+        eventTrace.configureFileLog(0);
+        assertFalse(eventTrace.sampleFileLog());
+        eventTrace.configureFileLog(1);
+        assertTrue(eventTrace.sampleFileLog());
+    }
+}
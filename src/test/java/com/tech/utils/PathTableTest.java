@@ -0,0 +1,94 @@
+package com.tech.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PathTableTest {
+
+    private static String path(String... segments) {
+        return String.join(File.separator, segments);
+    }
+
+    @Test
+    void internedPathsComeBackExactly() {
+        final PathTable pathTable = new PathTable();
+        for (final String path : new String[]{path("", "mnt", "source", "guid1", "video.mp4"), path("relative", "file.srt"),
+            path("", "mnt", "", "doubled"), path("", "mnt", "trailing", ""), "single", ""}) {
+            assertEquals(path, pathTable.toPath(pathTable.intern(path)));
+        }
+    }
+
+    @Test
+    void filesOfOneFolderShareItsNodes() {
+        final PathTable pathTable = new PathTable();
+        final int first = pathTable.intern(new File(path("", "mnt", "target", "Show", "a.mp4")));
+        final int size = pathTable.size();
+        final int second = pathTable.intern(path("", "mnt", "target", "Show", "b.mp4"));
+
+        assertEquals(size + 1, pathTable.size());
+        assertEquals(pathTable.parent(first), pathTable.parent(second));
+        assertEquals(first, pathTable.intern(path("", "mnt", "target", "Show", "a.mp4")));
+        assertEquals(second, pathTable.child(pathTable.parent(first), "b.mp4"));
+        assertEquals("b.mp4", pathTable.name(second));
+        assertEquals(new File(path("", "mnt", "target", "Show")), pathTable.toFile(pathTable.parent(second)));
+    }
+
+    @Test
+    void sameNameInOtherFoldersIsAnotherPath() {
+        final PathTable pathTable = new PathTable();
+        final int first = pathTable.intern(path("a", "poster.jpg"));
+        final int second = pathTable.intern(path("b", "poster.jpg"));
+
+        assertNotEquals(first, second);
+        assertEquals(path("b", "poster.jpg"), pathTable.toPath(second));
+        assertEquals("", pathTable.name(PathTable.ROOT));
+        assertEquals("", pathTable.toPath(PathTable.ROOT));
+    }
+
+    @Test
+    void tableGrowsPastItsInitialCapacity() {
+        final PathTable pathTable = new PathTable();
+        final int[] ids = new int[5000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pathTable.intern(path("target", "folder" + i % 50, "file" + i));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(path("target", "folder" + i % 50, "file" + i), pathTable.toPath(ids[i]));
+        }
+        assertEquals(1 + 50 + 5000, pathTable.size());
+    }
+
+    @Test
+    void idSetAddsOnceAndKeepsTheRestAfterRemovals() {
+        final PathTable.IdSet ids = new PathTable.IdSet();
+        for (int id = 1; id <= 3000; id++) {
+            assertTrue(ids.add(id));
+        }
+        assertFalse(ids.add(42));
+        for (int id = 1; id <= 3000; id += 2) {
+            ids.remove(id);
+        }
+        assertEquals(1500, ids.size());
+        for (int id = 1; id <= 3000; id++) {
+            assertEquals(id % 2 == 0, ids.contains(id));
+        }
+    }
+
+    @Test
+    void removingAnAbsentIdChangesNothing() {
+        final PathTable.IdSet ids = new PathTable.IdSet();
+        ids.add(7);
+        ids.remove(8);
+        ids.remove(8);
+
+        assertEquals(1, ids.size());
+        assertTrue(ids.contains(7));
+        assertFalse(ids.contains(8));
+    }
+}
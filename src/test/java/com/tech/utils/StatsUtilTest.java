@@ -0,0 +1,81 @@
+package com.tech.utils;
+
+import com.tech.PropFileHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StatsUtilTest {
+
+    @TempDir
+    File folder;
+
+    private File statsFile(String name, String content) throws IOException {
+        final File file = new File(folder, name);
+        Files.write(file.toPath(), content.getBytes());
+        return file;
+    }
+
+    @Test
+    void mergedStatsAddUpCountsSizesAndRates() throws IOException {
+        final File first = statsFile("first.properties", "COPIED_FILES=3\nFAILED_FILES=1\nTOTAL_COPIED_LENGTH=2 MB\n"
+            + "RATE_LIMIT=10 MB/s\nEFFECTIVE_RATE=4 MB/s\n");
+        final File second = statsFile("second.properties", "COPIED_FILES=4\nTOTAL_COPIED_LENGTH=1 MB\n"
+            + "RATE_LIMIT=20 MB/s\nEFFECTIVE_RATE=0 B/s\n");
+        final File merged = new File(folder, "merged.properties");
+
+        StatsUtil.mergeStatsFiles(Arrays.asList(first, second), merged);
+
+        final Properties stats = PropFileHandler.readPropertiesFile(merged.getPath());
+        assertEquals("7", stats.getProperty("COPIED_FILES"));
+        assertEquals("1", stats.getProperty("FAILED_FILES"));
+        assertEquals("3 MB", stats.getProperty("TOTAL_COPIED_LENGTH"));
+        assertEquals("3145728", stats.getProperty("TOTAL_COPIED_BYTES"));
+        assertEquals("30 MB/s", stats.getProperty("RATE_LIMIT"));
+        assertEquals("4 MB/s", stats.getProperty("EFFECTIVE_RATE"));
+        assertEquals("2", stats.getProperty("SHARDS"));
+    }
+
+    @Test
+    void mergedLengthIsSummedFromTheBytes() throws IOException {
+        // Each shard rounds its readable length up to 2 MB, the bytes add up to 3 MB.
+        final File first = statsFile("first.properties", "TOTAL_COPIED_LENGTH=2 MB\nTOTAL_COPIED_BYTES=1572864\n");
+        final File second = statsFile("second.properties", "TOTAL_COPIED_LENGTH=2 MB\nTOTAL_COPIED_BYTES=1572864\n");
+        final File merged = new File(folder, "merged.properties");
+
+        StatsUtil.mergeStatsFiles(Arrays.asList(first, second), merged);
+
+        final Properties stats = PropFileHandler.readPropertiesFile(merged.getPath());
+        assertEquals("3145728", stats.getProperty("TOTAL_COPIED_BYTES"));
+        assertEquals("3 MB", stats.getProperty("TOTAL_COPIED_LENGTH"));
+    }
+
+    @Test
+    void oneUnlimitedShardMakesTheMergedLimitUnlimited() throws IOException {
+        final File first = statsFile("first.properties", "RATE_LIMIT=10 MB/s\nCURRENT_RATE=unlimited\n");
+        final File second = statsFile("second.properties", "RATE_LIMIT=unlimited\nCURRENT_RATE=1 MB/s\n");
+        final File merged = new File(folder, "merged.properties");
+
+        StatsUtil.mergeStatsFiles(Arrays.asList(first, second), merged);
+
+        final Properties stats = PropFileHandler.readPropertiesFile(merged.getPath());
+        assertEquals("unlimited", stats.getProperty("RATE_LIMIT"));
+        // An older stats file wrote a measured 0 as unlimited, it is still read as 0.
+        assertEquals("1 MB/s", stats.getProperty("CURRENT_RATE"));
+    }
+
+    @Test
+    void malformedCountFailsTheMerge() throws IOException {
+        final File broken = statsFile("broken.properties", "COPIED_FILES=many\n");
+        assertThrows(NumberFormatException.class,
+            () -> StatsUtil.mergeStatsFiles(Arrays.asList(broken), new File(folder, "merged.properties")));
+    }
+}